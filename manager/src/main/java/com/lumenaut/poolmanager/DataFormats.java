@@ -1,5 +1,6 @@
 package com.lumenaut.poolmanager;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.core.JsonParser.Feature;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -92,6 +93,7 @@ public class DataFormats {
     public static class TransactionBatchResponse {
         public boolean success = false;
         public SubmitTransactionResponse transactionResponse;
+        public long feePaid;
         public ArrayList<String> errorMessages = new ArrayList<>();
         public ArrayList<String> warningMessages = new ArrayList<>();
     }
@@ -112,6 +114,7 @@ public class DataFormats {
         private String operation;
         private String txhash;
         private List<VoterDataEntry> entries;
+        private VotersStore store;
 
         public String getInflationdest() {
             return inflationdest;
@@ -175,6 +178,23 @@ public class DataFormats {
 
         public void setEntries(List<VoterDataEntry> entries) {
             this.entries = entries;
+            this.store = null;
+        }
+
+        /**
+         * The columnar store backing the entries, null if the entries have been deserialized or set explicitly
+         *
+         * @return
+         */
+        @JsonIgnore
+        public VotersStore getStore() {
+            return store;
+        }
+
+        @JsonIgnore
+        public void setStore(VotersStore store) {
+            this.store = store;
+            this.entries = store != null ? store.asList() : null;
         }
 
         /**
@@ -189,11 +209,13 @@ public class DataFormats {
             operation = "";
             txhash = "";
 
-            if (entries == null) {
-                entries = new ArrayList<>();
+            // Entries are always backed by a columnar store after a reset
+            if (store == null) {
+                store = new VotersStore();
             } else {
-                entries.clear();
+                store.clear();
             }
+            entries = store.asList();
 
             // Issue a request for garbage collection, we're likely freeing a lot of memory here
             System.gc();
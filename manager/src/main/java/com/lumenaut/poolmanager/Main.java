@@ -1,5 +1,6 @@
 package com.lumenaut.poolmanager;
 
+import com.lumenaut.poolmanager.gateways.HorizonServers;
 import javafx.application.Application;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
@@ -57,8 +58,16 @@ public class Main extends Application {
 
     @Override
     public void stop() throws Exception {
-        // Shutdown the threadpool
+        // Shutdown the threadpools
         Services.EXECUTOR.shutdownNow();
+        Services.DATABASE_EXECUTOR.shutdownNow();
+        Services.IO_EXECUTOR.shutdownNow();
+        Services.SUBMISSION_EXECUTOR.shutdownNow();
+        Services.SIGNING_POOL.shutdownNow();
+        Services.SCHEDULER.shutdownNow();
+
+        // Release the horizon connections
+        HorizonServers.shutdown();
 
         // Proceed to application close
         super.stop();
@@ -5,7 +5,10 @@ import com.lumenaut.poolmanager.DataFormats.TransactionPlanEntry;
 import com.lumenaut.poolmanager.DataFormats.VoterDataEntry;
 import com.lumenaut.poolmanager.DataFormats.VotersData;
 import com.lumenaut.poolmanager.gateways.HorizonGateway;
+import com.lumenaut.poolmanager.gateways.QueryMetrics;
+import com.lumenaut.poolmanager.gateways.RestVoterSource;
 import com.lumenaut.poolmanager.gateways.StellarGateway;
+import com.lumenaut.poolmanager.gateways.VoterSource;
 import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
@@ -22,11 +25,16 @@ import javafx.stage.Stage;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import static com.lumenaut.poolmanager.DataFormats.OBJECT_MAPPER;
+import static com.lumenaut.poolmanager.Services.IO_EXECUTOR;
 import static com.lumenaut.poolmanager.Settings.*;
 import static com.lumenaut.poolmanager.UIUtils.showError;
 
@@ -113,6 +121,10 @@ public class MainController {
     // Current voters data
     private VotersData currentVotersData;
 
+    // Voters snapshot loaded at startup and the network it belongs to, used to seed the horizon gateway
+    private VotersSnapshot loadedSnapshot;
+    private String loadedSnapshotNetwork;
+
     //endregion
     ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
 
@@ -164,6 +176,9 @@ public class MainController {
                 break;
         }
 
+        // Reopen the last fetched voters of the default pool
+        loadVotersSnapshot();
+
         // Init tooltips
         getHorizonDataBtn.setTooltip(new Tooltip("Retrieve voters data, pool balance and donations data using\n the specified Horizon database connection."));
         importDataFromPlanBtn.setTooltip(new Tooltip("Import voters data and pool balance from a transaction plan (Required to execute exclusions on a partial payment run)"));
@@ -196,6 +211,52 @@ public class MainController {
         });
     }
 
+    /**
+     * Load the voters snapshot of the default pool on the current network, if one has been saved
+     */
+    private void loadVotersSnapshot() {
+        final String poolAddress = poolAddressTextField.getText();
+        if (poolAddress == null || !XLMUtils.isPublicKeyValidFormat(poolAddress)) {
+            return;
+        }
+
+        final File snapshotFile = VotersSnapshot.getSnapshotFile(SETTING_OPERATIONS_NETWORK, poolAddress);
+        if (!snapshotFile.exists()) {
+            return;
+        }
+
+        try {
+            final VotersSnapshot snapshot = VotersSnapshot.read(snapshotFile);
+            loadedSnapshot = snapshot;
+            loadedSnapshotNetwork = SETTING_OPERATIONS_NETWORK;
+            currentVotersData = snapshot.getVotersData();
+
+            // Update counters
+            refreshPoolCounters();
+
+            // Notify user
+            inflationPoolDataTextArea.appendText("Loaded voters snapshot of ledger " + snapshot.getLedger() + " (" + new Date(snapshot.getCreated()) + ")\n");
+            inflationPoolDataTextArea.appendText("Fetch new data to bring it up to date.\n");
+        } catch (Exception e) {
+            showError("Unable to load the voters snapshot: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Save the voters data as the snapshot of its pool on the current network
+     *
+     * @param votersData
+     * @param ledger     The ledger the voters data is up to date with, 0 if unknown
+     */
+    private void saveVotersSnapshot(final VotersData votersData, final long ledger) {
+        try {
+            final File snapshotFile = VotersSnapshot.getSnapshotFile(SETTING_OPERATIONS_NETWORK, votersData.getInflationdest());
+            VotersSnapshot.write(snapshotFile, votersData, ledger);
+        } catch (IOException e) {
+            Platform.runLater(() -> inflationPoolDataTextArea.appendText("\nUnable to save the voters snapshot: " + e.getMessage() + "\n"));
+        }
+    }
+
     /**
      * Updates the pool data counters
      */
@@ -242,158 +303,153 @@ public class MainController {
     }
 
     /**
-     * Fetch data from horizon
+     * Fetch data from horizon. The network check, the voters fetch and the payment channels initialization run
+     * concurrently, the fetch is aborted as soon as the horizon node turns out to be on the wrong network.
      */
     private void fetchHorizonData() {
-        // Initialize horizon manager
-        if (!initHorizonDatabaseConnection()) {
+        // Get the configured voters source
+        final VoterSource voterSource = getVoterSource();
+        if (voterSource == null) {
             return;
         }
 
-        // Get the current network of the horizon node
-        boolean horizonTestNetwork;
-        try {
-            horizonTestNetwork = horizonGateway.isTestNetwork();
-        } catch (Exception e) {
-            showError("Cannot determine whether the horizon node is on the test network: " + e.getMessage());
-            return;
-        }
-
-        // Check if the networks match
-        switch (SETTING_OPERATIONS_NETWORK) {
-            case "TEST":
-                if (!horizonTestNetwork) {
-                    showError("The horizon node specified seems to be connected to the LIVE network, you are working on the TEST network. Change your settings and try again.");
-                    return;
-                }
-
-                break;
-            case "LIVE":
-                if (horizonTestNetwork) {
-                    showError("The horizon node specified seems to be connected to the TEST network, you are working on the LIVE network. Change your settings and try again.");
-                    return;
-                }
-
-                break;
-        }
-
         // Get the target pool key
         final String poolAddress = poolAddressTextField.getText();
 
         // Check if we have an address
         if (poolAddress == null || poolAddress.isEmpty()) {
             showError("You must specify the inflation pool's address below");
-        } else {
-            // Clear existing data
-            inflationPoolDataTextArea.clear();
-            poolDataBalanceLabel.setText("0 XLM");
-            if (currentVotersData != null) {
-                currentVotersData.reset();
-            }
 
-            resetPoolCounters();
+            return;
+        }
 
-            // Disable buttons and start spinner
-            setBusyState(true);
+        // Clear existing data
+        inflationPoolDataTextArea.clear();
+        poolDataBalanceLabel.setText("0 XLM");
+        if (currentVotersData != null) {
+            currentVotersData.reset();
+        }
 
-            // Notify user
-            inflationPoolDataTextArea.clear();
-
-            // Build and submit async task
-            final CompletableFuture<VotersData> request = CompletableFuture.supplyAsync(() -> {
-                final VotersData votersData;
-                try {
-                    // Initialize payment channels if required
-                    if (SETTING_PARALLEL_CHANNELS_ENABLED) {
-                        Platform.runLater(() -> inflationPoolDataTextArea.appendText("Verifying payment channels...\n"));
-                        StellarGateway.initParallelSubmission(inflationPoolDataTextArea);
-
-                        // Check if the channels were initialized
-                        if (StellarGateway.getChannelAccounts() == null) {
-                            Platform.runLater(() -> inflationPoolDataTextArea.appendText("FAILED: No channels were initialized for parallel submission!\n\n"));
-
-                            // Reset current voters data
-                            currentVotersData = null;
-                            return null;
-                        }
-
-                        // Check if at least 1 channel was initialized
-                        final int validChannelsNum = StellarGateway.getChannelAccounts().size();
-                        if (validChannelsNum > 0) {
-                            Platform.runLater(() -> inflationPoolDataTextArea.appendText("SUCCESS: Initialized [" + validChannelsNum + "] valid channels for parallel submission!\n\n"));
-                        } else {
-                            Platform.runLater(() -> inflationPoolDataTextArea.appendText("FAILED: No channels were initialized for parallel submission!\n\n"));
-
-                            // Reset current voters data
-                            currentVotersData = null;
-                            return null;
-                        }
-                    }
+        resetPoolCounters();
 
-                    // Notify user that data fetch is starting
-                    Platform.runLater(() -> inflationPoolDataTextArea.appendText("Fetching data..."));
+        // Disable buttons and start spinner
+        setBusyState(true);
 
-                    // Fetch
-                    votersData = horizonGateway.getVotersData(poolAddress);
+        // Notify user
+        inflationPoolDataTextArea.clear();
 
-                    // Update the current voters data
-                    currentVotersData = votersData;
-                } catch (Exception ignored) {
-                    // Fetch has failed
-                    currentVotersData = null;
+        // Start all requests, the query metrics taken now tell us what this fetch cost
+        final Map<String, long[]> queryMetrics = QueryMetrics.snapshot();
+        final String operationsNetwork = SETTING_OPERATIONS_NETWORK;
+        final CompletableFuture<Boolean> networkCheck = voterSource.isTestNetworkAsync(HorizonGateway.QUERY_TIMEOUT);
+
+        inflationPoolDataTextArea.appendText("Fetching data...\n");
+        final CompletableFuture<VotersData> votersFetch = voterSource.getVotersDataAsync(poolAddress, HorizonGateway.VOTERS_FETCH_TIMEOUT);
+
+        final CompletableFuture<Boolean> channelsInit;
+        if (SETTING_PARALLEL_CHANNELS_ENABLED) {
+            inflationPoolDataTextArea.appendText("Verifying payment channels...\n");
+            channelsInit = CompletableFuture.supplyAsync(() -> {
+                StellarGateway.initParallelSubmission(inflationPoolDataTextArea);
+
+                // Check if at least 1 channel was initialized
+                final int validChannelsNum = StellarGateway.getChannelAccounts() != null ? StellarGateway.getChannelAccounts().size() : 0;
+                if (validChannelsNum > 0) {
+                    Platform.runLater(() -> inflationPoolDataTextArea.appendText("SUCCESS: Initialized [" + validChannelsNum + "] valid channels for parallel submission!\n\n"));
+                } else {
+                    Platform.runLater(() -> inflationPoolDataTextArea.appendText("FAILED: No channels were initialized for parallel submission!\n\n"));
                 }
 
-                // Return
-                return currentVotersData;
-            });
-
-            // Process task completion
-            request.thenAccept(votersData -> {
-                // Stop if we're meant to use payment channels but none have been successfully initialized
-                if (SETTING_PARALLEL_CHANNELS_ENABLED && (StellarGateway.getChannelAccounts() == null || StellarGateway.getChannelAccounts().size() == 0)) {
-                    Platform.runLater(() -> {
-                        // Re-enable buttons and update counters
-                        setBusyState(false);
-                        resetPoolCounters();
+                return validChannelsNum > 0;
+            }, IO_EXECUTOR);
+        } else {
+            channelsInit = CompletableFuture.completedFuture(true);
+        }
 
-                        // Manually disable the transaction build button, we have no data!
-                        buildTransactionBtn.setDisable(true);
+        // Stop fetching as soon as we know we're on the wrong network
+        networkCheck.whenComplete((horizonTestNetwork, error) -> {
+            if (error != null || horizonTestNetwork != operationsNetwork.equals("TEST")) {
+                votersFetch.cancel(true);
+            }
+        });
 
-                        // Notify user
-                        showError("None of the payment channels provided in the config can be used, either disable parallel submissions or provide valid channels");
-                    });
+        // Process completion of all requests
+        CompletableFuture.allOf(networkCheck, votersFetch, channelsInit).whenCompleteAsync((ignored, ignoredError) -> {
+            // Check if the networks match
+            final String networkError;
+            if (networkCheck.isCompletedExceptionally()) {
+                networkError = "Cannot determine whether the horizon node is on the test network: " + getErrorMessage(networkCheck);
+            } else if (networkCheck.join() && !operationsNetwork.equals("TEST")) {
+                networkError = "The horizon node specified seems to be connected to the TEST network, you are working on the LIVE network. Change your settings and try again.";
+            } else if (!networkCheck.join() && operationsNetwork.equals("TEST")) {
+                networkError = "The horizon node specified seems to be connected to the LIVE network, you are working on the TEST network. Change your settings and try again.";
+            } else {
+                networkError = null;
+            }
 
-                    return;
-                }
+            // Get the voters data
+            final VotersData votersData = networkError == null && !votersFetch.isCompletedExceptionally() ? votersFetch.join() : null;
+            currentVotersData = votersData;
 
+            // Persist it, the snapshot is reopened on the next start
+            if (votersData != null) {
+                saveVotersSnapshot(votersData, voterSource == horizonGateway ? horizonGateway.getVotersSnapshotLedger() : 0L);
+            }
 
-                // Check if we have voters data
-                if (votersData == null) {
-                    Platform.runLater(() -> {
-                        // Re-enable buttons and update counters
-                        setBusyState(false);
-                        resetPoolCounters();
+            // Queries executed by this fetch
+            final String queriesSummary = QueryMetrics.describeSince(queryMetrics);
 
-                        // Manually disable the transaction build button, we have no data!
-                        buildTransactionBtn.setDisable(true);
+            Platform.runLater(() -> {
+                // Re-enable buttons
+                setBusyState(false);
 
-                        // Notify user
+                if (networkError != null) {
+                    resetPoolCounters();
+                    buildTransactionBtn.setDisable(true);
+                    showError(networkError);
+                } else if (channelsInit.isCompletedExceptionally() || !channelsInit.join()) {
+                    // Stop if we're meant to use payment channels but none have been successfully initialized
+                    currentVotersData = null;
+                    resetPoolCounters();
+                    buildTransactionBtn.setDisable(true);
+                    showError("None of the payment channels provided in the config can be used, either disable parallel submissions or provide valid channels");
+                } else if (votersData == null) {
+                    resetPoolCounters();
+                    buildTransactionBtn.setDisable(true);
+                    if (votersFetch.isCompletedExceptionally()) {
+                        showError("Unable to fetch the voters data: " + getErrorMessage(votersFetch));
+                    } else {
                         showError("The horizon database does not contain any data for the specified address");
-                    });
-
-                    return;
-                }
-
-                // Cancel applicationBusy state
-                Platform.runLater(() -> {
-                    // Re-enable buttons and update counters
-                    setBusyState(false);
+                    }
+                } else {
+                    // Update counters
                     refreshPoolCounters();
 
                     // Notify user
-                    inflationPoolDataTextArea.appendText(" DONE!\nREADY TO BUILD!");
-                });
+                    if (!queriesSummary.isEmpty()) {
+                        inflationPoolDataTextArea.appendText("Horizon queries:\n" + queriesSummary + "\n");
+                    }
+                    inflationPoolDataTextArea.appendText("DONE!\nREADY TO BUILD!");
+                }
             });
+        }, IO_EXECUTOR);
+    }
+
+    /**
+     * Get the message of the error a future has been completed with
+     *
+     * @param future
+     * @return
+     */
+    private static String getErrorMessage(final CompletableFuture<?> future) {
+        try {
+            future.join();
+
+            return "";
+        } catch (CancellationException e) {
+            return "the request has been cancelled";
+        } catch (CompletionException e) {
+            return e.getCause() != null ? e.getCause().getMessage() : e.getMessage();
         }
     }
 
@@ -401,15 +457,16 @@ public class MainController {
      * Import data from transaction plan
      */
     private void importDataFromPlan() {
-        // Initialize horizon manager
-        if (!initHorizonDatabaseConnection()) {
+        // Get the configured voters source
+        final VoterSource voterSource = getVoterSource();
+        if (voterSource == null) {
             return;
         }
 
         // Get the current network of the horizon node
         boolean horizonTestNetwork;
         try {
-            horizonTestNetwork = horizonGateway.isTestNetwork();
+            horizonTestNetwork = voterSource.isTestNetwork();
         } catch (Exception e) {
             showError("Cannot determine whether the horizon node is on the test network: " + e.getMessage());
             return;
@@ -484,7 +541,7 @@ public class MainController {
 
             try {
                 // Retrieve current pool balance
-                votersData.setBalance(horizonGateway.getBalance(poolAddress));
+                votersData.setBalance(voterSource.getBalance(poolAddress));
 
                 // Initialize payment channels if required
                 if (SETTING_PARALLEL_CHANNELS_ENABLED) {
@@ -652,6 +709,19 @@ public class MainController {
         }
     }
 
+    /**
+     * Get the voters source selected in the settings
+     *
+     * @return The voters source, null if it couldn't be initialized
+     */
+    private VoterSource getVoterSource() {
+        if (SETTING_VOTERS_SOURCE.equals("REST")) {
+            return new RestVoterSource(SETTING_FEDERATION_NETWORK_INFLATION_URL, SETTING_OPERATIONS_NETWORK.equals("LIVE") ? SETTING_HORIZON_LIVE_NETWORK : SETTING_HORIZON_TEST_NETWORK);
+        }
+
+        return initHorizonDatabaseConnection() ? horizonGateway : null;
+    }
+
     /**
      * Initialize the horizon manager instance for database operations
      */
@@ -666,6 +736,14 @@ public class MainController {
             } catch (Exception e) {
                 showError(e.getMessage());
             }
+
+            // Let the first fetch start from the snapshot loaded at startup
+            if (loadedSnapshot != null && loadedSnapshot.getLedger() > 0 && SETTING_OPERATIONS_NETWORK.equals(loadedSnapshotNetwork)) {
+                final VotersData snapshotData = loadedSnapshot.getVotersData();
+                horizonGateway.seedVotersSnapshot(snapshotData.getInflationdest(), snapshotData.getStore(), loadedSnapshot.getLedger());
+            }
+
+            loadedSnapshot = null;
         } else {
             // Reconnect, the settings might have changed
             try {
@@ -6,22 +6,24 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.lumenaut.poolmanager.DataFormats.TransactionBatchResponse;
 import com.lumenaut.poolmanager.DataFormats.TransactionResult;
 import com.lumenaut.poolmanager.DataFormats.TransactionResultEntry;
+import com.lumenaut.poolmanager.gateways.HorizonServers;
+import com.lumenaut.poolmanager.gateways.SequenceTracker;
 import com.lumenaut.poolmanager.gateways.StellarGateway;
-import javafx.application.Platform;
 import org.stellar.sdk.KeyPair;
 import org.stellar.sdk.Server;
+import org.stellar.sdk.Transaction;
+import org.stellar.sdk.responses.SubmitTransactionResponse;
 import shadow.com.google.common.base.Optional;
 
 import java.io.*;
-import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Date;
-import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.LockSupport;
 
 import static com.lumenaut.poolmanager.DataFormats.OBJECT_MAPPER;
+import static com.lumenaut.poolmanager.Services.SUBMISSION_EXECUTOR;
 import static com.lumenaut.poolmanager.Settings.*;
-import static com.lumenaut.poolmanager.TransactionsController.*;
-import static com.lumenaut.poolmanager.UIUtils.showError;
 
 /**
  * @Author Luca Vignaroli
@@ -32,6 +34,12 @@ public class ParallelTransactionTask implements Runnable {
     ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
     //region FIELDS
 
+    // Transactions signed ahead of their submission
+    private static final int SIGNING_LOOKAHEAD = 2;
+
+    // Wait between checks of the batches queue while the batches are still being prepared (nanoseconds)
+    private static final long BATCH_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+
     // Config
     private final ParallelTransactionTaskConfig config;
 
@@ -44,6 +52,169 @@ public class ParallelTransactionTask implements Runnable {
     ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
     //region SUBCLASSES
 
+    /**
+     * A transaction submitted ahead of the confirmation of the previous ones
+     */
+    private static class PendingTransaction {
+        private final TransactionResult batch;
+        private final Transaction transaction;
+        private final Future<SubmitTransactionResponse> submission;
+
+        private PendingTransaction(final TransactionResult batch, final Transaction transaction, final Future<SubmitTransactionResponse> submission) {
+            this.batch = batch;
+            this.transaction = transaction;
+            this.submission = submission;
+        }
+    }
+
+    /**
+     * A batch whose transaction is being built and signed on the signing pool
+     */
+    private static class PrebuiltTransaction {
+        private final TransactionResult batch;
+        private CompletableFuture<Transaction> transaction;
+
+        private PrebuiltTransaction(final TransactionResult batch, final CompletableFuture<Transaction> transaction) {
+            this.batch = batch;
+            this.transaction = transaction;
+        }
+
+        /**
+         * Wait for the transaction to be signed
+         *
+         * @return The transaction, null if it couldn't be built
+         */
+        private Transaction getTransaction() {
+            try {
+                return transaction.join();
+            } catch (CompletionException | CancellationException e) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Builds and signs the channel's next transactions on the signing pool, predicting their sequence numbers from the
+     * one tracked for the channel. The channel thread only waits for transactions which aren't ready yet.
+     */
+    private class SigningStage {
+        private final KeyPair channelAccount;
+        private final KeyPair[] signers;
+        private final SequenceTracker sequenceTracker;
+        private final int lookahead;
+        private final ArrayDeque<PrebuiltTransaction> prebuilt = new ArrayDeque<>();
+
+        // Sequence number of the last transaction handed to the signing pool, null if it must be reloaded
+        private Long lastSequence;
+
+        private SigningStage(final KeyPair channelAccount, final KeyPair[] signers, final SequenceTracker sequenceTracker, final int lookahead) {
+            this.channelAccount = channelAccount;
+            this.signers = signers;
+            this.sequenceTracker = sequenceTracker;
+            this.lookahead = lookahead;
+        }
+
+        /**
+         * Check if there are batches left, waiting for the next one to be queued if needed
+         *
+         * @return
+         */
+        private boolean hasNext() {
+            if (prebuilt.isEmpty()) {
+                final TransactionResult batch = takeBatch();
+                if (batch == null) {
+                    return false;
+                }
+
+                prebuilt.add(new PrebuiltTransaction(batch, sign(batch)));
+            }
+
+            return true;
+        }
+
+        /**
+         * Check if a batch is ready without waiting for one
+         *
+         * @return
+         */
+        private boolean hasReady() {
+            return !prebuilt.isEmpty() || config.batchQueue.peek() != null;
+        }
+
+        /**
+         * Get the next batch and its transaction, the following batches are handed to the signing pool
+         *
+         * @return
+         */
+        private PrebuiltTransaction next() {
+            fill();
+            final PrebuiltTransaction next = prebuilt.poll();
+            fill();
+
+            return next;
+        }
+
+        /**
+         * Called once a transaction has been reconciled: the transactions signed after it assume it consumed its
+         * sequence number, they are signed again if it didn't
+         *
+         * @param transaction The transaction used for the batch, null if there was none
+         */
+        private void reconciled(final Transaction transaction) {
+            final Long trackedSequence = sequenceTracker.getSequenceNumber(channelAccount);
+            if (transaction == null || trackedSequence == null || trackedSequence != transaction.getSequenceNumber()) {
+                resync();
+            }
+        }
+
+        /**
+         * Sign the pending transactions again, starting from the tracked sequence number
+         */
+        private void resync() {
+            lastSequence = null;
+            for (PrebuiltTransaction next : prebuilt) {
+                next.transaction.cancel(false);
+                next.transaction = sign(next.batch);
+            }
+        }
+
+        /**
+         * Get the number of batches taken from the queue and not yet handed to the channel
+         *
+         * @return
+         */
+        private int size() {
+            return prebuilt.size();
+        }
+
+        private void fill() {
+            while (prebuilt.size() < lookahead) {
+                final TransactionResult batch = pollBatch();
+                if (batch == null) {
+                    break;
+                }
+
+                prebuilt.add(new PrebuiltTransaction(batch, sign(batch)));
+            }
+        }
+
+        private CompletableFuture<Transaction> sign(final TransactionResult batch) {
+            if (lastSequence == null) {
+                try {
+                    lastSequence = sequenceTracker.getAccount(channelAccount).getSequenceNumber();
+                } catch (IOException e) {
+                    // The serial submission builds it and reports the failure
+                    final CompletableFuture<Transaction> failed = new CompletableFuture<>();
+                    failed.completeExceptionally(e);
+
+                    return failed;
+                }
+            }
+
+            return StellarGateway.buildParallelTransactionAsync(channelAccount, ++lastSequence, config.sourceAccount, signers, batch);
+        }
+    }
+
     //endregion
     ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
 
@@ -71,105 +242,313 @@ public class ParallelTransactionTask implements Runnable {
 
     @Override
     public void run() {
-        // Check if we have batches to run
-        if (config.batchQueue.peek() == null) {
-            // We're done, nothing to do here
-            config.errorFlag.getAndSet(true);
-            config.errorMessages.add("This channel had no operation batches to process");
-
-            // Set progress to completion and exit this thread
-            config.progress.getAndSet(100);
-
-            return;
-        }
-
-        // Build server object
-        final Server server = new Server(SETTING_OPERATIONS_NETWORK.equals("LIVE") ? SETTING_HORIZON_LIVE_NETWORK : SETTING_HORIZON_TEST_NETWORK);
+        // Shared server object
+        final Server server = HorizonServers.getOperationsServer();
 
         // Create KeyPair for the channel
         final KeyPair channelAccount = KeyPair.fromAccountId(config.channelAccount);
 
+        // The channel's sequence number is loaded once and then tracked locally
+        final SequenceTracker sequenceTracker = new SequenceTracker(server);
+
         // Bundle signers for the transaction
         final KeyPair[] signers = new KeyPair[2];
         signers[0] = config.sourceAccountMasterKey;                     // Pool signature
         signers[1] = KeyPair.fromSecretSeed(config.channelAccountKey);  // Channel signature
 
-        // Init progress counters
-        final int totalBatches = config.batchQueue.size();
-        int currentBatch = 0;
+        // Submit the batches
+        try {
+            if (SETTING_TRANSACTIONS_IN_FLIGHT > 1) {
+                runPipelined(server, sequenceTracker, channelAccount, signers);
+            } else {
+                runSerial(server, sequenceTracker, channelAccount, signers);
+            }
+        } finally {
+            // The thread has finished processing all batches, make sure the progress reports completion
+            config.progress.getAndSet(100);
+            config.activeChannels.decrementAndGet();
+        }
+    }
+
+    //endregion
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //region METHODS
+
+    /**
+     * Submit the batches one at a time, each transaction is built once the previous one has been confirmed
+     *
+     * @param server
+     * @param sequenceTracker
+     * @param channelAccount
+     * @param signers
+     */
+    private void runSerial(final Server server, final SequenceTracker sequenceTracker, final KeyPair channelAccount, final KeyPair[] signers) {
+        // The next transactions are signed while the current one is in flight
+        final SigningStage signingStage = new SigningStage(channelAccount, signers, sequenceTracker, SIGNING_LOOKAHEAD);
 
         // Check if we have batches to process
-        while (config.batchQueue.peek() != null) {
-            final TransactionResult batch = config.batchQueue.poll();
+        while (signingStage.hasNext()) {
+            final PrebuiltTransaction prebuilt = signingStage.next();
+            final Transaction transaction = prebuilt.getTransaction();
             try {
-                if (batch != null) {
-                    final TransactionBatchResponse batchResponse = StellarGateway.executeParallelTransactionBatch(server, channelAccount, config.sourceAccount, signers, batch, config.idleFlag, config.channelIndex);
-                    if (!batchResponse.success) {
-                        // Append error and update error state
-                        config.errorFlag.getAndSet(true);
-                        config.errorMessages = batchResponse.errorMessages;
-                        config.warningMessages = batchResponse.warningMessages;
-                    } else {
-                        // Append warnings (if any)
-                        config.warningMessages = batchResponse.warningMessages;
-
-                        // Update payment counters
-                        for (TransactionResultEntry resultEntry : batch.getEntries()) {
-                            config.paidTotal.getAndAdd(resultEntry.getAmount());
-                            config.totalFees.getAndAdd(SETTING_FEE);
-                            config.totalPayment.getAndAdd(resultEntry.getAmount() + SETTING_FEE);
-                            config.remainingPayment.getAndAdd(-1 * (resultEntry.getAmount() + SETTING_FEE));
-                        }
-
-                        // Append completed batch to the final result
-                        synchronized (config.finalResults) {
-                            config.finalResults.getEntries().addAll(batch.getEntries());
-                            config.finalResults.getExecutedOperations().getAndAdd(batch.getEntries().size());
-                        }
+                final TransactionBatchResponse batchResponse = StellarGateway.executeParallelTransactionBatch(server, sequenceTracker, channelAccount, config.sourceAccount, signers, prebuilt.batch, config.idleFlag, config.channelIndex, transaction);
+                processBatchResponse(prebuilt.batch, batchResponse);
+
+                // The transactions signed ahead are only valid if this one consumed its sequence number
+                signingStage.reconciled(transaction);
+            } catch (Throwable e) {
+                processBatchError(e);
+                signingStage.resync();
+            }
+
+            // Update progress
+            updateProgress(signingStage.size());
+        }
+    }
+
+    /**
+     * Submit the batches keeping up to SETTING_TRANSACTIONS_IN_FLIGHT transactions in flight. Transactions are built
+     * with consecutive sequence numbers and their outcomes are reconciled in order: a transaction which didn't make it
+     * into a ledger is handed to the serial submission logic (resync, resubmission) and no new transactions are built
+     * until the ones already in flight have been reconciled.
+     *
+     * @param server
+     * @param sequenceTracker
+     * @param channelAccount
+     * @param signers
+     */
+    private void runPipelined(final Server server, final SequenceTracker sequenceTracker, final KeyPair channelAccount, final KeyPair[] signers) {
+        // In flight transactions, oldest first, and the ones being signed after them
+        final ArrayDeque<PendingTransaction> window = new ArrayDeque<>(SETTING_TRANSACTIONS_IN_FLIGHT);
+        final SigningStage signingStage = new SigningStage(channelAccount, signers, sequenceTracker, Math.max(SIGNING_LOOKAHEAD, SETTING_TRANSACTIONS_IN_FLIGHT));
+        boolean recovering = false;
+
+        config.idleFlag.set(false);
+        while (!window.isEmpty() || signingStage.hasNext()) {
+            // Keep the window full with the batches ready, only an empty window waits for the next batch
+            while (!recovering && window.size() < SETTING_TRANSACTIONS_IN_FLIGHT && signingStage.hasReady()) {
+                final PrebuiltTransaction prebuilt = signingStage.next();
+                final Transaction transaction = prebuilt.getTransaction();
+                if (transaction != null) {
+                    window.add(new PendingTransaction(prebuilt.batch, transaction, submit(server, prebuilt.batch, transaction)));
+                } else {
+                    // Leave it to the serial submission, which reports the failure
+                    window.add(new PendingTransaction(prebuilt.batch, null, null));
+                    recovering = true;
+                }
+            }
+
+            // Reconcile the oldest transaction
+            final PendingTransaction pending = window.poll();
+            try {
+                SubmitTransactionResponse submissionResponse = null;
+                if (pending.submission != null) {
+                    try {
+                        submissionResponse = pending.submission.get();
+                    } catch (ExecutionException e) {
+                        // Unknown outcome (timeout, connection error), resolved below
                     }
+                }
+
+                final TransactionBatchResponse batchResponse;
+                if (submissionResponse != null && StellarGateway.isSequenceConsumed(submissionResponse)) {
+                    // The transaction made it into a ledger
+                    sequenceTracker.commit(channelAccount, pending.transaction.getSequenceNumber());
 
-                    // Save the response
-                    saveTransactionResponse(batchResponse);
+                    batchResponse = new TransactionBatchResponse();
+                    batchResponse.success = submissionResponse.isSuccess();
+                    batchResponse.transactionResponse = submissionResponse;
+                    batchResponse.feePaid = StellarGateway.getFeePaid(pending.transaction, submissionResponse);
+                    if (!batchResponse.success) {
+                        batchResponse.errorMessages.add("Transaction failed");
+                    }
                 } else {
-                    // This should really NEVER happen, it means the there's a BIG issue with our queues or the way we're using them
-                    Platform.runLater(() -> showError("Channel [" + config.channelIndex + "] has skipped a transaction batch, the batch object fetched from the queue was NULL!"));
+                    // Rejected or unknown, the transactions that follow it are likely to fail as well
+                    recovering = true;
+                    batchResponse = StellarGateway.executeParallelTransactionBatch(server, sequenceTracker, channelAccount, config.sourceAccount, signers, pending.batch, config.idleFlag, config.channelIndex, pending.transaction);
                 }
 
-                // Increment batch counter and update progress
-                currentBatch++;
+                processBatchResponse(pending.batch, batchResponse);
+            } catch (InterruptedException e) {
+                // Give up on the whole window, the sequence number is no longer reliable
+                window.stream().filter(inFlight -> inFlight.submission != null).forEach(inFlight -> inFlight.submission.cancel(true));
+                sequenceTracker.invalidate(channelAccount);
+                Thread.currentThread().interrupt();
+                processBatchError(e);
 
-                // Update progress
-                config.progress.getAndSet(currentBatch * 100 / totalBatches);
+                return;
             } catch (Throwable e) {
-                // Append error and update error state
-                config.errorFlag.getAndSet(true);
-                config.errorMessages.add(e.getMessage());
+                processBatchError(e);
+            }
+
+            // Update progress
+            updateProgress(window.size() + signingStage.size());
+
+            // Once all the in flight transactions are reconciled, resume from the tracked sequence number
+            if (recovering && window.isEmpty()) {
+                recovering = false;
+                signingStage.resync();
+            }
+        }
+    }
 
-                // This batch failed but we need to update progress anyway
-                currentBatch++;
+    /**
+     * Take the next batch from the shared queue, without waiting
+     *
+     * @return The batch, null if none is queued
+     */
+    private TransactionResult pollBatch() {
+        final TransactionResult batch = config.batchQueue.poll();
+        if (batch != null) {
+            config.remainingBatches.decrementAndGet();
+        }
 
-                // Update progress
-                config.progress.getAndSet(currentBatch * 100 / totalBatches);
+        return batch;
+    }
 
-                // Create fake transaction response so we can save it
-                final TransactionBatchResponse batchResponse = new TransactionBatchResponse();
-                batchResponse.success = false;
-                batchResponse.errorMessages.add(e.getMessage());
+    /**
+     * Take the next batch from the shared queue, waiting for it while the batches are still being prepared
+     *
+     * @return The batch, null if all the batches have been taken
+     */
+    private TransactionResult takeBatch() {
+        while (true) {
+            final TransactionResult batch = pollBatch();
+            if (batch != null) {
+                return batch;
+            }
 
-                // Save the response
-                saveTransactionResponse(batchResponse);
+            // Batches queued right before completion are still taken
+            if (config.batchingCompleted.get()) {
+                return pollBatch();
             }
+
+            config.idleFlag.set(true);
+            LockSupport.parkNanos(BATCH_WAIT_NANOS);
+            config.idleFlag.set(false);
         }
+    }
+
+    /**
+     * Count a completed batch and estimate the channel's progress, against its share of the batches still queued
+     *
+     * @param heldBatches The batches the channel took from the queue and hasn't completed yet
+     */
+    private void updateProgress(final int heldBatches) {
+        final int completedBatches = config.completedBatches.incrementAndGet();
+        final int remainingBatches = heldBatches + Math.max(0, config.remainingBatches.get()) / Math.max(1, config.channels);
 
-        // The thread has finished processing all batches, make sure the progress reports completion
-        config.progress.getAndSet(100);
+        // Completion is reported once the channel is done
+        config.progress.getAndSet(Math.min(99, completedBatches * 100 / (completedBatches + remainingBatches)));
     }
 
-    //endregion
-    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    /**
+     * Submit a transaction without waiting for its outcome: tracked submissions don't hold a thread, blocking ones
+     * are handed to the submission executor. The transaction is journaled first.
+     *
+     * @param server
+     * @param batch
+     * @param transaction
+     * @return
+     */
+    private Future<SubmitTransactionResponse> submit(final Server server, final TransactionResult batch, final Transaction transaction) {
+        try {
+            StellarGateway.journalSubmission(batch, transaction);
+        } catch (UncheckedIOException e) {
+            // Reconciling the window reports the failure
+            final CompletableFuture<SubmitTransactionResponse> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+
+            return failed;
+        }
 
-    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
-    //region METHODS
+        if (!SETTING_TRACKED_SUBMISSIONS) {
+            try {
+                return Services.forBlockingTasks(SUBMISSION_EXECUTOR).submit(() -> StellarGateway.submitParallelTransaction(server, transaction));
+            } catch (RejectedExecutionException e) {
+                // Never submitted, reconciling the window submits it serially
+                final CompletableFuture<SubmitTransactionResponse> rejected = new CompletableFuture<>();
+                rejected.completeExceptionally(e);
+
+                return rejected;
+            }
+        }
+
+        try {
+            return StellarGateway.submitTrackedTransaction(transaction);
+        } catch (InterruptedException e) {
+            // Reconciling the window reports the interruption
+            Thread.currentThread().interrupt();
+            final CompletableFuture<SubmitTransactionResponse> interrupted = new CompletableFuture<>();
+            interrupted.completeExceptionally(e);
+
+            return interrupted;
+        }
+    }
+
+    /**
+     * Update the counters and results with the outcome of a batch, and save its response
+     *
+     * @param batch
+     * @param batchResponse
+     */
+    private void processBatchResponse(final TransactionResult batch, final TransactionBatchResponse batchResponse) {
+        // Failed transactions included in a ledger are charged as well
+        config.totalFees.getAndAdd(batchResponse.feePaid);
+        config.totalPayment.getAndAdd(batchResponse.feePaid);
+
+        if (!batchResponse.success) {
+            // Append error and update error state
+            config.errorFlag.getAndSet(true);
+            config.errorMessages = batchResponse.errorMessages;
+            config.warningMessages = batchResponse.warningMessages;
+        } else {
+            // Append warnings (if any)
+            config.warningMessages = batchResponse.warningMessages;
+
+            // Update payment counters
+            for (TransactionResultEntry resultEntry : batch.getEntries()) {
+                config.paidTotal.getAndAdd(resultEntry.getAmount());
+                config.totalPayment.getAndAdd(resultEntry.getAmount());
+
+                // The plan budgeted the configured fee per operation, whatever was actually charged
+                config.remainingPayment.getAndAdd(-1 * (resultEntry.getAmount() + SETTING_FEE));
+            }
+
+            // Journal the paid batch
+            StellarGateway.journalPaid(batch, batchResponse);
+
+            // Append completed batch to the final result
+            synchronized (config.finalResults) {
+                config.finalResults.getEntries().addAll(batch.getEntries());
+                config.finalResults.getExecutedOperations().getAndAdd(batch.getEntries().size());
+            }
+        }
+
+        // Save the response
+        saveTransactionResponse(batchResponse);
+    }
+
+    /**
+     * Record a batch which failed with an exception
+     *
+     * @param e
+     */
+    private void processBatchError(final Throwable e) {
+        // Append error and update error state
+        config.errorFlag.getAndSet(true);
+        config.errorMessages.add(e.getMessage());
+
+        // Create fake transaction response so we can save it
+        final TransactionBatchResponse batchResponse = new TransactionBatchResponse();
+        batchResponse.success = false;
+        batchResponse.errorMessages.add(e.getMessage());
+
+        // Save the response
+        saveTransactionResponse(batchResponse);
+    }
 
     /**
      * Save the complete state of a transaction response.
@@ -181,6 +560,8 @@ public class ParallelTransactionTask implements Runnable {
         final ObjectNode rootNode = mapper.createObjectNode();
 
         // Append batch result state
+        rootNode.put("timestamp", System.currentTimeMillis());
+        rootNode.put("channel", config.channelIndex);
         rootNode.put("success", batchResponse.success);
 
         // Populate errors result, if any are present
@@ -250,31 +631,8 @@ public class ParallelTransactionTask implements Runnable {
             }
         }
 
-        // Create folder if missing
-        final String destinationFolder = config.outputPath + "/transactions";
-        final String destinationFileName = FILE_DATE_FORMATTER.format(new Date()) + "_" + UUID.randomUUID().toString() + "_" + (batchResponse.success ? TRANSACTION_SUCCESSFUL_JSON_SUFFIX : TRANSACTION_ERROR_JSON_SUFFIX);
-        final File destinationDir = new File(destinationFolder);
-        boolean destinationReady;
-        if (!destinationDir.exists()) {
-            destinationReady = destinationDir.mkdirs();
-        } else {
-            destinationReady = true;
-        }
-
-        // Save to file
-        if (destinationReady) {
-            // Save to file
-            final String outPutFilePath = destinationFolder + "/" + destinationFileName;
-            try (
-            OutputStreamWriter writer = new OutputStreamWriter(new FileOutputStream(outPutFilePath), StandardCharsets.UTF_8);
-            BufferedWriter bufWriter = new BufferedWriter(writer)
-            ) {
-                bufWriter.write(OBJECT_MAPPER.writerWithDefaultPrettyPrinter().writeValueAsString(rootNode));
-            } catch (IOException e) {
-                showError("Cannot write transaction result file [" + outPutFilePath + "]: " + e.getMessage());
-            }
-        }
-
+        // Hand it over to the run's response log
+        config.responseLog.append(rootNode);
     }
 
     //endregion
@@ -1,7 +1,7 @@
 package com.lumenaut.poolmanager;
 
 import com.lumenaut.poolmanager.DataFormats.TransactionResult;
-import org.jctools.queues.atomic.SpscAtomicArrayQueue;
+import org.jctools.queues.atomic.MpmcAtomicArrayQueue;
 import org.stellar.sdk.KeyPair;
 
 import java.util.ArrayList;
@@ -19,7 +19,7 @@ public class ParallelTransactionTaskConfig {
     public AtomicLong totalFees;
     public AtomicLong totalPayment;
     public AtomicLong remainingPayment;
-    public String outputPath;
+    public TransactionResponseLog responseLog;
 
     // Signing
     public KeyPair sourceAccount;
@@ -28,7 +28,12 @@ public class ParallelTransactionTaskConfig {
     public String channelAccount;
     public String channelAccountKey;
     public AtomicInteger progress;
-    public SpscAtomicArrayQueue<TransactionResult> batchQueue;
+    public AtomicInteger completedBatches;
+    public MpmcAtomicArrayQueue<TransactionResult> batchQueue;
+    public AtomicBoolean batchingCompleted;
+    public AtomicInteger remainingBatches;
+    public AtomicInteger activeChannels;
+    public int channels;
     public AtomicBoolean errorFlag;
     public AtomicBoolean idleFlag;
     public ArrayList<String> errorMessages;
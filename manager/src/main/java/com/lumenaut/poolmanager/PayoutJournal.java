@@ -0,0 +1,591 @@
+package com.lumenaut.poolmanager;
+
+import com.lumenaut.poolmanager.DataFormats.TransactionResult;
+import com.lumenaut.poolmanager.DataFormats.TransactionResultEntry;
+import org.stellar.sdk.Transaction;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+import static com.lumenaut.poolmanager.XLMUtils.ACCOUNT_ID_RAW_LENGTH;
+
+/**
+ * @Author Luca Vignaroli
+ * @Email luca@burning.it
+ * @Date 18/10/2026 - 4:04 PM
+ * <p>
+ * Append only journal of a payment run, one per transaction plan. Batches are recorded when they're made, each
+ * transaction before it's handed to horizon and each batch again once it's paid, so that an interrupted run can be
+ * resumed paying only the entries which weren't. A submission is forced to disk before the transaction leaves, the
+ * channels submitting at the same time share a single sync.
+ * <p>
+ * HEADER:  magic (int), version (int), plan uuid length (int), plan uuid (UTF-8)
+ * RECORDS: payload length (int), payload CRC32 (int), payload
+ * <p>
+ * BATCH:      type (byte), batch id (int), timestamp (long), entries (int), then for each entry: destination (32 bytes), amount (long)
+ * SUBMISSION: type (byte), batch id (int), timestamp (long), source account (32 bytes), sequence (long), hash (32 bytes)
+ * PAID:       type (byte), batch id (int), timestamp (long), ledger (long), fee (long), hash (32 bytes)
+ * <p>
+ * A record torn by a crash fails its length or checksum, the journal ends at the last valid record.
+ */
+public class PayoutJournal implements Closeable {
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //region FIELDS
+
+    // Journals folder
+    public static final String DATA_JOURNALS_PATH = "data/journals";
+
+    // Format
+    private static final int MAGIC = 0x4C504A52;    // "LPJR"
+    private static final int VERSION = 1;
+    private static final int HASH_LENGTH = 32;
+    private static final int RECORD_HEADER_SIZE = 4 + 4;
+    private static final int ENTRY_SIZE = ACCOUNT_ID_RAW_LENGTH + 8;
+
+    // Record types
+    private static final byte BATCH = 1;
+    private static final byte SUBMISSION = 2;
+    private static final byte PAID = 3;
+
+    // File
+    private final File file;
+    private final FileChannel channel;
+
+    // Batches found in the journal when it was opened, by id
+    private final LinkedHashMap<Integer, JournaledBatch> batches;
+
+    // Ids of the batches of this run, batches are reused as buffers so the id goes to the batch's latest contents
+    private final IdentityHashMap<TransactionResult, Integer> batchIds = new IdentityHashMap<>();
+    private int nextBatchId;
+
+    // Appends, guarded by writeLock
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private long written;
+
+    // Syncs, guarded by syncLock
+    private final ReentrantLock syncLock = new ReentrantLock();
+    private long synced;
+
+    //endregion
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //region SUBCLASSES
+
+    /**
+     * A batch as recorded in the journal
+     */
+    public static class JournaledBatch {
+        private final int id;
+        private final List<TransactionResultEntry> entries;
+        private final List<String> submissions = new ArrayList<>();
+        private long lastSubmission;
+        private boolean paid;
+        private long fee;
+
+        private JournaledBatch(final int id, final List<TransactionResultEntry> entries) {
+            this.id = id;
+            this.entries = entries;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public List<TransactionResultEntry> getEntries() {
+            return entries;
+        }
+
+        public List<String> getSubmissions() {
+            return submissions;
+        }
+
+        public long getLastSubmission() {
+            return lastSubmission;
+        }
+
+        public boolean isPaid() {
+            return paid;
+        }
+
+        public long getFee() {
+            return fee;
+        }
+    }
+
+    //endregion
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //region ACCESSORS
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * The batches recorded by previous runs, in the order they were made
+     *
+     * @return
+     */
+    public Collection<JournaledBatch> getBatches() {
+        return batches.values();
+    }
+
+    //endregion
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //region CONSTRUCTORS
+
+    /**
+     * Constructor
+     *
+     * @param file
+     * @param channel
+     * @param batches
+     * @param position
+     */
+    private PayoutJournal(final File file, final FileChannel channel, final LinkedHashMap<Integer, JournaledBatch> batches, final long position) {
+        this.file = file;
+        this.channel = channel;
+        this.batches = batches;
+        this.written = position;
+        this.synced = position;
+
+        int maxBatchId = 0;
+        for (Integer batchId : batches.keySet()) {
+            maxBatchId = Math.max(maxBatchId, batchId);
+        }
+        this.nextBatchId = maxBatchId + 1;
+    }
+
+    //endregion
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //region METHODS
+
+    /**
+     * Get the journal file of the given transaction plan on the given network
+     *
+     * @param network  The network the plan is paid on (TEST or LIVE)
+     * @param planUuid The uuid of the transaction plan
+     * @return
+     */
+    public static File getJournalFile(final String network, final String planUuid) {
+        return new File(DATA_JOURNALS_PATH, network.toLowerCase() + "_" + planUuid + ".journal");
+    }
+
+    /**
+     * Open the journal of a transaction plan for appending, creating it if it doesn't exist. The records of previous
+     * runs are read first, anything past the last valid record is discarded.
+     *
+     * @param file     The journal file
+     * @param planUuid The uuid of the transaction plan
+     * @return
+     * @throws IOException
+     */
+    public static PayoutJournal open(final File file, final String planUuid) throws IOException {
+        final File parent = file.getAbsoluteFile().getParentFile();
+        if (!parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Unable to create folder: " + parent.getPath());
+        }
+
+        final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            final LinkedHashMap<Integer, JournaledBatch> batches = new LinkedHashMap<>();
+            final long end;
+            if (channel.size() == 0) {
+                // New journal, write its header
+                final byte[] uuid = planUuid.getBytes(StandardCharsets.UTF_8);
+                final ByteBuffer header = ByteBuffer.allocate(4 + 4 + 4 + uuid.length);
+                header.putInt(MAGIC);
+                header.putInt(VERSION);
+                header.putInt(uuid.length);
+                header.put(uuid);
+                header.flip();
+                while (header.hasRemaining()) {
+                    channel.write(header);
+                }
+                channel.force(true);
+
+                end = channel.position();
+            } else {
+                end = read(file, channel, planUuid, batches);
+
+                // Drop a record torn by a crash, new records go right after the last valid one
+                channel.truncate(end);
+                channel.position(end);
+            }
+
+            return new PayoutJournal(file, channel, batches, end);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+
+            throw e;
+        }
+    }
+
+    /**
+     * Read the records of a journal
+     *
+     * @param file
+     * @param channel
+     * @param planUuid
+     * @param batches  Filled with the batches found
+     * @return The position right after the last valid record
+     * @throws IOException
+     */
+    private static long read(final File file, final FileChannel channel, final String planUuid, final Map<Integer, JournaledBatch> batches) throws IOException {
+        if (channel.size() > Integer.MAX_VALUE) {
+            throw new IOException("Journal too large: " + file.getPath());
+        }
+
+        final ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+        while (buffer.hasRemaining() && channel.read(buffer, buffer.position()) >= 0) {
+            // Keep reading until the buffer is full
+        }
+        buffer.flip();
+
+        if (buffer.remaining() < 12 || buffer.getInt() != MAGIC) {
+            throw new IOException("Not a payout journal: " + file.getPath());
+        }
+
+        if (buffer.getInt() != VERSION) {
+            throw new IOException("Unsupported payout journal version: " + file.getPath());
+        }
+
+        final int uuidLength = buffer.getInt();
+        if (uuidLength < 0 || uuidLength > buffer.remaining()) {
+            throw new IOException("Corrupted payout journal: " + file.getPath());
+        }
+
+        final byte[] uuid = new byte[uuidLength];
+        buffer.get(uuid);
+        if (!planUuid.equals(new String(uuid, StandardCharsets.UTF_8))) {
+            throw new IOException("The payout journal " + file.getPath() + " belongs to another transaction plan");
+        }
+
+        // Records
+        final CRC32 crc = new CRC32();
+        final byte[] key = new byte[ACCOUNT_ID_RAW_LENGTH];
+        final byte[] hash = new byte[HASH_LENGTH];
+        long end = buffer.position();
+        while (buffer.remaining() >= RECORD_HEADER_SIZE) {
+            final int length = buffer.getInt();
+            final int checksum = buffer.getInt();
+            if (length <= 0 || length > buffer.remaining()) {
+                break;
+            }
+
+            final ByteBuffer payload = buffer.slice();
+            payload.limit(length);
+            crc.reset();
+            crc.update(payload.array(), payload.arrayOffset(), length);
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+
+            try {
+                final byte type = payload.get();
+                final int batchId = payload.getInt();
+                final long timestamp = payload.getLong();
+                switch (type) {
+                    case BATCH: {
+                        final int count = payload.getInt();
+                        if (count < 0 || count > payload.remaining() / ENTRY_SIZE) {
+                            throw new IOException("Corrupted batch record");
+                        }
+
+                        final List<TransactionResultEntry> entries = new ArrayList<>(count);
+                        for (int i = 0; i < count; i++) {
+                            payload.get(key);
+                            final TransactionResultEntry entry = new TransactionResultEntry();
+                            entry.setDestination(XLMUtils.encodeAccountId(key, 0));
+                            entry.setAmount(payload.getLong());
+                            entries.add(entry);
+                        }
+
+                        batches.put(batchId, new JournaledBatch(batchId, entries));
+                        break;
+                    }
+
+                    case SUBMISSION: {
+                        payload.get(key);
+                        payload.getLong();
+                        payload.get(hash);
+
+                        final JournaledBatch batch = batches.get(batchId);
+                        if (batch != null) {
+                            batch.submissions.add(toHex(hash));
+                            batch.lastSubmission = Math.max(batch.lastSubmission, timestamp);
+                        }
+                        break;
+                    }
+
+                    case PAID: {
+                        payload.getLong();
+                        final long fee = payload.getLong();
+
+                        final JournaledBatch batch = batches.get(batchId);
+                        if (batch != null) {
+                            batch.paid = true;
+                            batch.fee += fee;
+                        }
+                        break;
+                    }
+
+                    default:
+                        throw new IOException("Unknown record type " + type);
+                }
+            } catch (IOException | RuntimeException e) {
+                // A valid checksum over an unreadable record, nothing after it can be trusted
+                System.err.println("Payout journal " + file.getPath() + ": " + e.getMessage() + " at " + end);
+
+                break;
+            }
+
+            buffer.position(buffer.position() + length);
+            end = buffer.position();
+        }
+
+        return end;
+    }
+
+    /**
+     * Record a batch about to be paid
+     *
+     * @param batch
+     * @throws IOException
+     */
+    public void recordBatch(final TransactionResult batch) throws IOException {
+        final List<TransactionResultEntry> entries = batch.getEntries();
+        final ByteBuffer payload = ByteBuffer.allocate(1 + 4 + 8 + 4 + entries.size() * ENTRY_SIZE);
+        final int batchId;
+        synchronized (batchIds) {
+            batchId = nextBatchId++;
+            batchIds.put(batch, batchId);
+        }
+
+        payload.put(BATCH);
+        payload.putInt(batchId);
+        payload.putLong(System.currentTimeMillis());
+        payload.putInt(entries.size());
+        final byte[] key = new byte[ACCOUNT_ID_RAW_LENGTH];
+        for (TransactionResultEntry entry : entries) {
+            XLMUtils.decodeAccountId(entry.getDestination(), key, 0);
+            payload.put(key);
+            payload.putLong(entry.getAmount());
+        }
+
+        append(payload);
+    }
+
+    /**
+     * Record a transaction of a batch about to be submitted, it's on disk when this method returns
+     *
+     * @param batch
+     * @param transaction
+     * @throws IOException
+     */
+    public void recordSubmission(final TransactionResult batch, final Transaction transaction) throws IOException {
+        final ByteBuffer payload = ByteBuffer.allocate(1 + 4 + 8 + ACCOUNT_ID_RAW_LENGTH + 8 + HASH_LENGTH);
+        payload.put(SUBMISSION);
+        payload.putInt(getBatchId(batch));
+        payload.putLong(System.currentTimeMillis());
+        final byte[] key = new byte[ACCOUNT_ID_RAW_LENGTH];
+        XLMUtils.decodeAccountId(transaction.getSourceAccount().getAccountId(), key, 0);
+        payload.put(key);
+        payload.putLong(transaction.getSequenceNumber());
+        payload.put(transaction.hash());
+
+        sync(append(payload));
+    }
+
+    /**
+     * Record a batch paid
+     *
+     * @param batch
+     * @param ledger The ledger the batch's transaction was included in, -1 if unknown
+     * @param fee    The fee charged for the transaction
+     * @param hash   The hash of the transaction, hex encoded
+     * @throws IOException
+     */
+    public void recordPaid(final TransactionResult batch, final long ledger, final long fee, final String hash) throws IOException {
+        final ByteBuffer payload = ByteBuffer.allocate(1 + 4 + 8 + 8 + 8 + HASH_LENGTH);
+        payload.put(PAID);
+        payload.putInt(getBatchId(batch));
+        payload.putLong(System.currentTimeMillis());
+        payload.putLong(ledger);
+        payload.putLong(fee);
+        payload.put(fromHex(hash));
+
+        append(payload);
+
+        synchronized (batchIds) {
+            batchIds.remove(batch);
+        }
+    }
+
+    /**
+     * Record a batch of a previous run found paid on the ledger, so that it won't be looked up again
+     *
+     * @param batchId
+     * @param hash    The hash of the transaction, hex encoded
+     * @throws IOException
+     */
+    public void recordPaid(final int batchId, final String hash) throws IOException {
+        final ByteBuffer payload = ByteBuffer.allocate(1 + 4 + 8 + 8 + 8 + HASH_LENGTH);
+        payload.put(PAID);
+        payload.putInt(batchId);
+        payload.putLong(System.currentTimeMillis());
+        payload.putLong(-1L);
+        payload.putLong(0L);
+        payload.put(fromHex(hash));
+
+        append(payload);
+    }
+
+    /**
+     * Get the id of a batch of this run
+     *
+     * @param batch
+     * @return
+     * @throws IOException
+     */
+    private int getBatchId(final TransactionResult batch) throws IOException {
+        final Integer batchId;
+        synchronized (batchIds) {
+            batchId = batchIds.get(batch);
+        }
+
+        if (batchId == null) {
+            throw new IOException("Batch not recorded in the payout journal");
+        }
+
+        return batchId;
+    }
+
+    /**
+     * Append a record to the journal
+     *
+     * @param payload The record's payload, filled up
+     * @return The position of the journal right after the record
+     * @throws IOException
+     */
+    private long append(final ByteBuffer payload) throws IOException {
+        final CRC32 crc = new CRC32();
+        crc.update(payload.array(), 0, payload.position());
+
+        final ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        header.putInt(payload.position());
+        header.putInt((int) crc.getValue());
+        header.flip();
+        payload.flip();
+
+        final ByteBuffer[] record = {header, payload};
+        writeLock.lock();
+        try {
+            while (payload.hasRemaining()) {
+                channel.write(record);
+            }
+            written = channel.position();
+
+            return written;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Make sure the journal is on disk up to the given position. Callers waiting while a sync is running are served by
+     * the next one, which covers everything appended in the meantime.
+     *
+     * @param position
+     * @throws IOException
+     */
+    private void sync(final long position) throws IOException {
+        syncLock.lock();
+        try {
+            if (synced >= position) {
+                // Forced along with the records of other channels
+                return;
+            }
+
+            final long target;
+            writeLock.lock();
+            try {
+                target = written;
+            } finally {
+                writeLock.unlock();
+            }
+
+            channel.force(false);
+            synced = target;
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    /**
+     * Force the journal to disk and close it
+     *
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (channel.isOpen()) {
+                channel.force(true);
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Hex encode a transaction hash, as horizon reports it
+     *
+     * @param bytes
+     * @return
+     */
+    private static String toHex(final byte[] bytes) {
+        final StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+
+        return hex.toString();
+    }
+
+    /**
+     * Decode a hex encoded transaction hash, unknown hashes are recorded as zeros
+     *
+     * @param hex
+     * @return
+     */
+    private static byte[] fromHex(final String hex) {
+        final byte[] bytes = new byte[HASH_LENGTH];
+        if (hex == null || hex.length() != HASH_LENGTH * 2) {
+            return bytes;
+        }
+
+        for (int i = 0; i < HASH_LENGTH; i++) {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(i * 2, i * 2 + 2), 16);
+        }
+
+        return bytes;
+    }
+
+    //endregion
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+}
@@ -1,27 +1,31 @@
 package com.lumenaut.poolmanager;
 
 import com.lumenaut.poolmanager.DataFormats.*;
+import com.lumenaut.poolmanager.PayoutJournal.JournaledBatch;
+import com.lumenaut.poolmanager.gateways.AccountValidationService;
+import com.lumenaut.poolmanager.gateways.HorizonServers;
+import com.lumenaut.poolmanager.gateways.LedgerClock;
+import com.lumenaut.poolmanager.gateways.SequenceTracker;
 import com.lumenaut.poolmanager.gateways.StellarGateway;
 import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.scene.control.*;
 import javafx.scene.layout.AnchorPane;
-import org.jctools.queues.atomic.SpscAtomicArrayQueue;
+import org.jctools.queues.atomic.MpmcAtomicArrayQueue;
 import org.stellar.sdk.KeyPair;
 import org.stellar.sdk.Server;
 import org.stellar.sdk.responses.SubmitTransactionResponse.Extras.ResultCodes;
 
 import java.io.*;
 import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
-import java.util.Date;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 import static com.lumenaut.poolmanager.DataFormats.*;
 import static com.lumenaut.poolmanager.Services.EXECUTOR;
@@ -61,6 +65,18 @@ public class ProcessingController {
     ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
     //region FIELDS
 
+    // Batches queued ahead of the channels, per channel
+    private static final int BATCHES_QUEUED_PER_CHANNEL = 2 * MAX_TRANSACTIONS_IN_FLIGHT;
+
+    // Wait between attempts to queue a batch while the channels catch up (nanoseconds)
+    private static final long BATCH_QUEUE_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+
+    // Plan entries validated at once, the next chunk is validated while the current one is batched
+    private static final int VALIDATION_CHUNK_SIZE = 1000;
+
+    // Time past their validity after which journaled transactions not found on the ledger can be considered dropped
+    private static final long JOURNAL_SETTLE_MARGIN = 2 * LedgerClock.EXPECTED_LEDGER_CLOSE_TIME;
+
     // Timing
     public String processingFolderPath;
 
@@ -143,11 +159,152 @@ public class ProcessingController {
             startBtn.setDisable(true);
             closeBtn.setDisable(true);
 
-            // Start async processing
-            if (!SETTING_PARALLEL_CHANNELS_ENABLED) {
-                serialProcessing();
+            // Resume from the journal of a previous run of the plan (if any), then start async processing
+            CompletableFuture.supplyAsync(this::openPayoutJournal).whenComplete((opened, e) -> Platform.runLater(() -> {
+                if (e != null) {
+                    // Nothing was paid, the plan can be started again
+                    final Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                    appendMessage("[ERROR] Unable to open the payout journal: " + cause + "\n");
+                    startBtn.setDisable(false);
+                    closeBtn.setDisable(false);
+
+                    return;
+                }
+
+                if (!opened) {
+                    closeBtn.setDisable(false);
+
+                    return;
+                }
+
+                if (!SETTING_PARALLEL_CHANNELS_ENABLED) {
+                    serialProcessing();
+                } else {
+                    parallelProcessing();
+                }
+            }));
+        }
+    }
+
+    /**
+     * Open the payout journal of the transaction plan and hand it to the gateway. If the plan was run before, the
+     * entries the journal shows paid are removed from it.
+     *
+     * @return false if the plan can't be processed
+     */
+    private boolean openPayoutJournal() {
+        final File journalFile = PayoutJournal.getJournalFile(SETTING_OPERATIONS_NETWORK, transactionPlan.getUuid());
+        final boolean resuming = journalFile.exists();
+
+        PayoutJournal journal = null;
+        try {
+            journal = PayoutJournal.open(journalFile, transactionPlan.getUuid());
+            if (resuming && !resumeFromJournal(journal)) {
+                journal.close();
+
+                return false;
+            }
+        } catch (IOException e) {
+            Platform.runLater(() -> appendMessage("[ERROR] Unable to resume from the payout journal: " + e.getMessage() + "\n"));
+            if (journal != null) {
+                try {
+                    journal.close();
+                } catch (IOException ignored) {
+                }
+            }
+
+            return false;
+        }
+
+        StellarGateway.setPayoutJournal(journal);
+
+        return true;
+    }
+
+    /**
+     * Remove the entries paid by previous runs from the transaction plan. The batches whose outcome wasn't recorded
+     * are looked up by the hashes of their transactions, no other horizon request is made. Processing can't resume
+     * while any of those transactions could still make it into a ledger.
+     *
+     * @param journal
+     * @return false if the plan can't be resumed yet
+     * @throws IOException
+     */
+    private boolean resumeFromJournal(final PayoutJournal journal) throws IOException {
+        final long validity = TimeUnit.SECONDS.toMillis(StellarGateway.TRANSACTION_VALIDITY_TIMEOUT_SECONDS) + JOURNAL_SETTLE_MARGIN;
+
+        // Paid entries by destination and amount
+        final HashMap<String, Integer> paidEntries = new HashMap<>();
+        int paidBatches = 0;
+        int lookups = 0;
+        for (JournaledBatch batch : journal.getBatches()) {
+            boolean paid = batch.isPaid();
+            if (!paid) {
+                for (String hash : batch.getSubmissions()) {
+                    lookups++;
+                    if (Boolean.TRUE.equals(StellarGateway.getTransactionOutcome(hash))) {
+                        // Record it, the next resume won't look it up again
+                        journal.recordPaid(batch.getId(), hash);
+                        paid = true;
+
+                        break;
+                    }
+                }
+
+                final long waited = System.currentTimeMillis() - batch.getLastSubmission();
+                if (!paid && !batch.getSubmissions().isEmpty() && waited < validity) {
+                    final long wait = TimeUnit.MILLISECONDS.toSeconds(validity - waited) + 1;
+                    Platform.runLater(() -> appendMessage("[RESUME] A transaction of the previous run is still pending, try again in " + wait + " seconds\n"));
+
+                    return false;
+                }
+            }
+
+            if (paid) {
+                paidBatches++;
+                for (TransactionResultEntry entry : batch.getEntries()) {
+                    paidEntries.merge(entry.getDestination() + ":" + entry.getAmount(), 1, Integer::sum);
+                }
+            }
+        }
+
+        // Keep the entries not paid yet
+        final List<TransactionPlanEntry> remainingEntries = new ArrayList<>(transactionPlan.getEntries().size());
+        long paidAmount = 0L;
+        for (TransactionPlanEntry entry : transactionPlan.getEntries()) {
+            final String key = entry.getDestination() + ":" + entry.getAmount();
+            final Integer count = paidEntries.get(key);
+            if (count != null && count > 0) {
+                paidEntries.put(key, count - 1);
+                paidAmount += entry.getAmount();
             } else {
-                parallelProcessing();
+                remainingEntries.add(entry);
+            }
+        }
+
+        final int paidOperations = transactionPlan.getEntries().size() - remainingEntries.size();
+        transactionPlan.setEntries(remainingEntries);
+        // The plan budgeted the configured fee per operation, whatever was actually charged
+        transactionPlan.setTotalPayment(transactionPlan.getTotalPayment() - paidAmount - (long) paidOperations * SETTING_FEE);
+
+        final String message = "[RESUME] " + paidBatches + " batches (" + paidOperations + " operations, " + XLMUtils.formatBalanceFullPrecision(paidAmount) + " XLM) " +
+                               "already paid, " + lookups + " transactions looked up. Paying the remaining " + remainingEntries.size() + " operations\n";
+        Platform.runLater(() -> appendMessage(message));
+
+        return true;
+    }
+
+    /**
+     * Close the payout journal of the run
+     */
+    private static void closePayoutJournal() {
+        final PayoutJournal journal = StellarGateway.getPayoutJournal();
+        if (journal != null) {
+            StellarGateway.setPayoutJournal(null);
+            try {
+                journal.close();
+            } catch (IOException e) {
+                System.err.println("Unable to close the payout journal: " + e.getMessage());
             }
         }
     }
@@ -160,8 +317,16 @@ public class ProcessingController {
             ////////////////////////////////////////////////////////////////////////////////////////////////////
             // INIT
 
-            // Build server object
-            final Server server = new Server(SETTING_OPERATIONS_NETWORK.equals("LIVE") ? SETTING_HORIZON_LIVE_NETWORK : SETTING_HORIZON_TEST_NETWORK);
+            // Shared server object
+            final Server server = HorizonServers.getOperationsServer();
+
+            // Price the first transactions on the current network fees as well
+            if (SETTING_FEE_PERCENTILE > 0) {
+                StellarGateway.FEE_STRATEGY.refresh();
+            }
+
+            // The pool's sequence number is loaded once and then tracked locally
+            final SequenceTracker sequenceTracker = new SequenceTracker(server);
 
             // Build key pairs
             final KeyPair source;
@@ -225,13 +390,23 @@ public class ProcessingController {
                 if (operationsCount % SETTING_OPERATIONS_PER_TRANSACTION_BATCH == 0) {
                     // The batch is full, time to execute
                     try {
-                        final TransactionBatchResponse batchResponse = StellarGateway.executeSingleTransactionBatch(server, source, signers, tmpBatchResult);
+                        StellarGateway.journalBatch(tmpBatchResult);
+                        final TransactionBatchResponse batchResponse = StellarGateway.executeSingleTransactionBatch(server, sequenceTracker, source, signers, tmpBatchResult);
+
+                        // Fees actually charged, failed transactions included in a ledger are charged as well
+                        totalFees.getAndAdd(batchResponse.feePaid);
+                        totalPayment.getAndAdd(batchResponse.feePaid);
+
                         if (batchResponse.success) {
+                            // Journal the paid batch
+                            StellarGateway.journalPaid(tmpBatchResult, batchResponse);
+
                             // Update payment counters
                             for (TransactionResultEntry resultEntry : tmpBatchResult.getEntries()) {
                                 paidTotal.getAndAdd(resultEntry.getAmount());
-                                totalFees.getAndAdd(SETTING_FEE);
-                                totalPayment.getAndAdd(resultEntry.getAmount() + SETTING_FEE);
+                                totalPayment.getAndAdd(resultEntry.getAmount());
+
+                                // The plan budgeted the configured fee per operation, whatever was actually charged
                                 remainingPayment.getAndAdd(-1 * (resultEntry.getAmount() + SETTING_FEE));
                             }
 
@@ -290,13 +465,23 @@ public class ProcessingController {
             // Process last batch, if it has any entries
             if (!tmpBatchResult.getEntries().isEmpty()) {
                 try {
-                    final TransactionBatchResponse batchResponse = StellarGateway.executeSingleTransactionBatch(server, source, signers, tmpBatchResult);
+                    StellarGateway.journalBatch(tmpBatchResult);
+                    final TransactionBatchResponse batchResponse = StellarGateway.executeSingleTransactionBatch(server, sequenceTracker, source, signers, tmpBatchResult);
+
+                    // Fees actually charged, failed transactions included in a ledger are charged as well
+                    totalFees.getAndAdd(batchResponse.feePaid);
+                    totalPayment.getAndAdd(batchResponse.feePaid);
+
                     if (batchResponse.success) {
+                        // Journal the paid batch
+                        StellarGateway.journalPaid(tmpBatchResult, batchResponse);
+
                         // Update payment counters
                         for (TransactionResultEntry resultEntry : tmpBatchResult.getEntries()) {
                             paidTotal.getAndAdd(resultEntry.getAmount());
-                            totalFees.getAndAdd(SETTING_FEE);
-                            totalPayment.getAndAdd(resultEntry.getAmount() + SETTING_FEE);
+                            totalPayment.getAndAdd(resultEntry.getAmount());
+
+                            // The plan budgeted the configured fee per operation, whatever was actually charged
                             remainingPayment.getAndAdd(-1 * (resultEntry.getAmount() + SETTING_FEE));
                         }
 
@@ -369,6 +554,8 @@ public class ProcessingController {
 
         // Completion handler
         processing.thenAccept(success -> {
+            closePayoutJournal();
+
             if (success) {
                 Platform.runLater(() -> {
                     // Append final message
@@ -421,8 +608,13 @@ public class ProcessingController {
             appendMessage("[ERROR] You need to setup at least 2 valid payment channels to process parallel transactions");
         }
 
-        // Build server object for accounts checking
-        final Server server = new Server(SETTING_OPERATIONS_NETWORK.equals("LIVE") ? SETTING_HORIZON_LIVE_NETWORK : SETTING_HORIZON_TEST_NETWORK);
+        // Virtual threads need a recent runtime
+        if (SETTING_VIRTUAL_THREADS && !Services.isVirtualThreadsAvailable()) {
+            appendMessage("[NOTICE] Virtual threads require Java 21 or later, the channels will run on platform threads\n");
+        }
+
+        // Shared server object for accounts checking
+        final Server server = HorizonServers.getOperationsServer();
 
         // Build server object and key pairs
         final KeyPair source;
@@ -432,6 +624,7 @@ public class ProcessingController {
             signer = KeyPair.fromSecretSeed(signingKey);
         } catch (Throwable e) {
             appendMessage("[ERROR] invalid account ID or signing keys: " + signingKey);
+            closePayoutJournal();
 
             return;
         }
@@ -445,7 +638,6 @@ public class ProcessingController {
         // Operations counters
         final int totalEntries = transactionPlan.getEntries().size();
         final int totalBatches = totalEntries / SETTING_OPERATIONS_PER_TRANSACTION_BATCH + (totalEntries % SETTING_OPERATIONS_PER_TRANSACTION_BATCH > 0 ? 1 : 0);
-        final int maxBatchesPerChannel = totalBatches / availableChannels + (totalBatches % availableChannels > 0 ? 1 : 0);
 
         // Payment counters
         final AtomicLong paidTotal = new AtomicLong(0L);
@@ -457,10 +649,26 @@ public class ProcessingController {
         final ArrayList<String> channelAccounts = StellarGateway.getChannelAccounts();
         final ArrayList<String> channelKeys = StellarGateway.getChannelKeys();
 
-        // Channels queues init
-        final ArrayList<SpscAtomicArrayQueue<TransactionResult>> channelsQueues = new ArrayList<>(availableChannels);
+        // Channels with batches to process
+        final int usedChannels = Math.min(availableChannels, Math.max(1, totalBatches));
+
+        // Batches queue shared by all channels, each channel pulls the next batch as soon as it's free so that slow
+        // channels don't hold back work the others could be doing. It's bounded: batches are prepared while the
+        // channels are submitting, never too far ahead of them
+        final MpmcAtomicArrayQueue<TransactionResult> batchQueue = new MpmcAtomicArrayQueue<>(Math.max(2, Math.min(totalBatches, usedChannels * BATCHES_QUEUED_PER_CHANNEL)));
+        final AtomicBoolean batchingCompleted = new AtomicBoolean(false);
+        final AtomicInteger remainingBatches = new AtomicInteger(totalBatches);
+
+        // Channels still running, batches can't be queued once they're all gone
+        final AtomicInteger activeChannels = new AtomicInteger(usedChannels);
+
+        // Set if the batches couldn't be prepared, the payment is aborted
+        final AtomicBoolean batchingFailed = new AtomicBoolean(false);
+
+        // Channels completed batches init
+        final AtomicInteger[] channelsBatches = new AtomicInteger[availableChannels];
         for (int i = 0; i < availableChannels; i++) {
-            channelsQueues.add(new SpscAtomicArrayQueue<>(maxBatchesPerChannel));
+            channelsBatches[i] = new AtomicInteger(0);
         }
 
         // Channels progress init
@@ -485,7 +693,7 @@ public class ProcessingController {
         final ArrayList<Integer> emptyChannels = new ArrayList<>();
 
         ////////////////////////////////////////////////////////////////////////////////////////////////////////////////
-        // BATCH ENTRIES AND FILL CHANNELS QUEUES
+        // STREAM ENTRIES THROUGH VALIDATION AND BATCHING INTO THE BATCHES QUEUE
 
         // Update result total entries planned
         finalResults.setPlannedOperations(totalEntries);
@@ -493,118 +701,107 @@ public class ProcessingController {
         // Update progress bar
         updateProgressBar(totalEntries, 0);
 
-        // Build temporary transaction result (batch) buffer
-        final TransactionResult tmpBatchBuffer = new TransactionResult();
-        tmpBatchBuffer.setEntries(new LinkedList<>());
+        // Accounts excluded by validation, reported once the payment is over
+        final List<String> validationFailures = Collections.synchronizedList(new ArrayList<>());
 
-        // Start processing
-        final AtomicInteger currentChannelIndex = new AtomicInteger(0);
-        final AtomicInteger operationsCount = new AtomicInteger(0);
-        final CompletableFuture<Boolean> request = CompletableFuture.supplyAsync(() -> {
-            final StringBuilder sb = new StringBuilder();
-            final List<String> validationFailures = new ArrayList<>();
+        // A single validation service for the whole run, its cache is written once the run is over
+        final AccountValidationService validationService = new AccountValidationService(server);
 
-            final AtomicInteger currentEntry = new AtomicInteger(0);
-            final int total = transactionPlan.getEntries().size();
-            for (TransactionPlanEntry entry : transactionPlan.getEntries()) {
-                // Check if the account is still valid
-                if (SETTING_VALIDATE_ACCOUNTS_BEFORE_PAYMENT) {
-                    try {
-                        server.accounts().account(KeyPair.fromAccountId(entry.getDestination()));
-                    } catch (Exception e) {
-                        validationFailures.add("[NOTICE] Account [" + entry.getDestination() + "] validation error, excluding from payments.\n");
-                        currentEntry.getAndIncrement();
-
-                        continue;
+        // Entries are validated a chunk at a time (the next chunk while the current one is batched), and each batch is
+        // queued as soon as it's full, waiting for the channels while the queue is full
+        final AtomicInteger operationsCount = new AtomicInteger(0);
+        final Runnable batching = () -> {
+            try {
+                // Split the plan in validation chunks
+                final List<List<TransactionPlanEntry>> chunks = new ArrayList<>();
+                for (TransactionPlanEntry entry : transactionPlan.getEntries()) {
+                    if (chunks.isEmpty() || chunks.get(chunks.size() - 1).size() == VALIDATION_CHUNK_SIZE) {
+                        chunks.add(new ArrayList<>(VALIDATION_CHUNK_SIZE));
                     }
+
+                    chunks.get(chunks.size() - 1).add(entry);
                 }
 
-                // Create new entry for the temporary result (which we're using as a buffer for batches)
-                final TransactionResultEntry transactionResultEntry = new TransactionResultEntry();
-                transactionResultEntry.setDestination(entry.getDestination());
-                transactionResultEntry.setRecordedBalance(entry.getRecordedBalance());
-                transactionResultEntry.setAmount(entry.getAmount());
-                transactionResultEntry.setDonation(entry.getDonation());
+                // Build temporary transaction result (batch) buffer
+                final TransactionResult tmpBatchBuffer = new TransactionResult();
+                tmpBatchBuffer.setEntries(new LinkedList<>());
+                int queuedBatches = 0;
 
-                // Append to the temporary buffer
-                tmpBatchBuffer.getEntries().add(transactionResultEntry);
+                CompletableFuture<Set<String>> nextValidation = validateChunk(validationService, chunks, 0);
+                for (int i = 0; i < chunks.size(); i++) {
+                    final Set<String> invalidAccounts = nextValidation.join();
+                    nextValidation = validateChunk(validationService, chunks, i + 1);
 
-                // Another one bites the dust..
-                operationsCount.getAndIncrement();
+                    for (TransactionPlanEntry entry : chunks.get(i)) {
+                        // Check if the account is still valid
+                        if (invalidAccounts.contains(entry.getDestination())) {
+                            validationFailures.add("[NOTICE] Account [" + entry.getDestination() + "] validation error, excluding from payments.\n");
 
-                // If the batch is full, execute it
-                if (operationsCount.get() % SETTING_OPERATIONS_PER_TRANSACTION_BATCH == 0) {
-                    // Create channel batch
-                    final TransactionResult channelBatchResult = new TransactionResult();
+                            continue;
+                        }
 
-                    // Initialize the executed operations counter (unused), just in case we need to serialize this structure
-                    channelBatchResult.setExecutedOperations(new AtomicInteger(0));
-                    channelBatchResult.setEntries(new LinkedList<>());
+                        // Create new entry for the temporary result (which we're using as a buffer for batches)
+                        final TransactionResultEntry transactionResultEntry = new TransactionResultEntry();
+                        transactionResultEntry.setDestination(entry.getDestination());
+                        transactionResultEntry.setRecordedBalance(entry.getRecordedBalance());
+                        transactionResultEntry.setAmount(entry.getAmount());
+                        transactionResultEntry.setDonation(entry.getDonation());
 
-                    // Copy the entries from the tmp batch buffer
-                    tmpBatchBuffer.getEntries().forEach(transactionEntry -> channelBatchResult.getEntries().add(transactionEntry));
+                        // Append to the temporary buffer
+                        tmpBatchBuffer.getEntries().add(transactionResultEntry);
 
-                    // Append to the next available channel
-                    channelsQueues.get(currentChannelIndex.getAndIncrement()).offer(channelBatchResult);
+                        // Another one bites the dust..
+                        operationsCount.getAndIncrement();
 
-                    // Loop back if we moved past the last channel
-                    if (currentChannelIndex.get() == availableChannels) {
-                        currentChannelIndex.getAndSet(0);
+                        // If the batch is full, queue it
+                        if (operationsCount.get() % SETTING_OPERATIONS_PER_TRANSACTION_BATCH == 0 && queueBatch(batchQueue, tmpBatchBuffer, activeChannels, validationFailures)) {
+                            queuedBatches++;
+                        }
                     }
-
-                    // Start new tmp batch
-                    tmpBatchBuffer.getEntries().clear();
                 }
 
-                currentEntry.getAndIncrement();
-
-                // Update output
-                Platform.runLater(() -> {
-                    sb.setLength(0);
-                    sb.append("[RUNNING] Preparing channel transaction batches and validating accounts, this might take a while.. Please stand by!\n\n");
-                    for (String failure : validationFailures) {
-                        sb.append(failure);
-                    }
-
-                    sb.append("\n\n[PROCESSING] ").append(currentEntry.get()).append("/").append(total);
+                // If we have leftovers, append them to one last batch
+                if (tmpBatchBuffer.getEntries().size() > 0 && queueBatch(batchQueue, tmpBatchBuffer, activeChannels, validationFailures)) {
+                    queuedBatches++;
+                }
 
-                    processingOutputTextArea.setText(sb.toString());
-                    scrollToEnd();
-                });
+                // Batches emptied by the validation will never come
+                remainingBatches.addAndGet(queuedBatches - totalBatches);
+            } catch (RuntimeException e) {
+                // Abort the payment: drop the batches not taken yet, the channels finish the ones they hold and exit
+                batchingFailed.set(true);
+                batchQueue.clear();
+                remainingBatches.set(0);
+
+                final Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                validationFailures.add("[ERROR] Preparing the batches failed, the payment was aborted: " + cause.getMessage() + "\n");
+            } finally {
+                batchingCompleted.set(true);
             }
+        };
 
-            // If we have leftovers, append them to one last batch
-            if (tmpBatchBuffer.getEntries().size() > 0) {
-                // Create channel batch
-                final TransactionResult channelBatchResult = new TransactionResult();
-
-                // Initialize the executed operations counter (unused), just in case we need to serialize this structure)
-                channelBatchResult.setExecutedOperations(new AtomicInteger(0));
-                channelBatchResult.setEntries(new LinkedList<>());
-
-                // Copy the entries from the tmp batch buffer
-                tmpBatchBuffer.getEntries().forEach(transactionEntry -> channelBatchResult.getEntries().add(transactionEntry));
-
-                // Append to the current channel if it has enough space
-                channelsQueues.get(currentChannelIndex.get()).offer(channelBatchResult);
+        // Start processing
+        CompletableFuture.runAsync(() -> {
+            // Start time profiling
+            final long startTime = System.currentTimeMillis();
 
-                // Final cleanup
-                tmpBatchBuffer.getEntries().clear();
+            // Price the first transactions on the current network fees as well
+            if (SETTING_FEE_PERCENTILE > 0) {
+                StellarGateway.FEE_STRATEGY.refresh();
             }
 
-            return true;
-        });
+            // Make room for the channels and let them all submit until the network pushes back
+            Services.ensureChannelThreads(availableChannels);
+            StellarGateway.CHANNEL_SCHEDULER.reset(availableChannels * SETTING_TRANSACTIONS_IN_FLIGHT);
 
-        // Start processing
-        request.thenAccept(preparationComplete -> {
-            // Start time profiling
-            final long startTime = System.currentTimeMillis();
+            // Batch responses of all the channels go to a single log
+            final TransactionResponseLog responseLog = new TransactionResponseLog(processingFolderPath);
 
             ////////////////////////////////////////////////////////////////////////////////////////////////////////////////
             // CREATE TASKS FOR EACH CHANNEL AND EXECUTE THEM
             for (int i = 0; i < availableChannels; i++) {
-                // Skip channels that have no work to do
-                if (channelsQueues.get(i) != null && channelsQueues.get(i).size() > 0) {
+                // Skip channels that would have no work to do
+                if (i < usedChannels) {
                     // Configure task
                     final ParallelTransactionTaskConfig config = new ParallelTransactionTaskConfig(finalResults);
                     config.paidTotal = paidTotal;
@@ -620,12 +817,17 @@ public class ProcessingController {
                     config.errorFlag = channelsErrors[i];
                     config.idleFlag = channelsIdle[i];
                     config.errorMessages = new ArrayList<>();
-                    config.batchQueue = channelsQueues.get(i);
-                    config.outputPath = processingFolderPath;
+                    config.batchQueue = batchQueue;
+                    config.batchingCompleted = batchingCompleted;
+                    config.remainingBatches = remainingBatches;
+                    config.activeChannels = activeChannels;
+                    config.channels = usedChannels;
+                    config.completedBatches = channelsBatches[i];
+                    config.responseLog = responseLog;
 
                     // Create and run
                     final ParallelTransactionTask task = new ParallelTransactionTask(config);
-                    EXECUTOR.execute(task);
+                    Services.forBlockingTasks(EXECUTOR).execute(task);
                 } else {
                     // Append to empty list
                     emptyChannels.add(i);
@@ -635,6 +837,9 @@ public class ProcessingController {
                 }
             }
 
+            // Feed the channels as the batches are ready
+            new Thread(batching).start();
+
             // Monitor the progress in a dedicated thread
             new Thread(() -> {
                 boolean processing = true;
@@ -654,16 +859,16 @@ public class ProcessingController {
                         processingOutputTextArea.clear();
 
                         // Header
-                        processingOutputTextArea.appendText("CHANNEL[#] | BATCH QUEUE | CHANNEL PROGRESS | CHANNEL PROGRESS % | STATUS\n\n");
+                        processingOutputTextArea.appendText("CHANNEL[#] | BATCHES DONE | CHANNEL PROGRESS | CHANNEL PROGRESS % | STATUS (QUEUED BATCHES: " + batchQueue.size() + (batchingCompleted.get() ? "" : ", PREPARING") + ")\n\n");
 
                         // Update each channel
                         for (int i = 0; i < availableChannels; i++) {
                             final int currentProgress = channelsProgress[i].get();
                             final boolean error = channelsErrors[i].get();
-                            final SpscAtomicArrayQueue<TransactionResult> channelQueue = channelsQueues.get(i);
+                            final int completedBatches = channelsBatches[i].get();
 
                             // Channel status row start
-                            processingOutputTextArea.appendText("Channel[" + (i < 10 ? "0" : "") + i + "] [" + (channelQueue.size() < 10 ? "0" : "") + channelQueue.size() + "] [");
+                            processingOutputTextArea.appendText("Channel[" + (i < 10 ? "0" : "") + i + "] [" + (completedBatches < 10 ? "0" : "") + completedBatches + "] [");
 
                             if (emptyChannels.contains(i)) {
                                 // Empty channel, fill the progress bar
@@ -715,6 +920,9 @@ public class ProcessingController {
                     if (completed) {
                         // Flag completion, this thread will exit
                         processing = false;
+                        closePayoutJournal();
+                        responseLog.close();
+                        validationService.saveCache();
 
                         // Execution time
                         final long stopTime = System.currentTimeMillis();
@@ -741,13 +949,30 @@ public class ProcessingController {
                         }
 
                         // Check if errors occurred during the transaction process
-                        boolean errorsOccurred = false;
+                        boolean errorsOccurred = batchingFailed.get();
                         for (int i = 0; i < availableChannels; i++) {
                             if (channelsErrors[i].get()) {
                                 errorsOccurred = true;
                             }
                         }
 
+                        // Report how the channels were throttled
+                        final String schedulerState = StellarGateway.CHANNEL_SCHEDULER.describe();
+                        Platform.runLater(() -> appendMessage("\n[CHANNELS] Submissions " + schedulerState + "\n"));
+
+                        // Report the pricing the run ended with
+                        final String feeState = StellarGateway.FEE_STRATEGY.describe();
+                        Platform.runLater(() -> appendMessage("[FEES] Current " + feeState + "\n"));
+
+                        // Report the accounts excluded by validation
+                        final String excludedAccounts;
+                        synchronized (validationFailures) {
+                            excludedAccounts = String.join("", validationFailures);
+                        }
+                        if (!excludedAccounts.isEmpty()) {
+                            Platform.runLater(() -> appendMessage("\n" + excludedAccounts));
+                        }
+
                         // Status update
                         if (!errorsOccurred) {
                             Platform.runLater(() -> {
@@ -799,6 +1024,67 @@ public class ProcessingController {
         });
     }
 
+    /**
+     * Start validating the accounts of a chunk of plan entries
+     *
+     * @param validationService
+     * @param chunks
+     * @param index             The index of the chunk
+     * @return A future completed with the accounts failing validation, empty if validation is disabled or there's no such chunk
+     */
+    private static CompletableFuture<Set<String>> validateChunk(final AccountValidationService validationService, final List<List<TransactionPlanEntry>> chunks, final int index) {
+        if (!SETTING_VALIDATE_ACCOUNTS_BEFORE_PAYMENT || index >= chunks.size()) {
+            return CompletableFuture.completedFuture(Collections.emptySet());
+        }
+
+        final List<String> destinations = new ArrayList<>(chunks.get(index).size());
+        chunks.get(index).forEach(entry -> destinations.add(entry.getDestination()));
+
+        return CompletableFuture.supplyAsync(() -> validationService.findMissingAccounts(destinations), Services.VALIDATION_EXECUTOR);
+    }
+
+    /**
+     * Journal the batch collected in the buffer and queue it for the channels, then clear the buffer. Waits while the
+     * queue is full.
+     *
+     * @param batchQueue
+     * @param tmpBatchBuffer
+     * @param activeChannels The channels still running
+     * @param failures       Collects the batches which couldn't be journaled, they're not paid
+     * @return false if the batch wasn't queued
+     * @throws IllegalStateException If all the channels stopped
+     */
+    private static boolean queueBatch(final MpmcAtomicArrayQueue<TransactionResult> batchQueue, final TransactionResult tmpBatchBuffer, final AtomicInteger activeChannels, final List<String> failures) {
+        // Create channel batch
+        final TransactionResult channelBatchResult = new TransactionResult();
+
+        // Initialize the executed operations counter (unused), just in case we need to serialize this structure
+        channelBatchResult.setExecutedOperations(new AtomicInteger(0));
+        channelBatchResult.setEntries(new LinkedList<>(tmpBatchBuffer.getEntries()));
+
+        // Start new tmp batch
+        tmpBatchBuffer.getEntries().clear();
+
+        try {
+            StellarGateway.journalBatch(channelBatchResult);
+        } catch (UncheckedIOException e) {
+            failures.add("[ERROR] Batch of " + channelBatchResult.getEntries().size() + " operations not paid: " + e.getMessage() + "\n");
+
+            return false;
+        }
+
+        // Wait for the channels to catch up
+        while (!batchQueue.offer(channelBatchResult)) {
+            if (activeChannels.get() == 0) {
+                throw new IllegalStateException("All the payment channels stopped");
+            }
+
+            LockSupport.parkNanos(BATCH_QUEUE_WAIT_NANOS);
+        }
+
+        return true;
+    }
+
     /**
      * Print batch error
      *
@@ -2,11 +2,13 @@ package com.lumenaut.poolmanager;
 
 import javafx.application.Platform;
 
-import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadFactory;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.lumenaut.poolmanager.Settings.MAX_THREADS;
+import static com.lumenaut.poolmanager.Settings.MAX_TRANSACTIONS_IN_FLIGHT;
+import static com.lumenaut.poolmanager.Settings.SETTING_VIRTUAL_THREADS;
+import static com.lumenaut.poolmanager.gateways.HorizonConnectionPool.MAX_POOL_SIZE;
 
 /**
  * @Author Luca Vignaroli
@@ -17,11 +19,52 @@ public class Services {
     ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
     //region FIELDS
 
-    // Init threadpool
+    // Init threadpool, one thread per payment channel (see ensureChannelThreads)
     public static final ThreadPoolExecutor EXECUTOR = (ThreadPoolExecutor) Executors.newFixedThreadPool(MAX_THREADS);
 
+    // Horizon database queries, never more threads than pooled connections
+    public static final ThreadPoolExecutor DATABASE_EXECUTOR = (ThreadPoolExecutor) Executors.newFixedThreadPool(MAX_POOL_SIZE);
+
+    // Blocking I/O requests (database queries, horizon calls) issued asynchronously by the UI, bounded in both threads
+    // and queued requests so that a stuck backend can't pile up work indefinitely
+    public static final int IO_THREADS = 16;
+    public static final int IO_QUEUE_CAPACITY = 256;
+    public static final ThreadPoolExecutor IO_EXECUTOR = new ThreadPoolExecutor(IO_THREADS, IO_THREADS, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(IO_QUEUE_CAPACITY));
+
+    // Pipelined transaction submissions, each one blocks until horizon reports the transaction's outcome. Twice the
+    // in flight transactions: a worker whose submission just completed may not be taking new ones yet when its window
+    // slot is refilled
+    public static final int SUBMISSION_THREADS_PER_TRANSACTION = 2;
+    public static final ThreadPoolExecutor SUBMISSION_EXECUTOR = new ThreadPoolExecutor(0, SUBMISSION_THREADS_PER_TRANSACTION * MAX_THREADS * MAX_TRANSACTIONS_IN_FLIGHT, 60L, TimeUnit.SECONDS, new SynchronousQueue<>());
+
+    // Voters pages requests, kept apart from the I/O executor the voters fetch itself runs on: a fetch waiting for its
+    // pages would otherwise hold a thread the pages need
+    public static final int PAGES_THREADS = 8;
+    public static final ThreadPoolExecutor PAGES_EXECUTOR = new ThreadPoolExecutor(PAGES_THREADS, PAGES_THREADS, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), new NamedThreadFactory("voters-pages"));
+
+    // Accounts validation of the entries being batched, one chunk at a time ahead of the batching
+    public static final ThreadPoolExecutor VALIDATION_EXECUTOR = new ThreadPoolExecutor(1, 1, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), new NamedThreadFactory("account-validation"));
+
+    // CPU bound work (transaction building and signing), one worker per core
+    public static final ForkJoinPool SIGNING_POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors(), ForkJoinPool.defaultForkJoinWorkerThreadFactory, Services::logUncaughtException, true);
+
+    // Timers (request timeouts)
+    public static final ScheduledThreadPoolExecutor SCHEDULER = new ScheduledThreadPoolExecutor(1);
+
+    // One virtual thread per task, for blocking work when virtual threads are enabled (null if the runtime doesn't
+    // support them, they're available from Java 21)
+    private static final ExecutorService VIRTUAL_EXECUTOR = newVirtualThreadExecutor();
+
     static {
         EXECUTOR.setThreadFactory(new ExceptionCatchingThreadFactory(EXECUTOR.getThreadFactory()));
+        DATABASE_EXECUTOR.setThreadFactory(new ExceptionCatchingThreadFactory(DATABASE_EXECUTOR.getThreadFactory()));
+        IO_EXECUTOR.setThreadFactory(new ExceptionCatchingThreadFactory(IO_EXECUTOR.getThreadFactory()));
+        IO_EXECUTOR.allowCoreThreadTimeOut(true);
+        SUBMISSION_EXECUTOR.setThreadFactory(new ExceptionCatchingThreadFactory(SUBMISSION_EXECUTOR.getThreadFactory()));
+        SCHEDULER.setThreadFactory(new ExceptionCatchingThreadFactory(SCHEDULER.getThreadFactory()));
+        SCHEDULER.setRemoveOnCancelPolicy(true);
+        VALIDATION_EXECUTOR.allowCoreThreadTimeOut(true);
+        PAGES_EXECUTOR.allowCoreThreadTimeOut(true);
     }
 
     //endregion
@@ -45,16 +88,33 @@ public class Services {
             final Thread t = delegate.newThread(r);
 
             // Setup uncaught exception handling
-            t.setUncaughtExceptionHandler((t1, e) -> Platform.runLater(() -> {
-                System.err.println("Unhandled Exception occurred in Thread: " + t1.getName() + "(" + t1.getId() + ")");
-                e.printStackTrace();
-            }));
+            t.setUncaughtExceptionHandler(Services::logUncaughtException);
 
             // Return the new thread
             return t;
         }
     }
 
+    /**
+     * Thread factory for daemon threads named after the executor, uncaught exceptions are rerouted as well
+     */
+    private static class NamedThreadFactory implements ThreadFactory {
+        private final String name;
+        private final AtomicInteger threads = new AtomicInteger(0);
+
+        private NamedThreadFactory(final String name) {
+            this.name = name;
+        }
+
+        public Thread newThread(final Runnable r) {
+            final Thread t = new Thread(r, name + "-" + threads.incrementAndGet());
+            t.setDaemon(true);
+            t.setUncaughtExceptionHandler(Services::logUncaughtException);
+
+            return t;
+        }
+    }
+
     //endregion
     ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
 
@@ -86,6 +146,137 @@ public class Services {
     ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
     //region METHODS
 
+    /**
+     * Reroute an uncaught exception to the main thread for logging
+     *
+     * @param t
+     * @param e
+     */
+    private static void logUncaughtException(final Thread t, final Throwable e) {
+        Platform.runLater(() -> {
+            System.err.println("Unhandled Exception occurred in Thread: " + t.getName() + "(" + t.getId() + ")");
+            e.printStackTrace();
+        });
+    }
+
+    /**
+     * Grow the channel and submission executors so that the given number of payment channels can run at once, the
+     * executors never shrink
+     *
+     * @param channels
+     */
+    public static synchronized void ensureChannelThreads(final int channels) {
+        // Raise the maximum first, the core size can't exceed it
+        if (EXECUTOR.getMaximumPoolSize() < channels) {
+            EXECUTOR.setMaximumPoolSize(channels);
+            EXECUTOR.setCorePoolSize(channels);
+        }
+
+        final int submissions = SUBMISSION_THREADS_PER_TRANSACTION * channels * MAX_TRANSACTIONS_IN_FLIGHT;
+        if (SUBMISSION_EXECUTOR.getMaximumPoolSize() < submissions) {
+            SUBMISSION_EXECUTOR.setMaximumPoolSize(submissions);
+        }
+    }
+
+    /**
+     * Check if the runtime supports virtual threads
+     *
+     * @return
+     */
+    public static boolean isVirtualThreadsAvailable() {
+        return VIRTUAL_EXECUTOR != null;
+    }
+
+    /**
+     * Get the executor blocking tasks should run on: a virtual thread per task when virtual threads are enabled and
+     * supported, the given executor otherwise
+     *
+     * @param platformExecutor The executor to use with platform threads
+     * @return
+     */
+    public static ExecutorService forBlockingTasks(final ExecutorService platformExecutor) {
+        return SETTING_VIRTUAL_THREADS && VIRTUAL_EXECUTOR != null ? VIRTUAL_EXECUTOR : platformExecutor;
+    }
+
+    /**
+     * Build an executor running each task on a new virtual thread. The application targets Java 8, so the virtual
+     * threads API is looked up at runtime.
+     *
+     * @return The executor, null if virtual threads aren't supported
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            final Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            final ThreadFactory factory = (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class).invoke(null, new ExceptionCatchingThreadFactory(factory));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Run the given blocking task on the I/O executor
+     *
+     * @param task    The task
+     * @param timeout Time after which the task is interrupted and the future completed with a TimeoutException
+     *                (milliseconds, 0 for no timeout)
+     * @param <T>
+     * @return A future completed with the task result, cancelling it interrupts the task
+     */
+    public static <T> CompletableFuture<T> supplyAsync(final Callable<T> task, final long timeout) {
+        return supplyAsync(task, IO_EXECUTOR, timeout);
+    }
+
+    /**
+     * Run the given blocking task on the given executor
+     *
+     * @param task     The task
+     * @param executor The executor running the task
+     * @param timeout  Time after which the task is interrupted and the future completed with a TimeoutException
+     *                 (milliseconds, 0 for no timeout)
+     * @param <T>
+     * @return A future completed with the task result, cancelling it interrupts the task
+     */
+    public static <T> CompletableFuture<T> supplyAsync(final Callable<T> task, final ExecutorService executor, final long timeout) {
+        final CompletableFuture<T> result = new CompletableFuture<>();
+
+        final Future<?> execution;
+        try {
+            execution = executor.submit(() -> {
+                // Skip it altogether if it was cancelled while queued
+                if (result.isDone()) {
+                    return;
+                }
+
+                try {
+                    result.complete(task.call());
+                } catch (Throwable e) {
+                    result.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(e);
+
+            return result;
+        }
+
+        // Timeout
+        if (timeout > 0) {
+            final ScheduledFuture<?> timer = SCHEDULER.schedule(() -> result.completeExceptionally(new TimeoutException("The request timed out")), timeout, TimeUnit.MILLISECONDS);
+            result.whenComplete((value, error) -> timer.cancel(false));
+        }
+
+        // Interrupt the task if cancelled or timed out
+        result.whenComplete((value, error) -> {
+            if (error != null) {
+                execution.cancel(true);
+            }
+        });
+
+        return result;
+    }
+
     //endregion
     ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
 }
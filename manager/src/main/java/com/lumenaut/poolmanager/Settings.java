@@ -16,11 +16,21 @@ public class Settings {
     //region FIELDS
 
     // Multi-Threading
-    // This setting should be as high as the maximum number of supported channels that the application can use.
+    // Initial number of channel threads, the pool grows up to the number of channels actually configured.
     // The transactions' threads (ParallelTransactionTask.java) are super lightweight and will spend 99% of the time I/O blocked,
     // don't worry if your CPU doesn't an equal amount of cores, your kernel's scheduler will manage just fine.
     public static final int MAX_THREADS = 50;
 
+    // Upper bound of the configurable number of payment channels
+    public static final int MAX_CHANNELS_LIMIT = 1000;
+
+    // Upper bound of the transactions each payment channel can keep in flight at once (pipelined submission)
+    public static final int MAX_TRANSACTIONS_IN_FLIGHT = 5;
+
+    // Percentiles published by horizon's fee stats, and the lowest fee per operation (stroops)
+    public static final int[] FEE_STATS_PERCENTILES = {10, 20, 30, 40, 50, 60, 70, 80, 90, 95, 99};
+    public static final int MIN_FEE = 100;
+
     // Properties instance
     private static final Properties PROPERTIES = new Properties();
 
@@ -35,6 +45,17 @@ public class Settings {
     public static String SETTING_HORIZON_DB_LIVE_PORT = "";
     public static String SETTING_HORIZON_DB_LIVE_USER = "";
     public static String SETTING_HORIZON_DB_LIVE_PASS = "";
+    public static int SETTING_HORIZON_DB_FETCH_PARTITIONS = 1;
+
+    // Horizon queries slower than this are written to the slow query log (milliseconds, 0 to disable)
+    public static long SETTING_SLOW_QUERY_THRESHOLD = 1000;
+
+    // Horizon REST API client, connections kept alive in the pool and request timeout (milliseconds)
+    public static int SETTING_HORIZON_MAX_IDLE_CONNECTIONS = 64;
+    public static int SETTING_HORIZON_TIMEOUT = 30000;
+
+    // Voters source, either the horizon node database (DATABASE) or the federation endpoint and horizon REST API (REST)
+    public static String SETTING_VOTERS_SOURCE = "DATABASE";
 
     // Default Settings
     public static String SETTING_OPERATIONS_NETWORK = "";
@@ -46,12 +67,34 @@ public class Settings {
     public static int SETTING_OPERATIONS_PER_TRANSACTION_BATCH = 25;
     public static String SETTING_DONATION_DATANAME_PREFIX = "";
 
+    // Adaptive fees: percentile of the network's fee stats to price operations at (0 to always use the configured fee),
+    // highest fee per operation (stroops) and fee stats endpoint (empty for the horizon server's /fee_stats)
+    public static int SETTING_FEE_PERCENTILE = 0;
+    public static int SETTING_MAX_FEE = 1000;
+    public static String SETTING_FEE_STATS_URL = "";
+
     // Payment Channels
     public static boolean SETTING_PARALLEL_CHANNELS_ENABLED = false;
 
+    // Maximum number of payment channels used at once, the channel scheduler throttles them against the network's capacity
+    public static int SETTING_MAX_CHANNELS = MAX_THREADS;
+
+    // Transactions each channel submits ahead of the confirmation of the previous ones (1 disables pipelining)
+    public static int SETTING_TRANSACTIONS_IN_FLIGHT = 1;
+
+    // Post each transaction once and track it by hash until it makes it into a ledger, instead of waiting for horizon's
+    // answer and resubmitting on timeouts
+    public static boolean SETTING_TRACKED_SUBMISSIONS = false;
+
+    // Run the channels and their submissions on virtual threads (Java 21 or later, ignored otherwise)
+    public static boolean SETTING_VIRTUAL_THREADS = false;
+
     // Account validation
     public static boolean SETTING_VALIDATE_ACCOUNTS_BEFORE_PAYMENT = false;
 
+    // Accounts found to exist are not checked again for this long (hours, 0 to always check)
+    public static long SETTING_ACCOUNT_VALIDATION_CACHE_TTL = 24;
+
     // Non persistent settings
     public static final RoundingMode ROUNDING_MODE = RoundingMode.HALF_DOWN;
 
@@ -104,9 +147,13 @@ public class Settings {
             SETTING_OPERATIONS_NETWORK = PROPERTIES.getProperty("operationsNetwork", "TEST");
             SETTING_INFLATION_POOL_ADDRESS = XLMUtils.isPublicKeyValidFormat(PROPERTIES.getProperty("inflationPoolAddress")) ? PROPERTIES.getProperty("inflationPoolAddress") : "";
             SETTING_FEDERATION_NETWORK_INFLATION_URL = PROPERTIES.getProperty("fedNetworkInflationUrl", "https://fed.network/inflation/");
+            SETTING_VOTERS_SOURCE = PROPERTIES.getProperty("votersSource", "DATABASE").equals("REST") ? "REST" : "DATABASE";
             SETTING_MEMO = PROPERTIES.getProperty("memoText", "Thanks from lumenaut.net");
             SETTING_FEE = Integer.parseInt(PROPERTIES.getProperty("fee")) < 100 ? 100 : Integer.parseInt(PROPERTIES.getProperty("fee"));
             SETTING_DONATION_DATANAME_PREFIX = PROPERTIES.getProperty("donationsPrefix", "lumenaut.net donation");
+            SETTING_FEE_PERCENTILE = toFeeStatsPercentile(Integer.parseInt(PROPERTIES.getProperty("feePercentile", "0")));
+            SETTING_MAX_FEE = clamp(Integer.parseInt(PROPERTIES.getProperty("maxFee", "1000")), MIN_FEE, Integer.MAX_VALUE);
+            SETTING_FEE_STATS_URL = PROPERTIES.getProperty("feeStatsUrl", "");
 
             // Horizon database
             SETTING_HORIZON_TEST_NETWORK = PROPERTIES.getProperty("horizonTestNetwork", "https://horizon-testnet.stellar.org");
@@ -119,16 +166,26 @@ public class Settings {
             SETTING_HORIZON_DB_LIVE_PORT = PROPERTIES.getProperty("horizonDbLivePort", "");
             SETTING_HORIZON_DB_LIVE_USER = PROPERTIES.getProperty("horizonDbLiveUser", "");
             SETTING_HORIZON_DB_LIVE_PASS = PROPERTIES.getProperty("horizonDbLivePass", "");
+            SETTING_HORIZON_DB_FETCH_PARTITIONS = clamp(Integer.parseInt(PROPERTIES.getProperty("horizonDbFetchPartitions", "1")), 1, Integer.MAX_VALUE);
+            SETTING_SLOW_QUERY_THRESHOLD = clamp(Long.parseLong(PROPERTIES.getProperty("slowQueryThreshold", "1000")), 0L, Long.MAX_VALUE);
+            SETTING_HORIZON_MAX_IDLE_CONNECTIONS = Math.max(1, Integer.parseInt(PROPERTIES.getProperty("horizonMaxIdleConnections", "64")));
+            SETTING_HORIZON_TIMEOUT = Math.max(1000, Integer.parseInt(PROPERTIES.getProperty("horizonTimeout", "30000")));
 
             // Channels
             SETTING_PARALLEL_CHANNELS_ENABLED = Boolean.parseBoolean(PROPERTIES.getProperty("useParallelChannels", "false"));
+            SETTING_MAX_CHANNELS = clamp(Integer.parseInt(PROPERTIES.getProperty("maxPaymentChannels", String.valueOf(MAX_THREADS))), 1, MAX_CHANNELS_LIMIT);
+            SETTING_TRANSACTIONS_IN_FLIGHT = clamp(Integer.parseInt(PROPERTIES.getProperty("transactionsInFlightPerChannel", "1")), 1, MAX_TRANSACTIONS_IN_FLIGHT);
+            SETTING_TRACKED_SUBMISSIONS = Boolean.parseBoolean(PROPERTIES.getProperty("trackedSubmissions", "false"));
+            SETTING_VIRTUAL_THREADS = Boolean.parseBoolean(PROPERTIES.getProperty("virtualThreads", "false"));
             SETTING_OPERATIONS_PER_TRANSACTION_BATCH = Integer.parseInt(PROPERTIES.getProperty("operationsPerTransactionBatch")) > 100 ? 100 : Integer.parseInt(PROPERTIES.getProperty("operationsPerTransactionBatch"));
             SETTING_VALIDATE_ACCOUNTS_BEFORE_PAYMENT = Boolean.parseBoolean(PROPERTIES.getProperty("validateChannelsBeforePayment", "false"));
+            SETTING_ACCOUNT_VALIDATION_CACHE_TTL = Long.parseLong(PROPERTIES.getProperty("accountValidationCacheTtl", "24")) < 0 ? 0 : Long.parseLong(PROPERTIES.getProperty("accountValidationCacheTtl", "24"));
         } catch (Exception e) {
             // Init defaults (ONLY EXECUTED WHEN the "settings ini file doesn't exist)
             SETTING_OPERATIONS_NETWORK = PROPERTIES.getProperty("operationsNetwork", "TEST");
             SETTING_INFLATION_POOL_ADDRESS = PROPERTIES.getProperty("inflationPoolAddress", "");
             SETTING_FEDERATION_NETWORK_INFLATION_URL = PROPERTIES.getProperty("fedNetworkInflationUrl", "https://fed.network/inflation/");
+            SETTING_VOTERS_SOURCE = PROPERTIES.getProperty("votersSource", "DATABASE").equals("REST") ? "REST" : "DATABASE";
             SETTING_MEMO = PROPERTIES.getProperty("memoText", "Thanks from lumenaut.net");
             SETTING_DONATION_DATANAME_PREFIX = PROPERTIES.getProperty("donationsPrefix", "lumenaut.net donation");
 
@@ -139,6 +196,21 @@ public class Settings {
                 SETTING_FEE = 100;
             }
 
+            // Try to parse the adaptive fees settings, or default to the configured fee only, capped at 1000 stroops
+            try {
+                SETTING_FEE_PERCENTILE = toFeeStatsPercentile(Integer.parseInt(PROPERTIES.getProperty("feePercentile", "0")));
+            } catch (NumberFormatException ne) {
+                SETTING_FEE_PERCENTILE = 0;
+            }
+
+            try {
+                SETTING_MAX_FEE = clamp(Integer.parseInt(PROPERTIES.getProperty("maxFee", "1000")), MIN_FEE, Integer.MAX_VALUE);
+            } catch (NumberFormatException ne) {
+                SETTING_MAX_FEE = 1000;
+            }
+
+            SETTING_FEE_STATS_URL = PROPERTIES.getProperty("feeStatsUrl", "");
+
             // Horizon database
             SETTING_HORIZON_TEST_NETWORK = PROPERTIES.getProperty("horizonTestNetwork", "https://horizon-testnet.stellar.org");
             SETTING_HORIZON_LIVE_NETWORK = PROPERTIES.getProperty("horizonLiveNetwork", "https://horizon.stellar.org");
@@ -151,8 +223,53 @@ public class Settings {
             SETTING_HORIZON_DB_LIVE_USER = PROPERTIES.getProperty("horizonDbLiveUser", "");
             SETTING_HORIZON_DB_LIVE_PASS = PROPERTIES.getProperty("horizonDbLivePass", "");
 
+            // Try to parse the number of fetch partitions, or default to a single one
+            try {
+                SETTING_HORIZON_DB_FETCH_PARTITIONS = clamp(Integer.parseInt(PROPERTIES.getProperty("horizonDbFetchPartitions", "1")), 1, Integer.MAX_VALUE);
+            } catch (NumberFormatException ne) {
+                SETTING_HORIZON_DB_FETCH_PARTITIONS = 1;
+            }
+
+            // Try to parse the slow query threshold, or default to 1 second
+            try {
+                SETTING_SLOW_QUERY_THRESHOLD = clamp(Long.parseLong(PROPERTIES.getProperty("slowQueryThreshold", "1000")), 0L, Long.MAX_VALUE);
+            } catch (NumberFormatException ne) {
+                SETTING_SLOW_QUERY_THRESHOLD = 1000;
+            }
+
+            // Try to parse the horizon client's connection pool size, or default to 64
+            try {
+                SETTING_HORIZON_MAX_IDLE_CONNECTIONS = Integer.parseInt(PROPERTIES.getProperty("horizonMaxIdleConnections", "64"));
+            } catch (NumberFormatException ne) {
+                SETTING_HORIZON_MAX_IDLE_CONNECTIONS = 64;
+            }
+
+            // Try to parse the horizon request timeout, or default to 30 seconds
+            try {
+                SETTING_HORIZON_TIMEOUT = Integer.parseInt(PROPERTIES.getProperty("horizonTimeout", "30000"));
+            } catch (NumberFormatException ne) {
+                SETTING_HORIZON_TIMEOUT = 30000;
+            }
+
             SETTING_PARALLEL_CHANNELS_ENABLED = Boolean.parseBoolean(PROPERTIES.getProperty("useParallelChannels", "false"));
 
+            // Try to parse the maximum number of payment channels, or default to one per thread
+            try {
+                SETTING_MAX_CHANNELS = clamp(Integer.parseInt(PROPERTIES.getProperty("maxPaymentChannels", String.valueOf(MAX_THREADS))), 1, MAX_CHANNELS_LIMIT);
+            } catch (NumberFormatException ne) {
+                SETTING_MAX_CHANNELS = MAX_THREADS;
+            }
+
+            // Try to parse the transactions in flight per channel, or default to 1 (no pipelining)
+            try {
+                SETTING_TRANSACTIONS_IN_FLIGHT = clamp(Integer.parseInt(PROPERTIES.getProperty("transactionsInFlightPerChannel", "1")), 1, MAX_TRANSACTIONS_IN_FLIGHT);
+            } catch (NumberFormatException ne) {
+                SETTING_TRANSACTIONS_IN_FLIGHT = 1;
+            }
+
+            SETTING_TRACKED_SUBMISSIONS = Boolean.parseBoolean(PROPERTIES.getProperty("trackedSubmissions", "false"));
+            SETTING_VIRTUAL_THREADS = Boolean.parseBoolean(PROPERTIES.getProperty("virtualThreads", "false"));
+
             // Try to parse the ops per transaction, or default to 100
             try {
                 SETTING_OPERATIONS_PER_TRANSACTION_BATCH = Integer.parseInt(PROPERTIES.getProperty("operationsPerTransactionBatch", "100"));
@@ -162,11 +279,63 @@ public class Settings {
 
             SETTING_VALIDATE_ACCOUNTS_BEFORE_PAYMENT = Boolean.parseBoolean(PROPERTIES.getProperty("validateChannelsBeforePayment", "false"));
 
+            // Try to parse the account validation cache TTL, or default to 24 hours
+            try {
+                SETTING_ACCOUNT_VALIDATION_CACHE_TTL = Long.parseLong(PROPERTIES.getProperty("accountValidationCacheTtl", "24"));
+            } catch (NumberFormatException ne) {
+                SETTING_ACCOUNT_VALIDATION_CACHE_TTL = 24;
+            }
+
             // Save defaults
             saveSettings();
         }
     }
 
+    /**
+     * Clamp a setting value within the specified bounds
+     *
+     * @param value
+     * @param min
+     * @param max
+     * @return
+     */
+    private static int clamp(final int value, final int min, final int max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    /**
+     * Clamp a setting value within the specified bounds
+     *
+     * @param value
+     * @param min
+     * @param max
+     * @return
+     */
+    private static long clamp(final long value, final long min, final long max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    /**
+     * Round a fee percentile to the nearest one published by horizon's fee stats, the higher one on a tie
+     *
+     * @param value The configured percentile
+     * @return The percentile to price operations at, 0 if adaptive fees are disabled
+     */
+    static int toFeeStatsPercentile(final int value) {
+        if (value <= 0) {
+            return 0;
+        }
+
+        int nearest = FEE_STATS_PERCENTILES[0];
+        for (int percentile : FEE_STATS_PERCENTILES) {
+            if (Math.abs(percentile - value) <= Math.abs(nearest - value)) {
+                nearest = percentile;
+            }
+        }
+
+        return nearest;
+    }
+
     /**
      * Save settings to the ini file in the working directory
      *
@@ -177,9 +346,13 @@ public class Settings {
         PROPERTIES.setProperty("operationsNetwork", SETTING_OPERATIONS_NETWORK);
         PROPERTIES.setProperty("inflationPoolAddress", XLMUtils.isPublicKeyValidFormat(SETTING_INFLATION_POOL_ADDRESS) ? SETTING_INFLATION_POOL_ADDRESS : "");
         PROPERTIES.setProperty("fedNetworkInflationUrl", SETTING_FEDERATION_NETWORK_INFLATION_URL);
+        PROPERTIES.setProperty("votersSource", SETTING_VOTERS_SOURCE);
         PROPERTIES.setProperty("memoText", SETTING_MEMO);
         PROPERTIES.setProperty("fee", SETTING_FEE >= 100 ? String.valueOf(SETTING_FEE) : "100");
         PROPERTIES.setProperty("donationsPrefix", SETTING_DONATION_DATANAME_PREFIX);
+        PROPERTIES.setProperty("feePercentile", String.valueOf(SETTING_FEE_PERCENTILE));
+        PROPERTIES.setProperty("maxFee", String.valueOf(SETTING_MAX_FEE));
+        PROPERTIES.setProperty("feeStatsUrl", SETTING_FEE_STATS_URL);
 
         // Horizon database
         PROPERTIES.setProperty("horizonTestNetwork", SETTING_HORIZON_TEST_NETWORK);
@@ -192,11 +365,20 @@ public class Settings {
         PROPERTIES.setProperty("horizonDbLivePort", SETTING_HORIZON_DB_LIVE_PORT);
         PROPERTIES.setProperty("horizonDbLiveUser", SETTING_HORIZON_DB_LIVE_USER);
         PROPERTIES.setProperty("horizonDbLivePass", SETTING_HORIZON_DB_LIVE_PASS);
+        PROPERTIES.setProperty("horizonDbFetchPartitions", String.valueOf(SETTING_HORIZON_DB_FETCH_PARTITIONS));
+        PROPERTIES.setProperty("slowQueryThreshold", String.valueOf(SETTING_SLOW_QUERY_THRESHOLD));
+        PROPERTIES.setProperty("horizonMaxIdleConnections", String.valueOf(SETTING_HORIZON_MAX_IDLE_CONNECTIONS));
+        PROPERTIES.setProperty("horizonTimeout", String.valueOf(SETTING_HORIZON_TIMEOUT));
 
         // Channels
         PROPERTIES.setProperty("useParallelChannels", String.valueOf(SETTING_PARALLEL_CHANNELS_ENABLED));
+        PROPERTIES.setProperty("maxPaymentChannels", String.valueOf(SETTING_MAX_CHANNELS));
+        PROPERTIES.setProperty("transactionsInFlightPerChannel", String.valueOf(SETTING_TRANSACTIONS_IN_FLIGHT));
+        PROPERTIES.setProperty("trackedSubmissions", String.valueOf(SETTING_TRACKED_SUBMISSIONS));
+        PROPERTIES.setProperty("virtualThreads", String.valueOf(SETTING_VIRTUAL_THREADS));
         PROPERTIES.setProperty("operationsPerTransactionBatch", String.valueOf(SETTING_OPERATIONS_PER_TRANSACTION_BATCH));
         PROPERTIES.setProperty("validateChannelsBeforePayment", String.valueOf(SETTING_VALIDATE_ACCOUNTS_BEFORE_PAYMENT));
+        PROPERTIES.setProperty("accountValidationCacheTtl", String.valueOf(SETTING_ACCOUNT_VALIDATION_CACHE_TTL));
 
         // Store
         PROPERTIES.store(new FileOutputStream("data/settings.ini"), "Settings");
@@ -0,0 +1,192 @@
+package com.lumenaut.poolmanager;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.jctools.queues.atomic.MpscUnboundedAtomicArrayQueue;
+
+import java.io.*;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static com.lumenaut.poolmanager.DataFormats.OBJECT_MAPPER;
+import static com.lumenaut.poolmanager.TransactionsController.FILE_DATE_FORMATTER;
+import static com.lumenaut.poolmanager.TransactionsController.TRANSACTION_RESPONSES_JSONL_SUFFIX;
+import static com.lumenaut.poolmanager.UIUtils.showError;
+
+/**
+ * @Author Luca Vignaroli
+ * @Email luca@burning.it
+ * @Date 18/10/2026 - 4:05 PM
+ * <p>
+ * Writes the batch responses of a payment run as JSON Lines, one compact record per line. The channels hand their
+ * records over through a lock free queue and never touch the disk: a single writer thread drains the queue and
+ * flushes and syncs once per drained group. The file is rotated once it grows past its maximum size.
+ */
+public class TransactionResponseLog implements Closeable {
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //region FIELDS
+
+    // Size past which a new file is started
+    private static final long MAX_FILE_SIZE = 64L * 1024 * 1024;
+
+    // Wait of the writer while there's nothing to write (nanoseconds)
+    private static final long IDLE_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    // Records per chunk of the queue
+    private static final int QUEUE_CHUNK_SIZE = 256;
+
+    // Destination
+    private final File folder;
+    private final String fileNamePrefix;
+
+    // Records waiting to be written
+    private final MpscUnboundedAtomicArrayQueue<JsonNode> queue = new MpscUnboundedAtomicArrayQueue<>(QUEUE_CHUNK_SIZE);
+    private final Thread writer;
+    private volatile boolean closed;
+
+    // Current file, accessed by the writer thread only
+    private FileOutputStream fileStream;
+    private OutputStream stream;
+    private long fileSize;
+    private int part;
+    private boolean errorReported;
+
+    //endregion
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //region CONSTRUCTORS
+
+    /**
+     * Constructor, starts the writer thread
+     *
+     * @param outputPath The output folder of the run, the files are written to its "transactions" folder
+     */
+    public TransactionResponseLog(final String outputPath) {
+        this.folder = new File(outputPath, "transactions");
+        this.fileNamePrefix = FILE_DATE_FORMATTER.format(new Date());
+        this.writer = new Thread(this::write, "transaction-response-log");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    //endregion
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //region METHODS
+
+    /**
+     * Queue a record for writing, never blocks
+     *
+     * @param record
+     */
+    public void append(final JsonNode record) {
+        queue.offer(record);
+    }
+
+    /**
+     * Writer loop, drains the queue until the log is closed and all the records are written
+     */
+    private void write() {
+        while (!closed || !queue.isEmpty()) {
+            JsonNode record = queue.poll();
+            if (record == null) {
+                LockSupport.parkNanos(IDLE_WAIT_NANOS);
+
+                continue;
+            }
+
+            try {
+                // Write everything queued so far, then commit the whole group at once
+                do {
+                    writeRecord(record);
+                } while ((record = queue.poll()) != null);
+
+                stream.flush();
+                fileStream.getChannel().force(false);
+            } catch (IOException e) {
+                // Start over on a new file with the next group
+                closeFile();
+
+                if (!errorReported) {
+                    errorReported = true;
+                    showError("Cannot write transaction responses to [" + folder.getPath() + "]: " + e.getMessage());
+                }
+            }
+        }
+
+        closeFile();
+    }
+
+    /**
+     * Write a record to the current file, rotating it if needed
+     *
+     * @param record
+     * @throws IOException
+     */
+    private void writeRecord(final JsonNode record) throws IOException {
+        final byte[] bytes = OBJECT_MAPPER.writeValueAsBytes(record);
+        if (stream == null || fileSize > 0 && fileSize + bytes.length + 1 > MAX_FILE_SIZE) {
+            openFile();
+        }
+
+        stream.write(bytes);
+        stream.write('\n');
+        fileSize += bytes.length + 1;
+    }
+
+    /**
+     * Close the current file and open the next one
+     *
+     * @throws IOException
+     */
+    private void openFile() throws IOException {
+        closeFile();
+
+        if (!folder.exists() && !folder.mkdirs()) {
+            throw new IOException("Unable to create folder: " + folder.getPath());
+        }
+
+        final String fileName = fileNamePrefix + (part > 0 ? "_" + part : "") + "_" + TRANSACTION_RESPONSES_JSONL_SUFFIX;
+        part++;
+
+        fileStream = new FileOutputStream(new File(folder, fileName), true);
+        stream = new BufferedOutputStream(fileStream);
+        fileSize = 0;
+    }
+
+    /**
+     * Flush and close the current file, if any
+     */
+    private void closeFile() {
+        if (stream != null) {
+            try {
+                stream.close();
+            } catch (IOException e) {
+                System.err.println("Unable to close the transaction responses file: " + e.getMessage());
+            }
+
+            stream = null;
+            fileStream = null;
+        }
+    }
+
+    /**
+     * Write all the records queued so far and stop the writer
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(writer);
+
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    //endregion
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+}
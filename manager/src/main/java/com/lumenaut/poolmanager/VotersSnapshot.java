@@ -0,0 +1,341 @@
+package com.lumenaut.poolmanager;
+
+import com.lumenaut.poolmanager.DataFormats.VoterCustomDataEntry;
+import com.lumenaut.poolmanager.DataFormats.VotersData;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.lumenaut.poolmanager.XLMUtils.ACCOUNT_ID_RAW_LENGTH;
+
+/**
+ * @Author Luca Vignaroli
+ * @Email luca@burning.it
+ * @Date 18/10/2026 - 3:25 PM
+ * <p>
+ * Binary on-disk snapshot of the voters of an inflation pool. The file is made of a fixed size header, followed by
+ * one fixed width record per voter and a trailing section holding the voters' custom data entries:
+ * <p>
+ * HEADER:  magic (int), version (int), ledger (long), created (long), pool balance (long), pool key (32 bytes), voters (int)
+ * RECORDS: public key (32 bytes), balance (long), custom data offset (long, -1 if the voter has no data)
+ * DATA:    entries count (int), then for each entry: name length (int), name (UTF-8), value length (int), value (UTF-8)
+ */
+public class VotersSnapshot {
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //region FIELDS
+
+    // Snapshots folder
+    public static final String DATA_SNAPSHOTS_PATH = "data/snapshots";
+
+    // Format
+    private static final int MAGIC = 0x4C565354;    // "LVST"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 8 + ACCOUNT_ID_RAW_LENGTH + 4;
+    private static final int RECORD_SIZE = ACCOUNT_ID_RAW_LENGTH + 8 + 8;
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    // Data
+    private final VotersData votersData;
+    private final long ledger;
+    private final long created;
+
+    //endregion
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //region ACCESSORS
+
+    public VotersData getVotersData() {
+        return votersData;
+    }
+
+    public long getLedger() {
+        return ledger;
+    }
+
+    public long getCreated() {
+        return created;
+    }
+
+    //endregion
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //region CONSTRUCTORS
+
+    /**
+     * Constructor
+     *
+     * @param votersData
+     * @param ledger
+     * @param created
+     */
+    private VotersSnapshot(final VotersData votersData, final long ledger, final long created) {
+        this.votersData = votersData;
+        this.ledger = ledger;
+        this.created = created;
+    }
+
+    //endregion
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //region METHODS
+
+    /**
+     * Get the snapshot file of the given pool on the given network
+     *
+     * @param network     The network the snapshot was taken from (TEST or LIVE)
+     * @param poolAddress The public key of the inflation pool
+     * @return
+     */
+    public static File getSnapshotFile(final String network, final String poolAddress) {
+        return new File(DATA_SNAPSHOTS_PATH, network.toLowerCase() + "_" + poolAddress + ".bin");
+    }
+
+    /**
+     * Write the given voters data to the specified file, the previous snapshot is replaced atomically
+     *
+     * @param file       The destination file
+     * @param votersData The voters data, it must be backed by a voters store
+     * @param ledger     The ledger the voters data is up to date with
+     * @throws IOException
+     */
+    public static void write(final File file, final VotersData votersData, final long ledger) throws IOException {
+        final VotersStore store = votersData.getStore();
+        if (store == null) {
+            throw new IOException("Only voters data fetched from horizon can be saved as a snapshot");
+        }
+
+        // Serialize the custom data section first, records point into it
+        final long[] dataOffsets = new long[store.size()];
+        final ByteArrayOutputStream dataBytes = new ByteArrayOutputStream();
+        final DataOutputStream dataStream = new DataOutputStream(dataBytes);
+        for (int i = 0; i < store.size(); i++) {
+            final List<VoterCustomDataEntry> data = store.getData(i);
+            if (data == null) {
+                dataOffsets[i] = -1L;
+
+                continue;
+            }
+
+            dataOffsets[i] = dataStream.size();
+            dataStream.writeInt(data.size());
+            for (VoterCustomDataEntry entry : data) {
+                writeString(dataStream, entry.getDataname());
+                writeString(dataStream, entry.getDatavalue());
+            }
+        }
+        dataStream.flush();
+
+        // Write to a temporary file next to the destination
+        final File parent = file.getAbsoluteFile().getParentFile();
+        if (!parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Unable to create folder: " + parent.getPath());
+        }
+
+        final File tempFile = new File(parent, file.getName() + ".tmp");
+        try (final FileChannel channel = FileChannel.open(tempFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            final ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+
+            // Header
+            buffer.putInt(MAGIC);
+            buffer.putInt(VERSION);
+            buffer.putLong(ledger);
+            buffer.putLong(System.currentTimeMillis());
+            buffer.putLong(votersData.getBalance());
+            final byte[] poolKey = new byte[ACCOUNT_ID_RAW_LENGTH];
+            XLMUtils.decodeAccountId(votersData.getInflationdest(), poolKey, 0);
+            buffer.put(poolKey);
+            buffer.putInt(store.size());
+
+            // Records
+            final byte[] key = new byte[ACCOUNT_ID_RAW_LENGTH];
+            for (int i = 0; i < store.size(); i++) {
+                if (buffer.remaining() < RECORD_SIZE) {
+                    flush(channel, buffer);
+                }
+
+                store.copyKey(i, key, 0);
+                buffer.put(key);
+                buffer.putLong(store.getBalance(i));
+                buffer.putLong(dataOffsets[i]);
+            }
+            flush(channel, buffer);
+
+            // Custom data
+            final ByteBuffer data = ByteBuffer.wrap(dataBytes.toByteArray());
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+
+            // Make sure it's on disk before replacing the previous snapshot
+            channel.force(true);
+        }
+
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Read a snapshot from the specified file
+     *
+     * @param file The snapshot file
+     * @return
+     * @throws IOException
+     */
+    public static VotersSnapshot read(final File file) throws IOException {
+        // Every record ends up in the voters store anyway, read the whole file in one go
+        final ByteBuffer buffer;
+        try (final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Voters snapshot too large: " + file.getPath());
+            }
+
+            buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    throw new IOException("Truncated voters snapshot: " + file.getPath());
+                }
+            }
+            buffer.flip();
+        }
+
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt() != MAGIC) {
+            throw new IOException("Not a voters snapshot: " + file.getPath());
+        }
+
+        if (buffer.getInt() != VERSION) {
+            throw new IOException("Unsupported voters snapshot version: " + file.getPath());
+        }
+
+        // Header
+        final long ledger = buffer.getLong();
+        final long created = buffer.getLong();
+        final long poolBalance = buffer.getLong();
+        final byte[] key = new byte[ACCOUNT_ID_RAW_LENGTH];
+        buffer.get(key);
+        final String poolAddress = XLMUtils.encodeAccountId(key, 0);
+        final int voters = buffer.getInt();
+
+        // Computed on longs, a damaged voters count mustn't wrap around the bounds check
+        final long dataSectionStart = HEADER_SIZE + (long) voters * RECORD_SIZE;
+        if (voters < 0 || dataSectionStart > buffer.limit()) {
+            throw new IOException("Corrupted voters snapshot: " + file.getPath());
+        }
+
+        // Records
+        final VotersStore store = new VotersStore(voters);
+        final ByteBuffer data = buffer.duplicate();
+        try {
+            for (int i = 0; i < voters; i++) {
+                buffer.get(key);
+                final long balance = buffer.getLong();
+                final long dataOffset = buffer.getLong();
+
+                List<VoterCustomDataEntry> voterData = null;
+                if (dataOffset >= 0) {
+                    if (dataOffset > buffer.limit() - dataSectionStart - 4) {
+                        throw new IOException("custom data offset out of bounds");
+                    }
+
+                    data.position((int) (dataSectionStart + dataOffset));
+                    final int entries = data.getInt();
+
+                    // Each entry takes at least its two lengths
+                    if (entries < 0 || entries > data.remaining() / 8) {
+                        throw new IOException("custom data entries out of bounds");
+                    }
+
+                    voterData = new ArrayList<>(entries);
+                    for (int j = 0; j < entries; j++) {
+                        final VoterCustomDataEntry entry = new VoterCustomDataEntry();
+                        entry.setDataname(readString(data));
+                        entry.setDatavalue(readString(data));
+                        voterData.add(entry);
+                    }
+                }
+
+                store.add(key, 0, balance, voterData);
+            }
+        } catch (IOException | RuntimeException e) {
+            throw new IOException("Corrupted voters snapshot: " + file.getPath() + " (" + e + ")", e);
+        }
+
+        // Build voters data
+        final VotersData votersData = new VotersData();
+        votersData.reset();
+        votersData.setStore(store);
+        votersData.setInflationdest(poolAddress);
+        votersData.setBalance(poolBalance);
+
+        return new VotersSnapshot(votersData, ledger, created);
+    }
+
+    /**
+     * Write the buffer contents to the channel and clear it
+     *
+     * @param channel
+     * @param buffer
+     * @throws IOException
+     */
+    private static void flush(final FileChannel channel, final ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Write a length prefixed UTF-8 string, null strings are written with a negative length
+     *
+     * @param stream
+     * @param value
+     * @throws IOException
+     */
+    private static void writeString(final DataOutputStream stream, final String value) throws IOException {
+        if (value == null) {
+            stream.writeInt(-1);
+        } else {
+            final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            stream.writeInt(bytes.length);
+            stream.write(bytes);
+        }
+    }
+
+    /**
+     * Read a length prefixed UTF-8 string
+     *
+     * @param buffer
+     * @return
+     * @throws IOException if the string runs past the end of the buffer
+     */
+    private static String readString(final ByteBuffer buffer) throws IOException {
+        final int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+
+        if (length > buffer.remaining()) {
+            throw new IOException("string length out of bounds");
+        }
+
+        final byte[] bytes = new byte[length];
+        buffer.get(bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    //endregion
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+}
@@ -0,0 +1,348 @@
+package com.lumenaut.poolmanager;
+
+import com.lumenaut.poolmanager.DataFormats.VoterCustomDataEntry;
+import com.lumenaut.poolmanager.DataFormats.VoterDataEntry;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+
+import static com.lumenaut.poolmanager.XLMUtils.ACCOUNT_ID_RAW_LENGTH;
+
+/**
+ * @Author Luca Vignaroli
+ * @Email luca@burning.it
+ * @Date 18/10/2026 - 3:21 PM
+ * <p>
+ * Columnar storage for the voters of an inflation pool. Voters' public keys are kept in their raw 32 bytes form in a
+ * single array, balances in a parallel long array and the (rare) custom data entries in a sparse map. The store is
+ * exposed to the rest of the application as a list of lightweight {@link VoterDataEntry} views which read and write
+ * through to the columns.
+ */
+public class VotersStore {
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //region FIELDS
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    // Columns
+    private byte[] keys;
+    private long[] balances;
+    private final HashMap<Integer, List<VoterCustomDataEntry>> data = new HashMap<>();
+    private int size;
+
+    //endregion
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //region SUBCLASSES
+
+    /**
+     * Voter entry bound to a row of the store, it holds no data of its own
+     */
+    private static class StoredVoterDataEntry extends VoterDataEntry {
+        private final VotersStore store;
+        private final int index;
+
+        private StoredVoterDataEntry(final VotersStore store, final int index) {
+            this.store = store;
+            this.index = index;
+        }
+
+        @Override
+        public long getBalance() {
+            return store.getBalance(index);
+        }
+
+        @Override
+        public void setBalance(long balance) {
+            store.setBalance(index, balance);
+        }
+
+        @Override
+        public String getAccount() {
+            return store.getAccount(index);
+        }
+
+        @Override
+        public void setAccount(String account) {
+            store.setAccount(index, account);
+        }
+
+        @Override
+        public List<VoterCustomDataEntry> getData() {
+            return store.getData(index);
+        }
+
+        @Override
+        public void setData(List<VoterCustomDataEntry> data) {
+            store.setData(index, data);
+        }
+    }
+
+    /**
+     * List view over the store
+     */
+    private static class EntriesView extends AbstractList<VoterDataEntry> implements RandomAccess {
+        private final VotersStore store;
+
+        private EntriesView(final VotersStore store) {
+            this.store = store;
+        }
+
+        @Override
+        public VoterDataEntry get(int index) {
+            if (index < 0 || index >= store.size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + store.size);
+            }
+
+            return new StoredVoterDataEntry(store, index);
+        }
+
+        @Override
+        public boolean add(VoterDataEntry entry) {
+            store.add(entry.getAccount(), entry.getBalance(), entry.getData());
+            modCount++;
+
+            return true;
+        }
+
+        @Override
+        public void clear() {
+            store.clear();
+            modCount++;
+        }
+
+        @Override
+        public int size() {
+            return store.size;
+        }
+    }
+
+    //endregion
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //region CONSTRUCTORS
+
+    /**
+     * Constructor
+     */
+    public VotersStore() {
+        this(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param capacity Number of voters the store can hold before growing
+     */
+    public VotersStore(final int capacity) {
+        keys = new byte[Math.max(capacity, 1) * ACCOUNT_ID_RAW_LENGTH];
+        balances = new long[Math.max(capacity, 1)];
+    }
+
+    //endregion
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //region METHODS
+
+    /**
+     * Append a voter to the store
+     *
+     * @param account The voter's account ID (G...)
+     * @param balance The voter's balance in stroops
+     * @param data    The voter's custom data entries, can be null
+     */
+    public void add(final String account, final long balance, final List<VoterCustomDataEntry> data) {
+        ensureCapacity(size + 1);
+
+        XLMUtils.decodeAccountId(account, keys, size * ACCOUNT_ID_RAW_LENGTH);
+        balances[size] = balance;
+        if (data != null) {
+            this.data.put(size, data);
+        }
+
+        size++;
+    }
+
+    /**
+     * Append a voter to the store using its raw public key
+     *
+     * @param key       The array containing the voter's raw public key
+     * @param keyOffset The position of the key in the array
+     * @param balance   The voter's balance in stroops
+     * @param data      The voter's custom data entries, can be null
+     */
+    public void add(final byte[] key, final int keyOffset, final long balance, final List<VoterCustomDataEntry> data) {
+        ensureCapacity(size + 1);
+
+        System.arraycopy(key, keyOffset, keys, size * ACCOUNT_ID_RAW_LENGTH, ACCOUNT_ID_RAW_LENGTH);
+        balances[size] = balance;
+        if (data != null) {
+            this.data.put(size, data);
+        }
+
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public String getAccount(final int index) {
+        return XLMUtils.encodeAccountId(keys, index * ACCOUNT_ID_RAW_LENGTH);
+    }
+
+    public void setAccount(final int index, final String account) {
+        XLMUtils.decodeAccountId(account, keys, index * ACCOUNT_ID_RAW_LENGTH);
+    }
+
+    /**
+     * Copy the raw public key of the voter at the given index
+     *
+     * @param index
+     * @param destination
+     * @param offset
+     */
+    public void copyKey(final int index, final byte[] destination, final int offset) {
+        System.arraycopy(keys, index * ACCOUNT_ID_RAW_LENGTH, destination, offset, ACCOUNT_ID_RAW_LENGTH);
+    }
+
+    public long getBalance(final int index) {
+        return balances[index];
+    }
+
+    public void setBalance(final int index, final long balance) {
+        balances[index] = balance;
+    }
+
+    public List<VoterCustomDataEntry> getData(final int index) {
+        return data.get(index);
+    }
+
+    public void setData(final int index, final List<VoterCustomDataEntry> data) {
+        if (data == null) {
+            this.data.remove(index);
+        } else {
+            this.data.put(index, data);
+        }
+    }
+
+    /**
+     * Sum of all the voters' balances
+     *
+     * @return
+     */
+    public long getTotalBalance() {
+        long total = 0L;
+        for (int i = 0; i < size; i++) {
+            total += balances[i];
+        }
+
+        return total;
+    }
+
+    /**
+     * Append all the voters of the given store, skipping those whose raw public key is in the excluded set
+     *
+     * @param source       The store to copy voters from
+     * @param excludedKeys Raw public keys of the voters to skip, can be null
+     */
+    public void addAll(final VotersStore source, final Set<ByteBuffer> excludedKeys) {
+        ensureCapacity(size + source.size);
+
+        for (int i = 0; i < source.size; i++) {
+            final int keyOffset = i * ACCOUNT_ID_RAW_LENGTH;
+            if (excludedKeys != null && excludedKeys.contains(ByteBuffer.wrap(source.keys, keyOffset, ACCOUNT_ID_RAW_LENGTH))) {
+                continue;
+            }
+
+            add(source.keys, keyOffset, source.balances[i], source.data.get(i));
+        }
+    }
+
+    /**
+     * Append the voters of the given stores, each sorted by balance (descending) and account ID, preserving the same
+     * ordering across all of them
+     *
+     * @param sources
+     */
+    public void addAllMerged(final VotersStore... sources) {
+        // Make room for all of them at once
+        int total = size;
+        for (VotersStore source : sources) {
+            total += source.size;
+        }
+        ensureCapacity(total);
+
+        // K-way merge, the number of sources is small so a linear scan for the next row is good enough
+        final int[] positions = new int[sources.length];
+        while (true) {
+            int next = -1;
+            for (int i = 0; i < sources.length; i++) {
+                if (positions[i] < sources[i].size && (next < 0 || sources[i].precedes(positions[i], sources[next], positions[next]))) {
+                    next = i;
+                }
+            }
+
+            if (next < 0) {
+                break;
+            }
+
+            final VotersStore source = sources[next];
+            final int index = positions[next]++;
+            add(source.keys, index * ACCOUNT_ID_RAW_LENGTH, source.balances[index], source.data.get(index));
+        }
+    }
+
+    /**
+     * Check if the voter at the given index comes before the voter of another store in balance (descending) and
+     * account ID order
+     *
+     * @param index
+     * @param other
+     * @param otherIndex
+     * @return
+     */
+    private boolean precedes(final int index, final VotersStore other, final int otherIndex) {
+        if (balances[index] != other.balances[otherIndex]) {
+            return balances[index] > other.balances[otherIndex];
+        }
+
+        return getAccount(index).compareTo(other.getAccount(otherIndex)) < 0;
+    }
+
+    /**
+     * Remove all voters, the allocated capacity is kept
+     */
+    public void clear() {
+        size = 0;
+        data.clear();
+    }
+
+    /**
+     * List view of the voters held by this store
+     *
+     * @return
+     */
+    public List<VoterDataEntry> asList() {
+        return new EntriesView(this);
+    }
+
+    /**
+     * Grow the columns to hold at least the given number of voters
+     *
+     * @param capacity
+     */
+    private void ensureCapacity(final int capacity) {
+        if (capacity > balances.length) {
+            final int newCapacity = Math.max(capacity, balances.length * 2);
+            keys = Arrays.copyOf(keys, newCapacity * ACCOUNT_ID_RAW_LENGTH);
+            balances = Arrays.copyOf(balances, newCapacity);
+        }
+    }
+
+    //endregion
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+}
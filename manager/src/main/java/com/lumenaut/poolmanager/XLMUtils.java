@@ -2,6 +2,7 @@ package com.lumenaut.poolmanager;
 
 import java.math.BigDecimal;
 import java.text.DecimalFormat;
+import java.util.Arrays;
 
 import static com.lumenaut.poolmanager.Settings.ROUNDING_MODE;
 
@@ -31,6 +32,21 @@ public class XLMUtils {
     // Constants
     public static final BigDecimal STROOPS_IN_XLM = new BigDecimal("10000000");
 
+    // Account ID (StrKey) encoding: version byte + 32 bytes ed25519 public key + 2 bytes CRC16, base32 encoded
+    public static final int ACCOUNT_ID_RAW_LENGTH = 32;
+    private static final int ACCOUNT_ID_ENCODED_LENGTH = 56;
+    private static final int ACCOUNT_ID_PAYLOAD_LENGTH = 35;
+    private static final byte ACCOUNT_ID_VERSION_BYTE = (byte) (6 << 3);
+    private static final char[] BASE32_ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZ234567".toCharArray();
+    private static final int[] BASE32_LOOKUP = new int[128];
+
+    static {
+        Arrays.fill(BASE32_LOOKUP, -1);
+        for (int i = 0; i < BASE32_ALPHABET.length; i++) {
+            BASE32_LOOKUP[BASE32_ALPHABET[i]] = i;
+        }
+    }
+
     //endregion
     ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
 
@@ -197,6 +213,103 @@ public class XLMUtils {
         return secretKey.matches(validSecretKey);
     }
 
+    /**
+     * Decode the given account ID (G...) into its raw 32 bytes public key, the checksum is verified
+     *
+     * @param accountId   The account ID to decode
+     * @param destination The array receiving the raw public key
+     * @param offset      The position in the destination array where the key starts
+     * @throws IllegalArgumentException if the account ID is not valid
+     */
+    public static void decodeAccountId(final String accountId, final byte[] destination, final int offset) {
+        if (accountId == null || accountId.length() != ACCOUNT_ID_ENCODED_LENGTH) {
+            throw new IllegalArgumentException("Invalid account ID: " + accountId);
+        }
+
+        // Base32 decode
+        final byte[] payload = new byte[ACCOUNT_ID_PAYLOAD_LENGTH];
+        int buffer = 0;
+        int bufferedBits = 0;
+        int position = 0;
+        for (int i = 0; i < ACCOUNT_ID_ENCODED_LENGTH; i++) {
+            final char c = accountId.charAt(i);
+            final int value = c < 128 ? BASE32_LOOKUP[c] : -1;
+            if (value < 0) {
+                throw new IllegalArgumentException("Invalid account ID: " + accountId);
+            }
+
+            buffer = (buffer << 5) | value;
+            bufferedBits += 5;
+            if (bufferedBits >= 8) {
+                bufferedBits -= 8;
+                payload[position++] = (byte) (buffer >> bufferedBits);
+            }
+        }
+
+        // Check version byte and checksum (little endian)
+        final int checksum = crc16(payload, ACCOUNT_ID_PAYLOAD_LENGTH - 2);
+        if (payload[0] != ACCOUNT_ID_VERSION_BYTE ||
+            (payload[ACCOUNT_ID_PAYLOAD_LENGTH - 2] & 0xFF) != (checksum & 0xFF) ||
+            (payload[ACCOUNT_ID_PAYLOAD_LENGTH - 1] & 0xFF) != ((checksum >> 8) & 0xFF)) {
+            throw new IllegalArgumentException("Invalid account ID: " + accountId);
+        }
+
+        System.arraycopy(payload, 1, destination, offset, ACCOUNT_ID_RAW_LENGTH);
+    }
+
+    /**
+     * Encode the raw 32 bytes public key found at the given offset into its account ID (G...)
+     *
+     * @param source The array containing the raw public key
+     * @param offset The position in the source array where the key starts
+     * @return
+     */
+    public static String encodeAccountId(final byte[] source, final int offset) {
+        // Build payload
+        final byte[] payload = new byte[ACCOUNT_ID_PAYLOAD_LENGTH];
+        payload[0] = ACCOUNT_ID_VERSION_BYTE;
+        System.arraycopy(source, offset, payload, 1, ACCOUNT_ID_RAW_LENGTH);
+
+        final int checksum = crc16(payload, ACCOUNT_ID_PAYLOAD_LENGTH - 2);
+        payload[ACCOUNT_ID_PAYLOAD_LENGTH - 2] = (byte) checksum;
+        payload[ACCOUNT_ID_PAYLOAD_LENGTH - 1] = (byte) (checksum >> 8);
+
+        // Base32 encode (35 bytes map exactly to 56 characters, no padding required)
+        final char[] encoded = new char[ACCOUNT_ID_ENCODED_LENGTH];
+        int buffer = 0;
+        int bufferedBits = 0;
+        int position = 0;
+        for (byte b : payload) {
+            buffer = (buffer << 8) | (b & 0xFF);
+            bufferedBits += 8;
+            while (bufferedBits >= 5) {
+                bufferedBits -= 5;
+                encoded[position++] = BASE32_ALPHABET[(buffer >> bufferedBits) & 0x1F];
+            }
+        }
+
+        return new String(encoded);
+    }
+
+    /**
+     * CRC16-XModem checksum of the first length bytes of the given data
+     *
+     * @param data
+     * @param length
+     * @return
+     */
+    static int crc16(final byte[] data, final int length) {
+        int crc = 0x0000;
+        for (int i = 0; i < length; i++) {
+            crc ^= (data[i] & 0xFF) << 8;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 0x8000) != 0 ? (crc << 1) ^ 0x1021 : crc << 1;
+            }
+        }
+
+        return crc & 0xFFFF;
+    }
+
     /**
      * Checks if the specified string matches a positive decimal number where decimals are dot (.) separated
      *
@@ -0,0 +1,311 @@
+package com.lumenaut.poolmanager.gateways;
+
+import com.lumenaut.poolmanager.Services;
+import com.lumenaut.poolmanager.XLMUtils;
+import org.stellar.sdk.KeyPair;
+import org.stellar.sdk.Server;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static com.lumenaut.poolmanager.Services.IO_EXECUTOR;
+import static com.lumenaut.poolmanager.Settings.*;
+
+/**
+ * @Author Luca Vignaroli
+ * @Email luca@burning.it
+ * @Date 18/10/2026 - 3:44 PM
+ * <p>
+ * Checks the existence of payment destinations in bulk. Accounts are looked up with a single query per chunk when a
+ * horizon node database is configured, or with a bounded number of concurrent horizon requests otherwise. Accounts
+ * found to exist are cached on disk (per network) and not checked again until the cache entry expires. A single
+ * instance is meant to serve a whole payment run, the cache is written once the run is over.
+ */
+public class AccountValidationService {
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //region FIELDS
+
+    // Cache files folder
+    public static final String DATA_CACHE_PATH = "data/cache";
+
+    // Concurrent horizon requests when the accounts can't be checked on the database, more of them are allowed when
+    // they run on virtual threads
+    public static final int MAX_CONCURRENT_REQUESTS = 8;
+    public static final int MAX_CONCURRENT_VIRTUAL_REQUESTS = 64;
+
+    // Accounts known to exist and the time they were last found (milliseconds), by network
+    private static final HashMap<String, ConcurrentHashMap<String, Long>> CACHES = new HashMap<>();
+
+    // Network and server to check the accounts on
+    private final String network;
+    private final Server server;
+
+    // Set when the cache has entries not written to disk yet
+    private volatile boolean cacheChanged;
+
+    //endregion
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //region CONSTRUCTORS
+
+    /**
+     * Constructor, accounts are checked on the currently selected operations network
+     *
+     * @param server The horizon server of the operations network, used when no database is configured
+     */
+    public AccountValidationService(final Server server) {
+        this.network = SETTING_OPERATIONS_NETWORK;
+        this.server = server;
+    }
+
+    //endregion
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //region METHODS
+
+    /**
+     * Find the accounts which can't receive payments: malformed public keys, accounts that don't exist and accounts
+     * whose existence couldn't be verified
+     *
+     * @param accountIds The public keys of the accounts to check, duplicates are allowed
+     * @return The public keys of the accounts failing validation
+     */
+    public Set<String> findMissingAccounts(final Collection<String> accountIds) {
+        final ConcurrentHashMap<String, Long> cache = getCache(network);
+        final long now = System.currentTimeMillis();
+        final long expiry = now - TimeUnit.HOURS.toMillis(SETTING_ACCOUNT_VALIDATION_CACHE_TTL);
+
+        // Only check the accounts we haven't seen recently
+        final HashSet<String> missingAccounts = new HashSet<>();
+        final LinkedHashSet<String> uncheckedAccounts = new LinkedHashSet<>();
+        for (String accountId : accountIds) {
+            if (!XLMUtils.isPublicKeyValidFormat(accountId)) {
+                missingAccounts.add(accountId);
+            } else {
+                final Long lastFound = cache.get(accountId);
+                if (lastFound == null || lastFound <= expiry) {
+                    uncheckedAccounts.add(accountId);
+                }
+            }
+        }
+
+        if (uncheckedAccounts.isEmpty()) {
+            return missingAccounts;
+        }
+
+        // Check them
+        final Set<String> existingAccounts = isDatabaseConfigured() ? checkOnDatabase(uncheckedAccounts) : checkOnHorizon(uncheckedAccounts);
+        for (String accountId : uncheckedAccounts) {
+            if (existingAccounts.contains(accountId)) {
+                cache.put(accountId, now);
+            } else {
+                cache.remove(accountId);
+                missingAccounts.add(accountId);
+            }
+        }
+
+        // Kept for the next runs once this one is over
+        cacheChanged = true;
+
+        return missingAccounts;
+    }
+
+    /**
+     * Write the accounts checked by this service to the on-disk cache, if any was checked since the last save
+     */
+    public void saveCache() {
+        if (cacheChanged) {
+            cacheChanged = false;
+            writeCache(network, getCache(network), System.currentTimeMillis() - TimeUnit.HOURS.toMillis(SETTING_ACCOUNT_VALIDATION_CACHE_TTL));
+        }
+    }
+
+    /**
+     * Check the accounts on the horizon node database, falls back to horizon if the database can't be queried
+     *
+     * @param accountIds
+     * @return The accounts found
+     */
+    private Set<String> checkOnDatabase(final Collection<String> accountIds) {
+        final HorizonGateway horizonGateway = new HorizonGateway();
+        try {
+            horizonGateway.connect();
+            if (horizonGateway.isConnected()) {
+                return horizonGateway.getExistingAccounts(accountIds);
+            }
+        } catch (SQLException e) {
+            System.out.println("Account validation: database query failed, checking on horizon: " + e.getMessage());
+        } finally {
+            try {
+                horizonGateway.disconnect();
+            } catch (SQLException ignored) {
+                // Nothing left to release
+            }
+        }
+
+        return checkOnHorizon(accountIds);
+    }
+
+    /**
+     * Check the accounts on horizon, a bounded number of requests at a time. Accounts whose request fails are reported
+     * as missing.
+     *
+     * @param accountIds
+     * @return The accounts found
+     */
+    private Set<String> checkOnHorizon(final Collection<String> accountIds) {
+        final HashSet<String> existingAccounts = new HashSet<>();
+        final Iterator<String> accounts = accountIds.iterator();
+        final ExecutorService executor = Services.forBlockingTasks(IO_EXECUTOR);
+        final int maxRequests = executor == IO_EXECUTOR ? MAX_CONCURRENT_REQUESTS : MAX_CONCURRENT_VIRTUAL_REQUESTS;
+        final ArrayDeque<Future<String>> window = new ArrayDeque<>(maxRequests);
+        try {
+            while (accounts.hasNext() || !window.isEmpty()) {
+                // Keep the window full
+                while (window.size() < maxRequests && accounts.hasNext()) {
+                    final String accountId = accounts.next();
+                    window.add(executor.submit(() -> {
+                        try {
+                            server.accounts().account(KeyPair.fromAccountId(accountId));
+
+                            return accountId;
+                        } catch (Exception e) {
+                            return null;
+                        }
+                    }));
+                }
+
+                final String existingAccount = window.poll().get();
+                if (existingAccount != null) {
+                    existingAccounts.add(existingAccount);
+                }
+            }
+        } catch (InterruptedException e) {
+            // The accounts left unchecked are reported as missing
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            System.out.println("Account validation: horizon request failed: " + e.getCause().getMessage());
+        } finally {
+            window.forEach(request -> request.cancel(true));
+        }
+
+        return existingAccounts;
+    }
+
+    /**
+     * Check if a horizon node database is configured for this service's network
+     *
+     * @return
+     */
+    private boolean isDatabaseConfigured() {
+        if (!SETTING_VOTERS_SOURCE.equals("DATABASE")) {
+            return false;
+        }
+
+        switch (network) {
+            case "TEST":
+                return !SETTING_HORIZON_DB_TEST_ADDRESS.isEmpty() && !SETTING_HORIZON_DB_TEST_PORT.isEmpty() &&
+                       !SETTING_HORIZON_DB_TEST_USER.isEmpty() && !SETTING_HORIZON_DB_TEST_PASS.isEmpty();
+            case "LIVE":
+                return !SETTING_HORIZON_DB_LIVE_ADDRESS.isEmpty() && !SETTING_HORIZON_DB_LIVE_PORT.isEmpty() &&
+                       !SETTING_HORIZON_DB_LIVE_USER.isEmpty() && !SETTING_HORIZON_DB_LIVE_PASS.isEmpty();
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Get the cache of the given network, loading it from disk on first use
+     *
+     * @param network
+     * @return
+     */
+    private static synchronized ConcurrentHashMap<String, Long> getCache(final String network) {
+        ConcurrentHashMap<String, Long> cache = CACHES.get(network);
+        if (cache == null) {
+            cache = new ConcurrentHashMap<>();
+            final File file = getCacheFile(network);
+            if (file.exists()) {
+                try (final BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+                    // One "ACCOUNT_ID TIMESTAMP" line per account
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        final int separator = line.indexOf(' ');
+                        if (separator > 0) {
+                            try {
+                                cache.put(line.substring(0, separator), Long.parseLong(line.substring(separator + 1)));
+                            } catch (NumberFormatException ignored) {
+                                // Skip corrupted lines
+                            }
+                        }
+                    }
+                } catch (IOException e) {
+                    System.out.println("Account validation: unable to read the accounts cache: " + e.getMessage());
+                }
+            }
+
+            CACHES.put(network, cache);
+        }
+
+        return cache;
+    }
+
+    /**
+     * Write the given cache to disk, dropping the expired entries. The previous file is replaced atomically.
+     *
+     * @param network
+     * @param cache
+     * @param expiry  Entries last found before this time (milliseconds) are dropped
+     */
+    private static synchronized void writeCache(final String network, final ConcurrentHashMap<String, Long> cache, final long expiry) {
+        final File file = getCacheFile(network);
+        final File parent = file.getAbsoluteFile().getParentFile();
+        if (!parent.exists() && !parent.mkdirs()) {
+            System.out.println("Account validation: unable to create folder: " + parent.getPath());
+
+            return;
+        }
+
+        final File tempFile = new File(parent, file.getName() + ".tmp");
+        try {
+            try (final Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tempFile), StandardCharsets.UTF_8))) {
+                for (Map.Entry<String, Long> entry : cache.entrySet()) {
+                    if (entry.getValue() > expiry) {
+                        writer.write(entry.getKey());
+                        writer.write(' ');
+                        writer.write(String.valueOf(entry.getValue()));
+                        writer.write('\n');
+                    }
+                }
+            }
+
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.out.println("Account validation: unable to write the accounts cache: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Get the cache file of the given network
+     *
+     * @param network
+     * @return
+     */
+    private static File getCacheFile(final String network) {
+        return new File(DATA_CACHE_PATH, "accounts_" + network.toLowerCase() + ".txt");
+    }
+
+    //endregion
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+}
@@ -0,0 +1,238 @@
+package com.lumenaut.poolmanager.gateways;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * @Author Luca Vignaroli
+ * @Email luca@burning.it
+ * @Date 18/10/2026 - 3:48 PM
+ * <p>
+ * Limits the transactions submitted at once by all the payment channels (the active channels, when channels don't
+ * pipeline their submissions). The limit follows an additive increase / multiplicative decrease scheme: it grows by
+ * one for every ledger closing without congestion signals, and it's halved (at most once per ledger) when horizon
+ * throttles the requests (HTTP 429) or the network rejects a transaction for its fee (surge pricing). After a
+ * congestion signal the limit never exceeds the number of our transactions observed in a single ledger, so that the
+ * channels settle on what the network actually takes. Waiting channels park on a lock condition rather than a monitor,
+ * so that channels running on virtual threads don't pin their carrier threads.
+ */
+public class ChannelScheduler {
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //region FIELDS
+
+    // Lowest limit, so that payments keep going even on a congested network
+    public static final int MIN_LIMIT = 1;
+
+    // Guards the state, submissions wait for a free slot on the condition
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition slotReleased = lock.newCondition();
+
+    // Configured channels' submissions, the limit never exceeds it
+    private int maxLimit;
+
+    // Current limit and the submissions holding a slot
+    private int limit;
+    private int active;
+
+    // Our transactions included in the ledger being observed, and the most ever included in a single ledger
+    private long observedLedger;
+    private int observedLedgerTransactions;
+    private int observedLedgerOperations;
+    private int peakLedgerTransactions;
+    private int peakLedgerOperations;
+
+    // Ledger of the last congestion signal and of the last decrease
+    private long congestionLedger = -1L;
+    private long decreaseLedger = -1L;
+
+    //endregion
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //region ACCESSORS
+
+    public int getLimit() {
+        lock.lock();
+        try {
+            return limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getActive() {
+        lock.lock();
+        try {
+            return active;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getPeakLedgerTransactions() {
+        lock.lock();
+        try {
+            return peakLedgerTransactions;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getPeakLedgerOperations() {
+        lock.lock();
+        try {
+            return peakLedgerOperations;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //endregion
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //region CONSTRUCTORS
+
+    /**
+     * Constructor
+     *
+     * @param maxLimit The maximum number of submissions at once
+     */
+    public ChannelScheduler(final int maxLimit) {
+        reset(maxLimit);
+    }
+
+    //endregion
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //region METHODS
+
+    /**
+     * Start over with the given maximum, to be called before each payment run. What was observed during previous runs
+     * is forgotten, submissions still holding a slot keep it.
+     *
+     * @param maxLimit The maximum number of submissions at once
+     */
+    public void reset(final int maxLimit) {
+        lock.lock();
+        try {
+            this.maxLimit = Math.max(MIN_LIMIT, maxLimit);
+            this.limit = this.maxLimit;
+            this.observedLedger = 0L;
+            this.observedLedgerTransactions = 0;
+            this.observedLedgerOperations = 0;
+            this.peakLedgerTransactions = 0;
+            this.peakLedgerOperations = 0;
+            this.congestionLedger = -1L;
+            this.decreaseLedger = -1L;
+
+            slotReleased.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wait for a submission slot
+     *
+     * @throws InterruptedException
+     */
+    public void acquire() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (active >= limit) {
+                slotReleased.await();
+            }
+
+            active++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Release a submission slot
+     */
+    public void release() {
+        lock.lock();
+        try {
+            active--;
+            slotReleased.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Record a transaction included in a ledger
+     *
+     * @param ledger     The ledger sequence number
+     * @param operations The transaction's operations
+     */
+    public void onIncluded(final long ledger, final int operations) {
+        lock.lock();
+        try {
+            if (ledger > observedLedger) {
+                // A new ledger has closed, grow if the previous one went through without congestion
+                if (observedLedger > 0 && congestionLedger < observedLedger && limit < maxLimit) {
+                    limit++;
+                    slotReleased.signalAll();
+                }
+
+                observedLedger = ledger;
+                observedLedgerTransactions = 0;
+                observedLedgerOperations = 0;
+            } else if (ledger < observedLedger) {
+                // Late response for an older ledger
+                return;
+            }
+
+            observedLedgerTransactions++;
+            observedLedgerOperations += operations;
+            peakLedgerTransactions = Math.max(peakLedgerTransactions, observedLedgerTransactions);
+            peakLedgerOperations = Math.max(peakLedgerOperations, observedLedgerOperations);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Record a congestion signal (throttled request, fee too low for the current surge pricing)
+     */
+    public void onCongestion() {
+        lock.lock();
+        try {
+            final long ledger = LedgerClock.getLastLedger();
+            congestionLedger = ledger;
+
+            // Submissions already in flight when the limit dropped will report the same congestion, once per ledger is enough
+            if (decreaseLedger == ledger) {
+                return;
+            }
+            decreaseLedger = ledger;
+
+            final int halved = Math.max(MIN_LIMIT, limit / 2);
+            limit = peakLedgerTransactions > 0 ? Math.max(MIN_LIMIT, Math.min(halved, peakLedgerTransactions)) : halved;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Describe the current state of the scheduler
+     *
+     * @return
+     */
+    public String describe() {
+        lock.lock();
+        try {
+            return "limit " + limit + "/" + maxLimit + ", active " + active + ", peak per ledger " + peakLedgerTransactions + " transactions (" + peakLedgerOperations + " operations)";
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //endregion
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+}
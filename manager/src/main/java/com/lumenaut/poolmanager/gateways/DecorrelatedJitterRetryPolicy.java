@@ -0,0 +1,81 @@
+package com.lumenaut.poolmanager.gateways;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * @Author Luca Vignaroli
+ * @Email luca@burning.it
+ * @Date 18/10/2026 - 3:39 PM
+ * <p>
+ * Exponential backoff with decorrelated jitter: each delay is picked at random between the base delay and three times
+ * the previous one, capped to the maximum delay. Channels failing at the same moment spread their resubmissions
+ * instead of retrying in lockstep, and a transient failure only costs the base delay.
+ * <p>
+ * Failures bound to a ledger close are never retried before the next ledger is expected to close.
+ */
+public class DecorrelatedJitterRetryPolicy implements RetryPolicy {
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //region FIELDS
+
+    // Time left to horizon to ingest a ledger after its expected close (milliseconds)
+    private static final long LEDGER_CLOSE_MARGIN = 500;
+
+    private final long baseDelay;
+    private final long maxDelay;
+
+    //endregion
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //region SUBCLASSES
+
+    /**
+     * Backoff of a single transaction
+     */
+    private class DecorrelatedJitterBackoff implements Backoff {
+        private long previousDelay = baseDelay;
+
+        @Override
+        public long nextDelay(final boolean ledgerBound) {
+            long delay = Math.min(maxDelay, ThreadLocalRandom.current().nextLong(baseDelay, Math.max(baseDelay, previousDelay * 3) + 1));
+            previousDelay = delay;
+
+            if (ledgerBound) {
+                delay = Math.max(delay, LedgerClock.millisToNextClose() + LEDGER_CLOSE_MARGIN);
+            }
+
+            return delay;
+        }
+    }
+
+    //endregion
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //region CONSTRUCTORS
+
+    /**
+     * Constructor
+     *
+     * @param baseDelay Shortest delay (milliseconds)
+     * @param maxDelay  Longest delay (milliseconds)
+     */
+    public DecorrelatedJitterRetryPolicy(final long baseDelay, final long maxDelay) {
+        this.baseDelay = Math.max(1, baseDelay);
+        this.maxDelay = Math.max(this.baseDelay, maxDelay);
+    }
+
+    //endregion
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //region INTERFACES IMPLEMENTATIONS
+
+    @Override
+    public Backoff start() {
+        return new DecorrelatedJitterBackoff();
+    }
+
+    //endregion
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+}
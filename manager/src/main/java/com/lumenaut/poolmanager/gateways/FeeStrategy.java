@@ -0,0 +1,178 @@
+package com.lumenaut.poolmanager.gateways;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import shadow.okhttp3.Request;
+import shadow.okhttp3.Response;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.RejectedExecutionException;
+
+import static com.lumenaut.poolmanager.DataFormats.OBJECT_MAPPER;
+import static com.lumenaut.poolmanager.Services.IO_EXECUTOR;
+import static com.lumenaut.poolmanager.Settings.*;
+
+/**
+ * @Author Luca Vignaroli
+ * @Email luca@burning.it
+ * @Date 18/10/2026 - 3:51 PM
+ * <p>
+ * Prices the operations of the payment transactions. The configured fee is the floor, on top of it the fee follows
+ * the configured percentile of the fees recently charged by the network (horizon's /fee_stats, or any endpoint serving
+ * the same document) and is raised whenever a transaction is rejected with "tx_insufficient_fee". The fee never
+ * exceeds the configured maximum.
+ */
+public class FeeStrategy {
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //region FIELDS
+
+    // Minimum fee per operation accepted by the network (stroops)
+    public static final int BASE_FEE = 100;
+
+    // Fee stats are sampled at most once per ledger
+    private static final long SAMPLE_VALIDITY = LedgerClock.EXPECTED_LEDGER_CLOSE_TIME;
+
+    // A raised fee holds for this long after the last rejection (milliseconds)
+    private static final long RAISE_VALIDITY = 60 * 1000L;
+
+    // Last fee stats sample
+    private int sampledFee;
+    private long sampledAt;
+    private boolean sampling;
+
+    // Fee raised after a rejection
+    private int raisedFee;
+    private long raisedAt;
+
+    //endregion
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //region METHODS
+
+    /**
+     * Get the fee per operation of the next transaction. Never blocks, stale fee stats are refreshed in the background.
+     *
+     * @return The fee in stroops
+     */
+    public synchronized int getOperationFee() {
+        final long now = System.currentTimeMillis();
+
+        // Refresh the sample for the next transactions
+        if (SETTING_FEE_PERCENTILE > 0 && !sampling && now - sampledAt > SAMPLE_VALIDITY) {
+            sampling = true;
+            try {
+                IO_EXECUTOR.execute(this::refresh);
+            } catch (RejectedExecutionException e) {
+                sampling = false;
+            }
+        }
+
+        int fee = Math.max(BASE_FEE, SETTING_FEE);
+        if (SETTING_FEE_PERCENTILE > 0) {
+            fee = Math.max(fee, sampledFee);
+        }
+
+        if (now - raisedAt < RAISE_VALIDITY) {
+            fee = Math.max(fee, raisedFee);
+        }
+
+        return Math.min(fee, getMaxOperationFee());
+    }
+
+    /**
+     * Get the highest fee per operation we're willing to pay
+     *
+     * @return The fee in stroops
+     */
+    public int getMaxOperationFee() {
+        return Math.max(Math.max(BASE_FEE, SETTING_FEE), SETTING_MAX_FEE);
+    }
+
+    /**
+     * Record a transaction rejected with "tx_insufficient_fee"
+     *
+     * @param operationFee The fee per operation of the rejected transaction (stroops)
+     * @return True if the fee has been raised and the transaction should be rebuilt, false if the fee is already at its
+     * maximum
+     */
+    public synchronized boolean onInsufficientFee(final int operationFee) {
+        if (operationFee >= getMaxOperationFee()) {
+            return false;
+        }
+
+        raisedFee = Math.min(getMaxOperationFee(), Math.max(raisedFee, operationFee * 2));
+        raisedAt = System.currentTimeMillis();
+
+        return true;
+    }
+
+    /**
+     * Sample the fee stats now, blocking until they're fetched. To be called before a payment run, so that its first
+     * transactions are priced as well.
+     */
+    public void refresh() {
+        Integer fee = null;
+        try {
+            fee = fetchPercentileFee();
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Fee strategy: unable to sample the network fees: " + e.getMessage());
+        }
+
+        synchronized (this) {
+            if (fee != null) {
+                sampledFee = fee;
+            }
+
+            // Failed attempts wait for the next ledger as well
+            sampledAt = System.currentTimeMillis();
+            sampling = false;
+        }
+    }
+
+    /**
+     * Describe the current pricing
+     *
+     * @return
+     */
+    public synchronized String describe() {
+        return "fee per operation " + getOperationFee() + " stroops (floor " + Math.max(BASE_FEE, SETTING_FEE) +
+               (SETTING_FEE_PERCENTILE > 0 ? ", p" + SETTING_FEE_PERCENTILE + " " + sampledFee : "") +
+               ", max " + getMaxOperationFee() + ")";
+    }
+
+    /**
+     * Fetch the fee stats and extract the configured percentile. Both the current format (fee_charged.pNN) and the
+     * older one (pNN_accepted_fee) are supported.
+     *
+     * @return The fee in stroops, null if the document doesn't report the percentile
+     * @throws IOException
+     */
+    private static Integer fetchPercentileFee() throws IOException {
+        final String url = !SETTING_FEE_STATS_URL.isEmpty() ? SETTING_FEE_STATS_URL :
+                           (SETTING_OPERATIONS_NETWORK.equals("LIVE") ? SETTING_HORIZON_LIVE_NETWORK : SETTING_HORIZON_TEST_NETWORK).replaceAll("/+$", "") + "/fee_stats";
+
+        final Request request = new Request.Builder().url(url).header("Accept", "application/json").get().build();
+        try (final Response response = HorizonServers.getHttpClient().newCall(request).execute()) {
+            if (!response.isSuccessful()) {
+                throw new IOException("Request to " + url + " failed with HTTP status " + response.code());
+            }
+
+            final JsonNode stats;
+            try (final InputStream body = response.body().byteStream()) {
+                stats = OBJECT_MAPPER.readTree(body);
+            }
+
+            final String percentile = "p" + SETTING_FEE_PERCENTILE;
+            JsonNode fee = stats.path("fee_charged").path(percentile);
+            if (fee.isMissingNode()) {
+                fee = stats.path(percentile + "_accepted_fee");
+            }
+
+            return fee.isMissingNode() || fee.isNull() ? null : Integer.parseInt(fee.asText());
+        }
+    }
+
+    //endregion
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+}
@@ -0,0 +1,282 @@
+package com.lumenaut.poolmanager.gateways;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Properties;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Author Luca Vignaroli
+ * @Email luca@burning.it
+ * @Date 18/10/2026 - 3:17 PM
+ * <p>
+ * Minimal JDBC connection pool for the Horizon node database. Each pooled connection keeps its own cache of prepared
+ * statements keyed by SQL text, idle connections are health checked before being handed out again and connections are
+ * retired once they exceed their maximum lifetime.
+ */
+public class HorizonConnectionPool {
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //region FIELDS
+
+    // Maximum number of connections the pool will open towards the horizon database
+    public static final int MAX_POOL_SIZE = 8;
+
+    // Connections older than this are closed and replaced instead of being reused (milliseconds)
+    public static final long CONNECTION_MAX_LIFETIME = 30 * 60 * 1000L;
+
+    // Connections that have been idle for longer than this are validated before being reused (milliseconds)
+    public static final long CONNECTION_VALIDATION_INTERVAL = 30 * 1000L;
+
+    // How long a connection has to answer a validation request
+    public static final int CONNECTION_VALIDATION_TIMEOUT_SECONDS = 2;
+
+    // How long to wait for a free connection before giving up (milliseconds)
+    public static final long CONNECTION_BORROW_TIMEOUT = 60 * 1000L;
+
+    // Connection settings
+    private final String url;
+    private final Properties properties;
+
+    // Pool state
+    private final LinkedBlockingDeque<PooledConnection> idleConnections = new LinkedBlockingDeque<>();
+    private final Semaphore permits;
+    private volatile boolean closed;
+
+    //endregion
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //region SUBCLASSES
+
+    /**
+     * A connection owned by the pool. Closing it returns it to the pool instead of closing the underlying connection.
+     */
+    public static class PooledConnection implements AutoCloseable {
+        private final HorizonConnectionPool pool;
+        private final Connection connection;
+        private final HashMap<String, PreparedStatement> statementsCache = new HashMap<>();
+        private final long createdAt;
+        private long lastUsedAt;
+        private boolean broken;
+        private volatile PreparedStatement activeStatement;
+
+        private PooledConnection(final HorizonConnectionPool pool, final Connection connection) {
+            this.pool = pool;
+            this.connection = connection;
+            this.createdAt = System.currentTimeMillis();
+            this.lastUsedAt = createdAt;
+        }
+
+        public Connection getConnection() {
+            return connection;
+        }
+
+        /**
+         * Get a prepared statement for the given SQL text, statements are prepared once per connection and reused
+         *
+         * @param sql
+         * @return
+         * @throws SQLException
+         */
+        public PreparedStatement prepare(final String sql) throws SQLException {
+            PreparedStatement statement = statementsCache.get(sql);
+            if (statement == null || statement.isClosed()) {
+                statement = connection.prepareStatement(sql);
+                statementsCache.put(sql, statement);
+            } else {
+                statement.clearParameters();
+            }
+
+            activeStatement = statement;
+
+            return statement;
+        }
+
+        /**
+         * Abort the statement last prepared on this connection, if it's still running. Safe to call from any thread.
+         */
+        public void cancel() {
+            final PreparedStatement statement = activeStatement;
+            if (statement != null) {
+                try {
+                    statement.cancel();
+                } catch (SQLException ignored) {
+                }
+            }
+        }
+
+        /**
+         * Flag this connection as unusable if the given exception signals a connection failure, broken connections are
+         * discarded when returned to the pool
+         *
+         * @param e
+         */
+        public void invalidateIfBroken(final SQLException e) {
+            final String sqlState = e.getSQLState();
+            if (sqlState == null || sqlState.startsWith("08") || sqlState.startsWith("57P")) {
+                broken = true;
+            }
+        }
+
+        /**
+         * Return this connection to the pool
+         */
+        @Override
+        public void close() {
+            pool.release(this);
+        }
+
+        private boolean isExpired(final long now) {
+            return now - createdAt > CONNECTION_MAX_LIFETIME;
+        }
+
+        private void closeQuietly() {
+            statementsCache.clear();
+
+            try {
+                connection.close();
+            } catch (SQLException ignored) {
+            }
+        }
+    }
+
+    //endregion
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //region CONSTRUCTORS
+
+    /**
+     * Constructor
+     *
+     * @param url        The jdbc url of the database
+     * @param properties The connection properties (user, password)
+     * @param maxSize    Maximum number of open connections
+     */
+    public HorizonConnectionPool(final String url, final Properties properties, final int maxSize) {
+        this.url = url;
+        this.properties = properties;
+        this.permits = new Semaphore(maxSize, true);
+    }
+
+    //endregion
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //region METHODS
+
+    /**
+     * Check if this pool has been created for the specified connection settings
+     *
+     * @param url
+     * @param properties
+     * @return
+     */
+    public boolean matches(final String url, final Properties properties) {
+        return this.url.equals(url) && this.properties.equals(properties);
+    }
+
+    /**
+     * Borrow a healthy connection from the pool, opening a new one if no idle connection is available
+     *
+     * @return
+     * @throws SQLException
+     */
+    public PooledConnection borrow() throws SQLException {
+        if (closed) {
+            throw new SQLException("The horizon database connection pool has been closed");
+        }
+
+        // Wait for a free slot
+        try {
+            if (!permits.tryAcquire(CONNECTION_BORROW_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                throw new SQLException("Timed out waiting for a free horizon database connection");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            throw new SQLException("Interrupted while waiting for a horizon database connection");
+        }
+
+        try {
+            // Reuse the most recently used idle connection that is still healthy
+            PooledConnection pooledConnection;
+            while ((pooledConnection = idleConnections.pollFirst()) != null) {
+                final long now = System.currentTimeMillis();
+                if (pooledConnection.isExpired(now)) {
+                    pooledConnection.closeQuietly();
+
+                    continue;
+                }
+
+                if (now - pooledConnection.lastUsedAt > CONNECTION_VALIDATION_INTERVAL && !pooledConnection.connection.isValid(CONNECTION_VALIDATION_TIMEOUT_SECONDS)) {
+                    pooledConnection.closeQuietly();
+
+                    continue;
+                }
+
+                return pooledConnection;
+            }
+
+            // Nothing reusable, open a new connection
+            return new PooledConnection(this, DriverManager.getConnection(url, properties));
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+
+            throw e;
+        }
+    }
+
+    /**
+     * Return a connection to the pool
+     *
+     * @param pooledConnection
+     */
+    private void release(final PooledConnection pooledConnection) {
+        final long now = System.currentTimeMillis();
+        pooledConnection.lastUsedAt = now;
+        pooledConnection.activeStatement = null;
+
+        // Discard connections that can't be reused
+        boolean reusable = !closed && !pooledConnection.broken && !pooledConnection.isExpired(now);
+        if (reusable) {
+            try {
+                // Connections always go back to the pool in autocommit mode
+                if (!pooledConnection.connection.getAutoCommit()) {
+                    pooledConnection.connection.rollback();
+                    pooledConnection.connection.setAutoCommit(true);
+                }
+            } catch (SQLException e) {
+                reusable = false;
+            }
+        }
+
+        if (reusable) {
+            idleConnections.offerFirst(pooledConnection);
+        } else {
+            pooledConnection.closeQuietly();
+        }
+
+        permits.release();
+    }
+
+    /**
+     * Close all idle connections and refuse further requests, borrowed connections are closed when returned
+     */
+    public void close() {
+        closed = true;
+
+        PooledConnection pooledConnection;
+        while ((pooledConnection = idleConnections.pollFirst()) != null) {
+            pooledConnection.closeQuietly();
+        }
+    }
+
+    //endregion
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+}
@@ -1,17 +1,19 @@
 package com.lumenaut.poolmanager.gateways;
 
 import com.lumenaut.poolmanager.DataFormats.VoterCustomDataEntry;
-import com.lumenaut.poolmanager.DataFormats.VoterDataEntry;
 import com.lumenaut.poolmanager.DataFormats.VotersData;
-import org.postgresql.util.Base64;
+import com.lumenaut.poolmanager.Services;
+import com.lumenaut.poolmanager.VotersStore;
+import com.lumenaut.poolmanager.XLMUtils;
+import com.lumenaut.poolmanager.gateways.HorizonConnectionPool.PooledConnection;
+import com.lumenaut.poolmanager.gateways.QueryMetrics.Sample;
 
-import java.nio.charset.StandardCharsets;
+import java.nio.ByteBuffer;
 import java.sql.*;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Properties;
+import java.util.*;
+import java.util.concurrent.*;
 
+import static com.lumenaut.poolmanager.Services.DATABASE_EXECUTOR;
 import static com.lumenaut.poolmanager.Settings.*;
 import static com.lumenaut.poolmanager.UIUtils.showError;
 
@@ -20,18 +22,132 @@ import static com.lumenaut.poolmanager.UIUtils.showError;
  * @Date 09/01/2018 - 5:45 PM
  * @Copyright 2012-2017 Turgid Studios LTD, All rights reserved.
  * <p>
- * This class manages the connection to a custom Horizon Node database
+ * This class manages the connection to a custom Horizon Node database, it is the default voters source
  */
-public class HorizonGateway {
+public class HorizonGateway implements VoterSource {
     ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
     //region FIELDS
 
+    // Voters and their matching data entries (names and decoded values aggregated in two parallel arrays)
+    private static final String VOTERS_DATA_SELECT = "SELECT accounts.accountid, accounts.balance, data.datanames, data.datavalues " +
+                                                     "FROM core.public.accounts " +
+                                                     "LEFT JOIN LATERAL (" +
+                                                     "SELECT array_agg(accountdata.dataname ORDER BY accountdata.dataname) AS datanames, " +
+                                                     "array_agg(convert_from(decode(accountdata.datavalue, 'base64'), 'UTF8') ORDER BY accountdata.dataname) AS datavalues " +
+                                                     "FROM core.public.accountdata " +
+                                                     "WHERE accountdata.accountid = accounts.accountid AND accountdata.dataname ILIKE ?" +
+                                                     ") AS data ON TRUE " +
+                                                     "WHERE accounts.inflationdest = ? AND accounts.balance >= 1000000000 ";
+
+    // Ties on the balance are broken by account ID (byte order, whatever the database collation) so that plans are reproducible
+    private static final String VOTERS_DATA_ORDER = "ORDER BY accounts.balance DESC, accounts.accountid COLLATE \"C\"";
+    private static final String VOTERS_DATA_SQL = VOTERS_DATA_SELECT + VOTERS_DATA_ORDER;
+    private static final String VOTERS_DATA_RANGE_SQL = VOTERS_DATA_SELECT +
+                                                        "AND accounts.accountid COLLATE \"C\" >= ? AND accounts.accountid COLLATE \"C\" < ? " +
+                                                        VOTERS_DATA_ORDER;
+
+    // Accounts (and their data entries) modified after the given ledger, whatever their inflation destination
+    private static final String VOTERS_DELTA_SQL = "SELECT accounts.accountid, accounts.balance, accounts.inflationdest, data.datanames, data.datavalues " +
+                                                   "FROM core.public.accounts " +
+                                                   "LEFT JOIN LATERAL (" +
+                                                   "SELECT array_agg(accountdata.dataname ORDER BY accountdata.dataname) AS datanames, " +
+                                                   "array_agg(convert_from(decode(accountdata.datavalue, 'base64'), 'UTF8') ORDER BY accountdata.dataname) AS datavalues " +
+                                                   "FROM core.public.accountdata " +
+                                                   "WHERE accountdata.accountid = accounts.accountid AND accountdata.dataname ILIKE ?" +
+                                                   ") AS data ON TRUE " +
+                                                   "WHERE accounts.lastmodified > ? " +
+                                                   "OR accounts.accountid IN (SELECT accountdata.accountid FROM core.public.accountdata WHERE accountdata.lastmodified > ?) " +
+                                                   VOTERS_DATA_ORDER;
+
+    // Data entries matching any of the given name patterns of the accounts voting for the given destination
+    private static final String VOTERS_CUSTOM_DATA_SQL = "SELECT accounts.accountid, accountdata.dataname, convert_from(decode(accountdata.datavalue, 'base64'), 'UTF8') AS datavalue " +
+                                                         "FROM core.public.accounts " +
+                                                         "JOIN core.public.accountdata ON accountdata.accountid = accounts.accountid " +
+                                                         "WHERE accounts.inflationdest = ? AND accounts.balance >= 1000000000 AND accountdata.dataname ILIKE ANY (?)";
+
+    private static final String VOTERS_COUNT_SQL = "SELECT COUNT(*) FROM core.public.accounts WHERE inflationdest = ? AND balance >= 1000000000";
+    private static final String LAST_LEDGER_SQL = "SELECT MAX(ledgerseq) FROM core.public.ledgerheaders";
+
+    // Accounts existing among the given ones, checked in chunks to keep the array parameter reasonably sized
+    private static final String EXISTING_ACCOUNTS_SQL = "SELECT accountid FROM core.public.accounts WHERE accountid = ANY (?)";
+    private static final int EXISTING_ACCOUNTS_CHUNK_SIZE = 10000;
+
+    // Stellar core's inflation implementation does not include accounts holding less than 100XLM in their balance
+    private static final long VOTER_MINIMUM_BALANCE = 1000000000L;
+
+    // Account IDs are uniformly distributed over their second and third characters ("G" + [A-D] + [A-Z2-7]), partitions
+    // are built from ranges of these prefixes
+    private static final String[] ACCOUNT_ID_PREFIXES = buildAccountIdPrefixes();
+
+    // Approximate payload of the fixed columns, used by the query metrics
+    private static final int ACCOUNT_ID_BYTES = 56;
+    private static final int LONG_BYTES = 8;
+
+    // Number of voters rows transferred per round trip while streaming the voters cursor
+    private static final int VOTERS_FETCH_SIZE = 1000;
+
+    // Default timeouts of the asynchronous requests (milliseconds)
+    public static final long QUERY_TIMEOUT = 30 * 1000L;
+    public static final long VOTERS_FETCH_TIMEOUT = 10 * 60 * 1000L;
+
+    // Scope of the asynchronous request being executed by the current thread
+    private static final ThreadLocal<QueryScope> QUERY_SCOPE = new ThreadLocal<>();
+
+    private static final String CHECK_NETWORK_SQL = "SELECT * FROM core.public.storestate WHERE statename = 'networkpassphrase'";
+    private static final String BALANCE_SQL = "SELECT * FROM core.public.accounts WHERE accountid = ? LIMIT 1";
+
     // Data
-    private Connection conn;
+    private HorizonConnectionPool pool;
     private boolean connected;
-    private final StringBuilder sb = new StringBuilder();
     private final VotersData votersData;
 
+    // Voters snapshot of the last fetch and the ledger it is up to date with
+    private VotersStore votersSnapshot;
+    private String votersSnapshotDestination;
+    private long votersSnapshotLedger;
+
+    //endregion
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //region SUBCLASSES
+
+    /**
+     * A blocking request to the horizon database
+     *
+     * @param <T>
+     */
+    @FunctionalInterface
+    private interface Query<T> {
+        T execute() throws SQLException;
+    }
+
+    /**
+     * Tracks the connections used by an asynchronous request so that its running statements can be aborted when the
+     * request is cancelled or times out
+     */
+    private static class QueryScope {
+        private final Set<PooledConnection> connections = new HashSet<>();
+        private boolean cancelled;
+
+        private synchronized void register(final PooledConnection connection) throws SQLException {
+            if (cancelled) {
+                throw new SQLException("The request has been cancelled");
+            }
+
+            connections.add(connection);
+        }
+
+        private synchronized void unregister(final PooledConnection connection) {
+            connections.remove(connection);
+        }
+
+        private synchronized void cancel() {
+            cancelled = true;
+            connections.forEach(PooledConnection::cancel);
+        }
+    }
+
     //endregion
     ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
 
@@ -107,9 +223,8 @@ public class HorizonGateway {
                 props.setProperty("user", SETTING_HORIZON_DB_TEST_USER);
                 props.setProperty("password", SETTING_HORIZON_DB_TEST_PASS);
 
-                // Core database connection
-                conn = DriverManager.getConnection(horizonNodeDatabaseUrl.toString() + "/core", props);
-                connected = true;
+                // Core database connection pool
+                openConnectionPool(horizonNodeDatabaseUrl.toString() + "/core", props);
             }
             break;
             case "LIVE": {
@@ -131,9 +246,8 @@ public class HorizonGateway {
                 props.setProperty("user", SETTING_HORIZON_DB_LIVE_USER);
                 props.setProperty("password", SETTING_HORIZON_DB_LIVE_PASS);
 
-                // Core database connection
-                conn = DriverManager.getConnection(horizonNodeDatabaseUrl.toString() + "/core", props);
-                connected = true;
+                // Core database connection pool
+                openConnectionPool(horizonNodeDatabaseUrl.toString() + "/core", props);
             }
             break;
             default:
@@ -142,210 +256,692 @@ public class HorizonGateway {
     }
 
     /**
-     * Close the database connection
+     * Open the connection pool for the specified database, an existing pool is kept if it was created with the same
+     * connection settings
+     *
+     * @param url
+     * @param props
+     * @throws SQLException
+     */
+    private void openConnectionPool(final String url, final Properties props) throws SQLException {
+        if (pool != null && pool.matches(url, props)) {
+            connected = true;
+
+            return;
+        }
+
+        // Settings have changed, drop the current connections
+        disconnect();
+
+        // Open the first connection right away so that configuration errors are reported immediately
+        final HorizonConnectionPool newPool = new HorizonConnectionPool(url, props, HorizonConnectionPool.MAX_POOL_SIZE);
+        newPool.borrow().close();
+
+        pool = newPool;
+        connected = true;
+    }
+
+    /**
+     * Close the database connections
      *
      * @throws SQLException
      */
     public void disconnect() throws SQLException {
-        if (connected) {
-            conn.close();
-            connected = false;
+        if (pool != null) {
+            pool.close();
+            pool = null;
         }
+
+        // The snapshot may belong to a different database
+        invalidateVotersSnapshot();
+
+        connected = false;
     }
 
     /**
-     * Force a disconnection and reconnection, useful when changing parameter settings
+     * Refresh the connection settings, the connection pool is only rebuilt if the settings have changed. Stale
+     * connections are replaced by the pool itself.
      *
      * @throws SQLException
      */
     public void reconnect() throws SQLException {
-        disconnect();
         connect();
     }
 
     /**
-     * This is a rough attempt to detect if the horizon node we're connected is on a test network.
+     * Borrow a connection from the pool
      *
      * @return
      * @throws SQLException
      */
-    public boolean isTestNetwork() throws SQLException {
-        // Prepared statement
-        final Statement stm = conn.createStatement();
-        final String checkNetworkSQL = "SELECT * FROM core.public.storestate WHERE statename = 'networkpassphrase'";
-
-        // Extract results
-        final ResultSet checkNetworkRS = stm.executeQuery(checkNetworkSQL);
-
-        // Assume live network unless the network passphrase contains the "test" keyword.
-        boolean isTestNework = false;
-        if (checkNetworkRS.isBeforeFirst()) {
-            checkNetworkRS.next();
-            final String state = checkNetworkRS.getString("state");
-            isTestNework = state.toLowerCase().contains("test");
+    private PooledConnection borrowConnection() throws SQLException {
+        if (pool == null) {
+            throw new SQLException("Not connected to a horizon database");
         }
 
-        // Release resources
-        checkNetworkRS.close();
-        stm.close();
+        final PooledConnection connection = pool.borrow();
+
+        // Make the connection cancellable by the asynchronous request we're running for
+        final QueryScope scope = QUERY_SCOPE.get();
+        if (scope != null) {
+            try {
+                scope.register(connection);
+            } catch (SQLException e) {
+                connection.close();
+
+                throw e;
+            }
+        }
+
+        return connection;
+    }
+
+    /**
+     * Return a borrowed connection to the pool
+     *
+     * @param connection
+     */
+    private void releaseConnection(final PooledConnection connection) {
+        final QueryScope scope = QUERY_SCOPE.get();
+        if (scope != null) {
+            scope.unregister(connection);
+        }
+
+        connection.close();
+    }
+
+    /**
+     * Run the given request on the I/O executor
+     *
+     * @param query   The request
+     * @param timeout Time after which the request is aborted and the future completed with a TimeoutException
+     *                (milliseconds, 0 for no timeout)
+     * @param <T>
+     * @return A future completed with the request result, cancelling it aborts the request
+     */
+    private <T> CompletableFuture<T> supplyAsync(final Query<T> query, final long timeout) {
+        final QueryScope scope = new QueryScope();
+        final CompletableFuture<T> result = Services.supplyAsync(() -> {
+            QUERY_SCOPE.set(scope);
+            try {
+                return query.execute();
+            } finally {
+                QUERY_SCOPE.remove();
+            }
+        }, timeout);
+
+        // Interrupting the thread doesn't stop the driver, abort the running statements if cancelled or timed out
+        result.whenComplete((value, error) -> {
+            if (error != null) {
+                scope.cancel();
+            }
+        });
+
+        return result;
+    }
+
+    /**
+     * Asynchronous version of {@link #isTestNetwork()}
+     *
+     * @param timeout Request timeout (milliseconds, 0 for no timeout)
+     * @return
+     */
+    @Override
+    public CompletableFuture<Boolean> isTestNetworkAsync(final long timeout) {
+        return supplyAsync(this::isTestNetwork, timeout);
+    }
+
+    /**
+     * Asynchronous version of {@link #getBalance(String)}
+     *
+     * @param accountId The public key of the account
+     * @param timeout   Request timeout (milliseconds, 0 for no timeout)
+     * @return
+     */
+    @Override
+    public CompletableFuture<Long> getBalanceAsync(final String accountId, final long timeout) {
+        return supplyAsync(() -> getBalance(accountId), timeout);
+    }
+
+    /**
+     * Asynchronous version of {@link #getVotersData(String)}
+     *
+     * @param inflationDestination The public key of the account receiving the inflation votes
+     * @param timeout              Request timeout (milliseconds, 0 for no timeout)
+     * @return
+     */
+    @Override
+    public CompletableFuture<VotersData> getVotersDataAsync(final String inflationDestination, final long timeout) {
+        return supplyAsync(() -> getVotersData(inflationDestination), timeout);
+    }
+
+    /**
+     * This is a rough attempt to detect if the horizon node we're connected is on a test network.
+     *
+     * @return
+     * @throws SQLException
+     */
+    @Override
+    public boolean isTestNetwork() throws SQLException {
+        final PooledConnection connection = borrowConnection();
+        final Sample sample = QueryMetrics.start("isTestNetwork", null);
+        try {
+            // Prepared statement
+            final PreparedStatement stm = connection.prepare(CHECK_NETWORK_SQL);
+
+            // Extract results
+            final ResultSet checkNetworkRS = stm.executeQuery();
+            sample.executed();
+
+            // Assume live network unless the network passphrase contains the "test" keyword.
+            boolean isTestNework = false;
+            if (checkNetworkRS.isBeforeFirst()) {
+                checkNetworkRS.next();
+                final String state = checkNetworkRS.getString("state");
+                sample.row(state.length());
+                isTestNework = state.toLowerCase().contains("test");
+            }
 
-        // Respond
-        return isTestNework;
+            // Release resources
+            checkNetworkRS.close();
+
+            // Respond
+            return isTestNework;
+        } catch (SQLException e) {
+            sample.failed();
+            connection.invalidateIfBroken(e);
+
+            throw e;
+        } finally {
+            sample.finish();
+            releaseConnection(connection);
+        }
     }
 
     /**
-     * Get the inflation votes currently cast to the specified accountId
+     * Get the inflation votes currently cast to the specified accountId.
+     * <p>
+     * Voters and their donation data entries are extracted in a single pass over the accounts table, each voter's
+     * matching data entries are aggregated by a lateral sub-select which is resolved through the accountdata primary
+     * key index.
+     * <p>
+     * The fetched voters are kept as a snapshot tagged with the last closed ledger, subsequent requests for the same
+     * inflation destination only pull the accounts modified since then and apply them to the snapshot. A full fetch
+     * is performed whenever the updated snapshot doesn't match the voters count found in the database.
      *
      * @param inflationDestination The public key of the account receiving the inflation votes
      * @return A JsonNode object containing the full structure of the extracted data
      * @throws SQLException
      */
-    public VotersData getVotersData(final String inflationDestination) throws SQLException {
+    @Override
+    public synchronized VotersData getVotersData(final String inflationDestination) throws SQLException {
         // Reset voters data
         votersData.reset();
 
-        // Get donations data
-        final HashMap<String, HashMap<String, String>> donationsData = getVotersCustomData(inflationDestination, "lumenaut.net donation%");
+        // Get the pool balance
         final long poolBalance = getBalance(inflationDestination);
 
-        // Stellar core's inflation implementation does not include accounts holding less than 100XLM in their balance, neither should we
-        final PreparedStatement inflationStm = conn.prepareStatement("SELECT * FROM core.public.accounts WHERE inflationdest = ? AND balance >= 1000000000 ORDER BY balance DESC;");
+        // Anything modified after this ledger will be picked up by the next incremental fetch
+        final long lastLedger = getLastLedger();
 
-        // Fetch in batches of 100 records
-        inflationStm.setFetchSize(100);
-        inflationStm.setString(1, inflationDestination);
+        // Try to bring the existing snapshot up to date first
+        VotersStore snapshot = null;
+        if (votersSnapshot != null && inflationDestination.equals(votersSnapshotDestination)) {
+            snapshot = fetchVotersDelta(inflationDestination, votersSnapshot, votersSnapshotLedger);
+        }
+
+        if (snapshot == null) {
+            // Extract votes, splitting the scan over multiple connections if requested
+            snapshot = new VotersStore();
+            final int partitions = Math.max(1, Math.min(SETTING_HORIZON_DB_FETCH_PARTITIONS, HorizonConnectionPool.MAX_POOL_SIZE));
+            if (partitions == 1) {
+                fetchVoters(VOTERS_DATA_SQL, inflationDestination, null, null, snapshot);
+            } else {
+                fetchVotersPartitioned(inflationDestination, partitions, snapshot);
+            }
+        }
 
-        // Extract results
-        final ResultSet inflationRs = inflationStm.executeQuery();
-        if (!inflationRs.isBeforeFirst()) {
+        // Store the snapshot
+        votersSnapshot = snapshot;
+        votersSnapshotDestination = inflationDestination;
+        votersSnapshotLedger = lastLedger;
+
+        if (snapshot.size() == 0) {
             // No records found
             return null;
-        } else {
-            // Extract votes
-            while (inflationRs.next()) {
-                final String publicKey = inflationRs.getString("accountid");
-                final long balance = inflationRs.getLong("balance");
-                final VoterDataEntry entry = new VoterDataEntry();
-                entry.setAccount(publicKey);
-                entry.setBalance(balance);
-
-                // Append
-                votersData.getEntries().add(entry);
-            }
+        }
 
-            // Append entries
-            votersData.getEntries().forEach((voterDataEntry) -> {
-                if (donationsData != null && donationsData.containsKey(voterDataEntry.getAccount())) {
-                    final HashMap<String, String> voterAdditionalData = donationsData.get(voterDataEntry.getAccount());
-
-                    // Add all custom data to the entry data node array
-                    final List<VoterCustomDataEntry> voterCustomData = new ArrayList<>();
-                    for (HashMap.Entry<String, String> entry : voterAdditionalData.entrySet()) {
-                        final VoterCustomDataEntry customData = new VoterCustomDataEntry();
-                        customData.setDataname(entry.getKey());
-                        customData.setDatavalue(entry.getValue());
-
-                        // Append to the voter's custom data
-                        voterCustomData.add(customData);
-
-                        // Integrate voter data with all the custom data found
-                        voterDataEntry.setData(voterCustomData);
-                    }
-                } else {
-                    // No data
-                    voterDataEntry.setData(null);
-                }
-            });
+        // Copy it, the voters data is handed over to the UI
+        votersData.getStore().addAll(snapshot, null);
+
+        // Add root nodes
+        votersData.setInflationdest(inflationDestination);
+        votersData.setBalance(poolBalance);
+
+        // Return generated structure
+        return votersData;
+    }
+
+    /**
+     * Get the ledger the voters snapshot is up to date with
+     *
+     * @return The ledger sequence, 0 if there is no snapshot
+     */
+    public synchronized long getVotersSnapshotLedger() {
+        return votersSnapshot != null ? votersSnapshotLedger : 0L;
+    }
+
+    /**
+     * Use a previously saved set of voters as the snapshot for the next incremental fetch, the store is copied
+     *
+     * @param inflationDestination The public key of the account receiving the inflation votes
+     * @param store                The voters
+     * @param ledger               The ledger the voters are up to date with
+     */
+    public synchronized void seedVotersSnapshot(final String inflationDestination, final VotersStore store, final long ledger) {
+        votersSnapshot = new VotersStore(store.size());
+        votersSnapshot.addAll(store, null);
+        votersSnapshotDestination = inflationDestination;
+        votersSnapshotLedger = ledger;
+    }
 
-            // Add root nodes
-            votersData.setInflationdest(inflationDestination);
-            votersData.setBalance(poolBalance);
+    /**
+     * Drop the voters snapshot, the next fetch will extract all voters from scratch
+     */
+    public synchronized void invalidateVotersSnapshot() {
+        votersSnapshot = null;
+        votersSnapshotDestination = null;
+        votersSnapshotLedger = 0L;
+    }
+
+    /**
+     * Apply the accounts modified after the given ledger to a copy of the voters snapshot
+     *
+     * @param inflationDestination The public key of the account receiving the inflation votes
+     * @param snapshot             The voters snapshot
+     * @param snapshotLedger       The ledger the snapshot is up to date with
+     * @return The updated snapshot, or null if it couldn't be reconciled with the database
+     * @throws SQLException
+     */
+    private VotersStore fetchVotersDelta(final String inflationDestination, final VotersStore snapshot, final long snapshotLedger) throws SQLException {
+        final HashSet<ByteBuffer> modifiedKeys = new HashSet<>();
+        final VotersStore upserts = new VotersStore(64);
+        final long expectedCount;
+
+        final PooledConnection connection = borrowConnection();
+        Sample sample = QueryMetrics.start("fetchVotersDelta", "since ledger " + snapshotLedger);
+        try {
+            // Every modified account is either inserted, updated or removed from the snapshot
+            final PreparedStatement deltaStm = connection.prepare(VOTERS_DELTA_SQL);
+            deltaStm.setString(1, "lumenaut.net donation%");
+            deltaStm.setLong(2, snapshotLedger);
+            deltaStm.setLong(3, snapshotLedger);
+
+            final ResultSet deltaRs = deltaStm.executeQuery();
+            sample.executed();
+            while (deltaRs.next()) {
+                final byte[] key = new byte[XLMUtils.ACCOUNT_ID_RAW_LENGTH];
+                XLMUtils.decodeAccountId(deltaRs.getString("accountid"), key, 0);
+                modifiedKeys.add(ByteBuffer.wrap(key));
+                sample.row(2 * ACCOUNT_ID_BYTES + LONG_BYTES);
+
+                // Rows come sorted, upserts stay sorted
+                final long balance = deltaRs.getLong("balance");
+                if (inflationDestination.equals(deltaRs.getString("inflationdest")) && balance >= VOTER_MINIMUM_BALANCE) {
+                    upserts.add(key, 0, balance, extractCustomData(deltaRs.getArray("datanames"), deltaRs.getArray("datavalues"), sample));
+                }
+            }
 
             // Release resources
-            inflationRs.close();
-            inflationStm.close();
+            deltaRs.close();
+            sample.finish();
 
-            // Return generated structure
-            return votersData;
+            // Merged accounts leave no trace, the count tells us if any voter went missing
+            sample = QueryMetrics.start("countVoters", null);
+            final PreparedStatement countStm = connection.prepare(VOTERS_COUNT_SQL);
+            countStm.setString(1, inflationDestination);
+
+            final ResultSet countRs = countStm.executeQuery();
+            sample.executed();
+            countRs.next();
+            expectedCount = countRs.getLong(1);
+            sample.row(LONG_BYTES);
+
+            // Release resources
+            countRs.close();
+        } catch (SQLException e) {
+            sample.failed();
+            connection.invalidateIfBroken(e);
+
+            throw e;
+        } finally {
+            sample.finish();
+            releaseConnection(connection);
         }
+
+        // Replace the modified voters
+        final VotersStore unmodified = new VotersStore(snapshot.size());
+        unmodified.addAll(snapshot, modifiedKeys);
+
+        final VotersStore updated = new VotersStore(unmodified.size() + upserts.size());
+        updated.addAllMerged(unmodified, upserts);
+
+        return updated.size() == expectedCount ? updated : null;
     }
 
     /**
-     * Retrieve the specified data entry (by name) for any account voting the given inflation destination address
+     * Get the sequence number of the last ledger closed by the node
      *
-     * @param inflationDestination
      * @return
      * @throws SQLException
      */
-    public HashMap<String, HashMap<String, String>> getVotersCustomData(final String inflationDestination, final String... dataNames) throws SQLException {
-        // Build the query
-        sb.setLength(0);
-        sb.append("SELECT * FROM core.public.accounts LEFT JOIN core.public.accountdata ON accountdata.accountid = accounts.accountid WHERE inflationdest = ? AND balance >= 1000000000");
-
-        if (dataNames.length > 1) {
-            sb.append(" AND (");
-            for (String dataname : dataNames) {
-                sb.append(" dataname ILIKE '").append(dataname).append("' OR");
-            }
+    private long getLastLedger() throws SQLException {
+        final PooledConnection connection = borrowConnection();
+        final Sample sample = QueryMetrics.start("getLastLedger", null);
+        try {
+            final PreparedStatement lastLedgerStm = connection.prepare(LAST_LEDGER_SQL);
+            final ResultSet lastLedgerRs = lastLedgerStm.executeQuery();
+            sample.executed();
+            final long lastLedger = lastLedgerRs.next() ? lastLedgerRs.getLong(1) : 0L;
+            sample.row(LONG_BYTES);
+
+            // Release resources
+            lastLedgerRs.close();
+
+            return lastLedger;
+        } catch (SQLException e) {
+            sample.failed();
+            connection.invalidateIfBroken(e);
+
+            throw e;
+        } finally {
+            sample.finish();
+            releaseConnection(connection);
+        }
+    }
 
-            // Cut trailing " OR" and close the AND clause
-            sb.delete(sb.length() - 3, sb.length());
-            sb.append(")");
-        } else {
-            if (!dataNames[0].equals("*")) {
-                sb.append(" AND dataname ILIKE '").append(dataNames[0]).append("'");
+    /**
+     * Fetch the voters in concurrent partitions, each over its own pooled connection, and merge them in balance order
+     *
+     * @param inflationDestination The public key of the account receiving the inflation votes
+     * @param partitions           Number of partitions to split the accounts scan into
+     * @param store                The store receiving the voters
+     * @throws SQLException
+     */
+    private void fetchVotersPartitioned(final String inflationDestination, final int partitions, final VotersStore store) throws SQLException {
+        // Submit one fetch per account ID range, partitions are part of the caller's request
+        final QueryScope scope = QUERY_SCOPE.get();
+        final List<Future<VotersStore>> fetches = new ArrayList<>(partitions);
+        for (int i = 0; i < partitions; i++) {
+            // The first and last partitions are open ended, every account ID starts with "G"
+            final String lowerBound = i == 0 ? "G" : ACCOUNT_ID_PREFIXES[i * ACCOUNT_ID_PREFIXES.length / partitions];
+            final String upperBound = i == partitions - 1 ? "H" : ACCOUNT_ID_PREFIXES[(i + 1) * ACCOUNT_ID_PREFIXES.length / partitions];
+
+            fetches.add(DATABASE_EXECUTOR.submit(() -> {
+                QUERY_SCOPE.set(scope);
+                try {
+                    final VotersStore partitionStore = new VotersStore();
+                    fetchVoters(VOTERS_DATA_RANGE_SQL, inflationDestination, lowerBound, upperBound, partitionStore);
+
+                    return partitionStore;
+                } finally {
+                    QUERY_SCOPE.remove();
+                }
+            }));
+        }
+
+        // Wait for all of them
+        final VotersStore[] partitionStores = new VotersStore[partitions];
+        try {
+            for (int i = 0; i < partitions; i++) {
+                partitionStores[i] = fetches.get(i).get();
+            }
+        } catch (InterruptedException e) {
+            fetches.forEach(fetch -> fetch.cancel(true));
+            Thread.currentThread().interrupt();
+
+            throw new SQLException("Interrupted while fetching the voters partitions");
+        } catch (ExecutionException e) {
+            fetches.forEach(fetch -> fetch.cancel(true));
+            if (e.getCause() instanceof SQLException) {
+                throw (SQLException) e.getCause();
             }
+
+            throw new SQLException("Unable to fetch the voters partitions", e.getCause());
         }
 
-        final PreparedStatement accountDataStm = conn.prepareStatement(sb.toString());
-        accountDataStm.setString(1, inflationDestination);
-        accountDataStm.setFetchSize(50);  // Fetch in batches of 50 records
+        // Merge
+        store.addAllMerged(partitionStores);
+    }
 
-        // Data results
-        final HashMap<String, HashMap<String, String>> accountsData = new HashMap<>();
+    /**
+     * Stream the voters returned by the given query into the specified store
+     *
+     * @param sql                  The voters query
+     * @param inflationDestination The public key of the account receiving the inflation votes
+     * @param lowerBound           The lowest account ID (inclusive) of the partition, null for range-less queries
+     * @param upperBound           The highest account ID (exclusive) of the partition, null for range-less queries
+     * @param store                The store receiving the voters
+     * @throws SQLException
+     */
+    private void fetchVoters(final String sql, final String inflationDestination, final String lowerBound, final String upperBound, final VotersStore store) throws SQLException {
+        final PooledConnection connection = borrowConnection();
+        final Sample sample = lowerBound != null ? QueryMetrics.start("fetchVotersPartition", lowerBound + " - " + upperBound) : QueryMetrics.start("fetchVoters", null);
+        try {
+            // The driver only streams results through a server side cursor when outside of autocommit mode, otherwise
+            // the whole result set is buffered in memory regardless of the fetch size
+            connection.getConnection().setAutoCommit(false);
+
+            // Stellar core's inflation implementation does not include accounts holding less than 100XLM in their balance, neither should we
+            final PreparedStatement inflationStm = connection.prepare(sql);
+            inflationStm.setFetchSize(VOTERS_FETCH_SIZE);
+            inflationStm.setString(1, "lumenaut.net donation%");
+            inflationStm.setString(2, inflationDestination);
+            if (lowerBound != null) {
+                inflationStm.setString(3, lowerBound);
+                inflationStm.setString(4, upperBound);
+            }
+
+            // Stream votes straight into the columnar store
+            final ResultSet inflationRs = inflationStm.executeQuery();
+            sample.executed();
+            while (inflationRs.next()) {
+                store.add(inflationRs.getString("accountid"), inflationRs.getLong("balance"), extractCustomData(inflationRs.getArray("datanames"), inflationRs.getArray("datavalues"), sample));
+                sample.row(ACCOUNT_ID_BYTES + LONG_BYTES);
+            }
 
-        // Create result entries
-        final ResultSet accountDataRs = accountDataStm.executeQuery();
-        if (!accountDataRs.isBeforeFirst()) {
             // Release resources
-            accountDataRs.close();
-            accountDataStm.close();
+            inflationRs.close();
+            connection.getConnection().commit();
+        } catch (SQLException e) {
+            sample.failed();
+            connection.invalidateIfBroken(e);
+
+            throw e;
+        } finally {
+            sample.finish();
+            releaseConnection(connection);
+        }
+    }
 
-            // No records found
+    /**
+     * Build the sorted list of the three characters account ID prefixes
+     *
+     * @return
+     */
+    private static String[] buildAccountIdPrefixes() {
+        final String base32Alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZ234567";
+        final String[] prefixes = new String[4 * base32Alphabet.length()];
+        int position = 0;
+        for (char second = 'A'; second <= 'D'; second++) {
+            for (int i = 0; i < base32Alphabet.length(); i++) {
+                prefixes[position++] = "G" + second + base32Alphabet.charAt(i);
+            }
+        }
+
+        // Same order as the "C" collation used by the range query
+        Arrays.sort(prefixes);
+
+        return prefixes;
+    }
+
+    /**
+     * Build the custom data entries of a voter from the aggregated data names and values columns
+     *
+     * @param dataNamesArray  The aggregated data names, null if the voter has no matching data entries
+     * @param dataValuesArray The aggregated data values (decoded to text by the database), in the same order as the names
+     * @param sample          The metrics of the running query, the time spent here is accounted as decode time
+     * @return The list of custom data entries, or null if the voter has none
+     * @throws SQLException
+     */
+    static List<VoterCustomDataEntry> extractCustomData(final Array dataNamesArray, final Array dataValuesArray, final Sample sample) throws SQLException {
+        if (dataNamesArray == null || dataValuesArray == null) {
+            // No data
             return null;
-        } else {
+        }
+
+        final long decodeStart = System.nanoTime();
+        final String[] dataNames = (String[]) dataNamesArray.getArray();
+        final String[] dataValues = (String[]) dataValuesArray.getArray();
+
+        // Add all custom data to the entry data node array
+        final List<VoterCustomDataEntry> voterCustomData = new ArrayList<>(dataNames.length);
+        for (int i = 0; i < dataNames.length; i++) {
+            // Skip incomplete data entries
+            if (dataNames[i] == null || dataValues[i] == null) {
+                continue;
+            }
+
+            final VoterCustomDataEntry customData = new VoterCustomDataEntry();
+            customData.setDataname(dataNames[i]);
+            customData.setDatavalue(dataValues[i]);
+            sample.received(dataNames[i].length() + dataValues[i].length());
+
+            // Append to the voter's custom data
+            voterCustomData.add(customData);
+        }
+
+        // Release resources
+        dataNamesArray.free();
+        dataValuesArray.free();
+        sample.decoded(System.nanoTime() - decodeStart);
+
+        return voterCustomData.isEmpty() ? null : voterCustomData;
+    }
+
+    /**
+     * Retrieve the specified data entries (by name pattern) for any account voting the given inflation destination
+     * address, only accounts having at least one matching data entry are returned
+     *
+     * @param inflationDestination
+     * @param dataNames            The data names to match (ILIKE patterns), "*" matches any name
+     * @return
+     * @throws SQLException
+     */
+    public HashMap<String, HashMap<String, String>> getVotersCustomData(final String inflationDestination, final String... dataNames) throws SQLException {
+        // Name patterns
+        final String[] dataNamePatterns = new String[dataNames.length];
+        for (int i = 0; i < dataNames.length; i++) {
+            dataNamePatterns[i] = dataNames[i].equals("*") ? "%" : dataNames[i];
+        }
+
+        final PooledConnection connection = borrowConnection();
+        final Sample sample = QueryMetrics.start("getVotersCustomData", String.join(", ", dataNames));
+        try {
+            final Array dataNamePatternsArray = connection.getConnection().createArrayOf("text", dataNamePatterns);
+            final PreparedStatement accountDataStm = connection.prepare(VOTERS_CUSTOM_DATA_SQL);
+            accountDataStm.setString(1, inflationDestination);
+            accountDataStm.setArray(2, dataNamePatternsArray);
+            accountDataStm.setFetchSize(50);  // Fetch in batches of 50 records
+
+            // Data results
+            final HashMap<String, HashMap<String, String>> accountsData = new HashMap<>();
+
+            // Create result entries
+            final ResultSet accountDataRs = accountDataStm.executeQuery();
+            sample.executed();
             while (accountDataRs.next()) {
                 final String publicKey = accountDataRs.getString("accountid");
                 final String dataName = accountDataRs.getString("dataname");
                 final String dataValue = accountDataRs.getString("datavalue");
+                sample.row(ACCOUNT_ID_BYTES + (dataName != null ? dataName.length() : 0) + (dataValue != null ? dataValue.length() : 0));
 
-                // Skip rows without data entries
+                // Skip incomplete data entries
                 if (dataName == null || dataValue == null) {
                     continue;
                 }
 
-                // Decode the value
-                final String decodedDataValue = new String(Base64.decode(accountDataRs.getString("datavalue")), StandardCharsets.UTF_8);
-
-                // Create entry in the hashmap if needed
-                if (!accountsData.containsKey(publicKey)) {
-                    accountsData.put(publicKey, new HashMap<>());
-                }
-
                 // Put the data entry
-                final HashMap<String, String> accountData = accountsData.get(publicKey);
-                accountData.put(dataName, decodedDataValue);
+                accountsData.computeIfAbsent(publicKey, key -> new HashMap<>()).put(dataName, dataValue);
             }
 
             // Release resources
             accountDataRs.close();
-            accountDataStm.close();
+            dataNamePatternsArray.free();
+
+            // No records found
+            if (accountsData.isEmpty()) {
+                return null;
+            }
 
             // Return generated structure
             return accountsData;
+        } catch (SQLException e) {
+            sample.failed();
+            connection.invalidateIfBroken(e);
+
+            throw e;
+        } finally {
+            sample.finish();
+            releaseConnection(connection);
         }
     }
 
+    /**
+     * Check which of the given accounts exist
+     *
+     * @param accountIds The public keys of the accounts
+     * @return The public keys of the accounts found
+     * @throws SQLException
+     */
+    public HashSet<String> getExistingAccounts(final Collection<String> accountIds) throws SQLException {
+        final HashSet<String> existingAccounts = new HashSet<>(accountIds.size());
+        final String[] ids = accountIds.toArray(new String[0]);
+        for (int from = 0; from < ids.length; from += EXISTING_ACCOUNTS_CHUNK_SIZE) {
+            final String[] chunk = Arrays.copyOfRange(ids, from, Math.min(ids.length, from + EXISTING_ACCOUNTS_CHUNK_SIZE));
+
+            final PooledConnection connection = borrowConnection();
+            final Sample sample = QueryMetrics.start("getExistingAccounts", chunk.length + " accounts");
+            try {
+                final Array accountIdsArray = connection.getConnection().createArrayOf("varchar", chunk);
+                final PreparedStatement existingAccountsStm = connection.prepare(EXISTING_ACCOUNTS_SQL);
+                existingAccountsStm.setArray(1, accountIdsArray);
+                existingAccountsStm.setFetchSize(VOTERS_FETCH_SIZE);
+
+                final ResultSet existingAccountsRs = existingAccountsStm.executeQuery();
+                sample.executed();
+                while (existingAccountsRs.next()) {
+                    existingAccounts.add(existingAccountsRs.getString("accountid"));
+                    sample.row(ACCOUNT_ID_BYTES);
+                }
+
+                // Release resources
+                existingAccountsRs.close();
+                accountIdsArray.free();
+            } catch (SQLException e) {
+                sample.failed();
+                connection.invalidateIfBroken(e);
+
+                throw e;
+            } finally {
+                sample.finish();
+                releaseConnection(connection);
+            }
+        }
+
+        return existingAccounts;
+    }
+
     /**
      * Get the account balance of the specified accountId
      *
@@ -353,28 +949,45 @@ public class HorizonGateway {
      * @return
      * @throws SQLException
      */
+    @Override
     public Long getBalance(final String accountId) throws SQLException {
-        // Prepared statement
-        final PreparedStatement inflationStm = conn.prepareStatement("SELECT * FROM core.public.accounts WHERE accountid = ? LIMIT 1");
-        inflationStm.setString(1, accountId);
-
-        // Extract results
-        final ResultSet inflationRs = inflationStm.executeQuery();
-        if (!inflationRs.isBeforeFirst()) {
-            // No records found
-            return null;
-        } else {
-            // Move cursor to the first record
-            inflationRs.next();
-
-            final long result = inflationRs.getLong("balance");
-
-            // Release resources
-            inflationRs.close();
-            inflationStm.close();
-
-            // Return balance in XLM
-            return result;
+        final PooledConnection connection = borrowConnection();
+        final Sample sample = QueryMetrics.start("getBalance", accountId);
+        try {
+            // Prepared statement
+            final PreparedStatement inflationStm = connection.prepare(BALANCE_SQL);
+            inflationStm.setString(1, accountId);
+
+            // Extract results
+            final ResultSet inflationRs = inflationStm.executeQuery();
+            sample.executed();
+            if (!inflationRs.isBeforeFirst()) {
+                // Release resources
+                inflationRs.close();
+
+                // No records found
+                return null;
+            } else {
+                // Move cursor to the first record
+                inflationRs.next();
+
+                final long result = inflationRs.getLong("balance");
+                sample.row(LONG_BYTES);
+
+                // Release resources
+                inflationRs.close();
+
+                // Return balance in XLM
+                return result;
+            }
+        } catch (SQLException e) {
+            sample.failed();
+            connection.invalidateIfBroken(e);
+
+            throw e;
+        } finally {
+            sample.finish();
+            releaseConnection(connection);
         }
     }
 
@@ -0,0 +1,139 @@
+package com.lumenaut.poolmanager.gateways;
+
+import org.stellar.sdk.Server;
+import shadow.okhttp3.ConnectionPool;
+import shadow.okhttp3.OkHttpClient;
+import shadow.okhttp3.Protocol;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import static com.lumenaut.poolmanager.Settings.*;
+
+/**
+ * @Author Luca Vignaroli
+ * @Email luca@burning.it
+ * @Date 18/10/2026 - 3:45 PM
+ * <p>
+ * Shared HTTP transport of every horizon REST API request. A single client (one connection pool, HTTP/2 when the
+ * server negotiates it) backs one server instance per horizon url, so channels and requests reuse warm connections
+ * instead of opening and handshaking their own.
+ */
+public class HorizonServers {
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //region FIELDS
+
+    // Idle connections are closed after this long (minutes)
+    private static final long CONNECTION_KEEP_ALIVE = 5;
+
+    // Submissions block until the transaction makes it into a ledger or horizon gives up on it (after 60 seconds)
+    private static final long SUBMIT_READ_TIMEOUT = 65 * 1000L;
+
+    // Shared clients, built on first use
+    private static OkHttpClient httpClient;
+    private static OkHttpClient submitHttpClient;
+
+    // Server instances by url
+    private static final HashMap<String, Server> SERVERS = new HashMap<>();
+
+    // Transaction trackers by url
+    private static final HashMap<String, TransactionTracker> TRACKERS = new HashMap<>();
+
+    //endregion
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //region CONSTRUCTORS
+
+    /**
+     * Constructor
+     */
+    private HorizonServers() {
+
+    }
+
+    //endregion
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //region METHODS
+
+    /**
+     * Get the shared HTTP client
+     *
+     * @return
+     */
+    public static synchronized OkHttpClient getHttpClient() {
+        if (httpClient == null) {
+            httpClient = new OkHttpClient.Builder()
+                    .connectionPool(new ConnectionPool(SETTING_HORIZON_MAX_IDLE_CONNECTIONS, CONNECTION_KEEP_ALIVE, TimeUnit.MINUTES))
+                    .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                    .connectTimeout(SETTING_HORIZON_TIMEOUT, TimeUnit.MILLISECONDS)
+                    .readTimeout(SETTING_HORIZON_TIMEOUT, TimeUnit.MILLISECONDS)
+                    .writeTimeout(SETTING_HORIZON_TIMEOUT, TimeUnit.MILLISECONDS)
+                    .retryOnConnectionFailure(false)
+                    .build();
+
+            // Same connections, longer wait for the submission outcome
+            submitHttpClient = httpClient.newBuilder()
+                    .readTimeout(Math.max(SETTING_HORIZON_TIMEOUT, SUBMIT_READ_TIMEOUT), TimeUnit.MILLISECONDS)
+                    .build();
+        }
+
+        return httpClient;
+    }
+
+    /**
+     * Get the server instance of the given horizon url
+     *
+     * @param url
+     * @return
+     */
+    public static synchronized Server getServer(final String url) {
+        Server server = SERVERS.get(url);
+        if (server == null) {
+            server = new Server(url);
+            server.setHttpClient(getHttpClient());
+            server.setSubmitHttpClient(submitHttpClient);
+            SERVERS.put(url, server);
+        }
+
+        return server;
+    }
+
+    /**
+     * Get the server instance of the currently selected operations network
+     *
+     * @return
+     */
+    public static Server getOperationsServer() {
+        return getServer(SETTING_OPERATIONS_NETWORK.equals("LIVE") ? SETTING_HORIZON_LIVE_NETWORK : SETTING_HORIZON_TEST_NETWORK);
+    }
+
+    /**
+     * Get the transaction tracker of the currently selected operations network
+     *
+     * @return
+     */
+    public static synchronized TransactionTracker getOperationsTracker() {
+        final String url = SETTING_OPERATIONS_NETWORK.equals("LIVE") ? SETTING_HORIZON_LIVE_NETWORK : SETTING_HORIZON_TEST_NETWORK;
+
+        return TRACKERS.computeIfAbsent(url, TransactionTracker::new);
+    }
+
+    /**
+     * Close the pooled connections and stop the client's threads
+     */
+    public static synchronized void shutdown() {
+        TRACKERS.values().forEach(TransactionTracker::shutdown);
+
+        if (httpClient != null) {
+            httpClient.dispatcher().executorService().shutdown();
+            httpClient.connectionPool().evictAll();
+        }
+    }
+
+    //endregion
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+}
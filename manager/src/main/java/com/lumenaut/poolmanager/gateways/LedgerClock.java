@@ -0,0 +1,80 @@
+package com.lumenaut.poolmanager.gateways;
+
+/**
+ * @Author Luca Vignaroli
+ * @Email luca@burning.it
+ * @Date 18/10/2026 - 3:39 PM
+ * <p>
+ * Rough estimate of the network's ledger close schedule, based on the ledgers reported by the submitted transactions.
+ * The time a new ledger is first seen is taken as its close time, the following ones are expected at regular
+ * intervals from it.
+ */
+public class LedgerClock {
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //region FIELDS
+
+    // Target close time of the stellar network (milliseconds)
+    public static final long EXPECTED_LEDGER_CLOSE_TIME = 5000;
+
+    // Last ledger seen
+    private static long lastLedger;
+    private static long lastLedgerSeenAt;
+
+    //endregion
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //region CONSTRUCTORS
+
+    /**
+     * Constructor
+     */
+    private LedgerClock() {
+
+    }
+
+    //endregion
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //region METHODS
+
+    /**
+     * Record a ledger reported by horizon
+     *
+     * @param ledger The ledger sequence number, null values are ignored
+     */
+    public static synchronized void observe(final Long ledger) {
+        if (ledger != null && ledger > lastLedger) {
+            lastLedger = ledger;
+            lastLedgerSeenAt = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Get the last ledger seen
+     *
+     * @return The ledger sequence number, 0 if none has been seen yet
+     */
+    public static synchronized long getLastLedger() {
+        return lastLedger;
+    }
+
+    /**
+     * Estimate the time left before the next ledger closes
+     *
+     * @return The estimated time in milliseconds, a full close time if no ledger has been seen yet
+     */
+    public static synchronized long millisToNextClose() {
+        if (lastLedger == 0) {
+            return EXPECTED_LEDGER_CLOSE_TIME;
+        }
+
+        final long elapsed = (System.currentTimeMillis() - lastLedgerSeenAt) % EXPECTED_LEDGER_CLOSE_TIME;
+
+        return EXPECTED_LEDGER_CLOSE_TIME - elapsed;
+    }
+
+    //endregion
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+}
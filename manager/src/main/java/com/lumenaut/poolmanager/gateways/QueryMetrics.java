@@ -0,0 +1,331 @@
+package com.lumenaut.poolmanager.gateways;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.lumenaut.poolmanager.Settings.SETTING_SLOW_QUERY_THRESHOLD;
+
+/**
+ * @Author Luca Vignaroli
+ * @Email luca@burning.it
+ * @Date 18/10/2026 - 3:34 PM
+ * <p>
+ * Per query timers and counters of the horizon database requests. Each execution is split in execute time (until the
+ * first rows are available), fetch time (reading the remaining rows) and decode time (client side conversion of the
+ * rows), executions slower than the configured threshold are appended to a rolling slow query log.
+ */
+public class QueryMetrics {
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //region FIELDS
+
+    // Slow query log
+    public static final String SLOW_QUERY_LOG_PATH = "data/logs/slow-queries.log";
+    private static final long SLOW_QUERY_LOG_MAX_SIZE = 5 * 1024 * 1024;
+    private static final int SLOW_QUERY_LOG_FILES = 3;
+
+    // Not thread safe, used within logSlowQuery only
+    private static final SimpleDateFormat LOG_DATE_FORMATTER = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+
+    // Registry of all the queries executed so far
+    private static final ConcurrentHashMap<String, QueryStats> REGISTRY = new ConcurrentHashMap<>();
+
+    //endregion
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //region SUBCLASSES
+
+    /**
+     * Cumulative statistics of a query
+     */
+    public static class QueryStats {
+        private final LongAdder executions = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder rows = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+        private final LongAdder executeNanos = new LongAdder();
+        private final LongAdder fetchNanos = new LongAdder();
+        private final LongAdder decodeNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Long::max, 0L);
+
+        public long getExecutions() {
+            return executions.sum();
+        }
+
+        public long getErrors() {
+            return errors.sum();
+        }
+
+        public long getRows() {
+            return rows.sum();
+        }
+
+        public long getBytes() {
+            return bytes.sum();
+        }
+
+        public long getExecuteNanos() {
+            return executeNanos.sum();
+        }
+
+        public long getFetchNanos() {
+            return fetchNanos.sum();
+        }
+
+        public long getDecodeNanos() {
+            return decodeNanos.sum();
+        }
+
+        public long getMaxNanos() {
+            return maxNanos.get();
+        }
+
+        private long[] toArray() {
+            return new long[]{getExecutions(), getErrors(), getRows(), getBytes(), getExecuteNanos(), getFetchNanos(), getDecodeNanos()};
+        }
+    }
+
+    /**
+     * Measurements of a single query execution, not thread safe
+     */
+    public static class Sample {
+        private final String name;
+        private final String details;
+        private final long startedAt = System.nanoTime();
+        private long executedAt;
+        private long rows;
+        private long bytes;
+        private long decodeNanos;
+        private boolean failed;
+        private boolean finished;
+
+        private Sample(final String name, final String details) {
+            this.name = name;
+            this.details = details;
+        }
+
+        /**
+         * The query has been executed and the first rows are available
+         */
+        public void executed() {
+            executedAt = System.nanoTime();
+        }
+
+        /**
+         * A row has been read
+         *
+         * @param rowBytes Approximate size of the row's payload
+         */
+        public void row(final long rowBytes) {
+            rows++;
+            bytes += rowBytes;
+        }
+
+        /**
+         * Account for payload read outside of the row's fixed columns (arrays, blobs)
+         *
+         * @param payloadBytes
+         */
+        public void received(final long payloadBytes) {
+            bytes += payloadBytes;
+        }
+
+        /**
+         * Account for time spent converting the rows on the client
+         *
+         * @param nanos
+         */
+        public void decoded(final long nanos) {
+            decodeNanos += nanos;
+        }
+
+        /**
+         * The query has failed
+         */
+        public void failed() {
+            failed = true;
+        }
+
+        /**
+         * Record this execution, further calls are ignored
+         */
+        public void finish() {
+            if (finished) {
+                return;
+            }
+            finished = true;
+
+            // Split timings, decoding happens while fetching
+            final long finishedAt = System.nanoTime();
+            final long executeNanos = (executedAt > 0 ? executedAt : finishedAt) - startedAt;
+            final long fetchNanos = Math.max(0L, (executedAt > 0 ? finishedAt - executedAt : 0L) - decodeNanos);
+            final long totalNanos = finishedAt - startedAt;
+
+            // Update the query stats
+            final QueryStats stats = REGISTRY.computeIfAbsent(name, key -> new QueryStats());
+            stats.executions.increment();
+            if (failed) {
+                stats.errors.increment();
+            }
+            stats.rows.add(rows);
+            stats.bytes.add(bytes);
+            stats.executeNanos.add(executeNanos);
+            stats.fetchNanos.add(fetchNanos);
+            stats.decodeNanos.add(decodeNanos);
+            stats.maxNanos.accumulate(totalNanos);
+
+            // Log it if it was slow
+            if (SETTING_SLOW_QUERY_THRESHOLD > 0 && TimeUnit.NANOSECONDS.toMillis(totalNanos) >= SETTING_SLOW_QUERY_THRESHOLD) {
+                logSlowQuery(new Date(), name + (failed ? " FAILED" : "") +
+                             " total=" + toMillis(totalNanos) + "ms" +
+                             " execute=" + toMillis(executeNanos) + "ms" +
+                             " fetch=" + toMillis(fetchNanos) + "ms" +
+                             " decode=" + toMillis(decodeNanos) + "ms" +
+                             " rows=" + rows +
+                             " bytes=" + bytes +
+                             (details != null ? " [" + details + "]" : ""));
+            }
+        }
+    }
+
+    //endregion
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //region CONSTRUCTORS
+
+    /**
+     * Constructor
+     */
+    private QueryMetrics() {
+
+    }
+
+    //endregion
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //region METHODS
+
+    /**
+     * Start measuring an execution of the given query
+     *
+     * @param name    The query name
+     * @param details Parameters worth logging if the query turns out to be slow, can be null
+     * @return
+     */
+    public static Sample start(final String name, final String details) {
+        return new Sample(name, details);
+    }
+
+    /**
+     * Get the statistics of all queries executed so far
+     *
+     * @return
+     */
+    public static Map<String, QueryStats> getRegistry() {
+        return Collections.unmodifiableMap(REGISTRY);
+    }
+
+    /**
+     * Take a snapshot of the current statistics, to be used with {@link #describeSince(Map)}
+     *
+     * @return
+     */
+    public static Map<String, long[]> snapshot() {
+        final HashMap<String, long[]> snapshot = new HashMap<>();
+        REGISTRY.forEach((name, stats) -> snapshot.put(name, stats.toArray()));
+
+        return snapshot;
+    }
+
+    /**
+     * Describe the queries executed since the given snapshot was taken, one line per query
+     *
+     * @param before
+     * @return
+     */
+    public static String describeSince(final Map<String, long[]> before) {
+        final StringBuilder sb = new StringBuilder();
+        for (String name : new TreeSet<>(REGISTRY.keySet())) {
+            final long[] current = REGISTRY.get(name).toArray();
+            final long[] previous = before.getOrDefault(name, new long[current.length]);
+            final long executions = current[0] - previous[0];
+            if (executions == 0) {
+                continue;
+            }
+
+            sb.append(name).append(": ").append(executions).append(executions == 1 ? " execution" : " executions");
+            if (current[1] - previous[1] > 0) {
+                sb.append(" (").append(current[1] - previous[1]).append(" failed)");
+            }
+            sb.append(", ").append(current[2] - previous[2]).append(" rows, ");
+            sb.append(String.format("%.1f", (current[3] - previous[3]) / (1024.0 * 1024.0))).append(" MB, ");
+            sb.append("execute ").append(toMillis(current[4] - previous[4])).append("ms, ");
+            sb.append("fetch ").append(toMillis(current[5] - previous[5])).append("ms, ");
+            sb.append("decode ").append(toMillis(current[6] - previous[6])).append("ms\n");
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * Append a line to the slow query log, rolling it over when it grows too large
+     *
+     * @param date When the query completed
+     * @param line
+     */
+    private static synchronized void logSlowQuery(final Date date, final String line) {
+        try {
+            final File log = new File(SLOW_QUERY_LOG_PATH);
+            final File parent = log.getAbsoluteFile().getParentFile();
+            if (!parent.exists() && !parent.mkdirs()) {
+                return;
+            }
+
+            // Roll over: slow-queries.log -> slow-queries.log.1 -> ... -> slow-queries.log.N (dropped)
+            if (log.length() > SLOW_QUERY_LOG_MAX_SIZE) {
+                final File oldest = new File(SLOW_QUERY_LOG_PATH + "." + SLOW_QUERY_LOG_FILES);
+                if (oldest.exists() && !oldest.delete()) {
+                    return;
+                }
+
+                for (int i = SLOW_QUERY_LOG_FILES - 1; i >= 1; i--) {
+                    final File file = new File(SLOW_QUERY_LOG_PATH + "." + i);
+                    if (file.exists() && !file.renameTo(new File(SLOW_QUERY_LOG_PATH + "." + (i + 1)))) {
+                        return;
+                    }
+                }
+
+                if (!log.renameTo(new File(SLOW_QUERY_LOG_PATH + ".1"))) {
+                    return;
+                }
+            }
+
+            try (final Writer writer = new FileWriter(log, true)) {
+                writer.write(LOG_DATE_FORMATTER.format(date));
+                writer.write(' ');
+                writer.write(line);
+                writer.write(System.lineSeparator());
+            }
+        } catch (IOException e) {
+            // Logging must never break a query
+            System.err.println("Unable to write to the slow query log: " + e.getMessage());
+        }
+    }
+
+    private static long toMillis(final long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    //endregion
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+}
@@ -0,0 +1,257 @@
+package com.lumenaut.poolmanager.gateways;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.lumenaut.poolmanager.DataFormats.VoterDataEntry;
+import com.lumenaut.poolmanager.DataFormats.VotersData;
+import com.lumenaut.poolmanager.Services;
+import com.lumenaut.poolmanager.VotersStore;
+import com.lumenaut.poolmanager.XLMUtils;
+import shadow.okhttp3.OkHttpClient;
+import shadow.okhttp3.Request;
+import shadow.okhttp3.Response;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.math.BigDecimal;
+import java.net.HttpURLConnection;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static com.lumenaut.poolmanager.DataFormats.OBJECT_MAPPER;
+
+/**
+ * @Author Luca Vignaroli
+ * @Email luca@burning.it
+ * @Date 18/10/2026 - 3:31 PM
+ * <p>
+ * Voters source for installations without access to a horizon node database. Voters are pulled from a federation
+ * inflation endpoint (same JSON structure as https://fed.network/inflation/POOL_ADDRESS), the pool balance and the
+ * network check are served by the Horizon REST API.
+ * <p>
+ * The voters endpoint is queried in pages (offset/limit) with a bounded number of concurrent requests, endpoints that
+ * ignore the paging parameters are detected on the first page and served in a single request.
+ */
+public class RestVoterSource implements VoterSource {
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //region FIELDS
+
+    // Paging
+    public static final int PAGE_SIZE = 10000;
+    public static final int MAX_CONCURRENT_PAGES = 4;
+    private static final String OFFSET_PARAMETER = "offset";
+    private static final String LIMIT_PARAMETER = "limit";
+
+    // Voters pages can take a while to be generated (milliseconds)
+    private static final int READ_TIMEOUT = 60 * 1000;
+
+    // Endpoints
+    private final String votersUrl;
+    private final String horizonUrl;
+
+    // Shared horizon client (same connections), with the voters pages read timeout
+    private final OkHttpClient httpClient;
+
+    //endregion
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //region CONSTRUCTORS
+
+    /**
+     * Constructor
+     *
+     * @param votersUrl  Base url of the voters endpoint, the pool address is appended to it
+     * @param horizonUrl Base url of the horizon server
+     */
+    public RestVoterSource(final String votersUrl, final String horizonUrl) {
+        this.votersUrl = votersUrl;
+        this.horizonUrl = horizonUrl.endsWith("/") ? horizonUrl.substring(0, horizonUrl.length() - 1) : horizonUrl;
+        this.httpClient = HorizonServers.getHttpClient().newBuilder().readTimeout(READ_TIMEOUT, TimeUnit.MILLISECONDS).build();
+    }
+
+    //endregion
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //region INTERFACES IMPLEMENTATIONS
+
+    @Override
+    public boolean isTestNetwork() throws IOException {
+        final JsonNode root = getJson(horizonUrl + "/");
+        if (root == null || !root.hasNonNull("network_passphrase")) {
+            throw new IOException("The horizon server did not report its network passphrase");
+        }
+
+        // Same rule as the database check, the test network passphrase contains the "test" keyword
+        return root.get("network_passphrase").asText().toLowerCase().contains("test");
+    }
+
+    @Override
+    public Long getBalance(final String accountId) throws IOException {
+        final JsonNode account = getJson(horizonUrl + "/accounts/" + accountId);
+        if (account == null) {
+            // No such account
+            return null;
+        }
+
+        // Native balance
+        for (JsonNode balance : account.path("balances")) {
+            if ("native".equals(balance.path("asset_type").asText())) {
+                return XLMUtils.XLMToStroop(new BigDecimal(balance.path("balance").asText()));
+            }
+        }
+
+        return 0L;
+    }
+
+    @Override
+    public VotersData getVotersData(final String inflationDestination) throws IOException {
+        // Get the pool balance
+        final Long poolBalance = getBalance(inflationDestination);
+
+        // The first page tells us whether the endpoint supports paging at all
+        final VotersData firstPage = getVotersPage(inflationDestination, 0);
+        if (firstPage == null || firstPage.getEntries() == null || firstPage.getEntries().isEmpty()) {
+            // No records found
+            return null;
+        }
+
+        final List<VoterDataEntry> entries = new ArrayList<>(firstPage.getEntries());
+        final HashSet<String> accounts = new HashSet<>();
+        for (VoterDataEntry entry : entries) {
+            accounts.add(entry.getAccount());
+        }
+
+        // A full page means there might be more, fetch the next ones concurrently until a partial page shows up
+        if (firstPage.getEntries().size() == PAGE_SIZE) {
+            final ArrayDeque<Future<VotersData>> window = new ArrayDeque<>();
+            int nextPage = 1;
+            boolean lastPageReached = false;
+            try {
+                while (!lastPageReached) {
+                    // Keep the window full
+                    while (window.size() < MAX_CONCURRENT_PAGES) {
+                        final int page = nextPage++;
+                        window.add(Services.PAGES_EXECUTOR.submit(() -> getVotersPage(inflationDestination, page)));
+                    }
+
+                    // Pages are consumed in order
+                    final VotersData pageData = window.poll().get();
+                    final List<VoterDataEntry> pageEntries = pageData != null ? pageData.getEntries() : null;
+                    if (pageEntries == null || pageEntries.isEmpty()) {
+                        break;
+                    }
+
+                    // Voters moving across pages while we fetch might show up twice
+                    int newEntries = 0;
+                    for (VoterDataEntry entry : pageEntries) {
+                        if (accounts.add(entry.getAccount())) {
+                            entries.add(entry);
+                            newEntries++;
+                        }
+                    }
+
+                    // A partial page is the last one, a page with nothing new means the endpoint ignores the offset
+                    lastPageReached = pageEntries.size() < PAGE_SIZE || newEntries == 0;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+
+                throw new InterruptedIOException("Interrupted while fetching the voters pages");
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+
+                throw new IOException("Unable to fetch the voters pages", e.getCause());
+            } finally {
+                // Pages past the last one are of no use
+                window.forEach(page -> page.cancel(true));
+            }
+        }
+
+        // Same ordering as the database sources
+        entries.sort((a, b) -> a.getBalance() != b.getBalance() ? Long.compare(b.getBalance(), a.getBalance()) : a.getAccount().compareTo(b.getAccount()));
+
+        // Build voters data
+        final VotersData votersData = new VotersData();
+        votersData.setStore(new VotersStore(entries.size()));
+        for (VoterDataEntry entry : entries) {
+            votersData.getStore().add(entry.getAccount(), entry.getBalance(), entry.getData());
+        }
+
+        // Add root nodes
+        votersData.setInflationdest(inflationDestination);
+        votersData.setBalance(poolBalance != null ? poolBalance : firstPage.getBalance());
+
+        return votersData;
+    }
+
+    //endregion
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //region METHODS
+
+    /**
+     * Fetch a page of voters
+     *
+     * @param inflationDestination The public key of the account receiving the inflation votes
+     * @param page                 The page number, starting from 0
+     * @return
+     * @throws IOException
+     */
+    private VotersData getVotersPage(final String inflationDestination, final int page) throws IOException {
+        final String url = votersUrl + inflationDestination + (votersUrl.contains("?") ? "&" : "?") +
+                           OFFSET_PARAMETER + "=" + (page * PAGE_SIZE) + "&" + LIMIT_PARAMETER + "=" + PAGE_SIZE;
+
+        try (final InputStream response = openStream(url)) {
+            return response != null ? OBJECT_MAPPER.readValue(response, VotersData.class) : null;
+        }
+    }
+
+    /**
+     * Fetch the given url and parse its JSON response
+     *
+     * @param url
+     * @return The parsed response, null if the resource doesn't exist
+     * @throws IOException
+     */
+    private JsonNode getJson(final String url) throws IOException {
+        try (final InputStream response = openStream(url)) {
+            return response != null ? OBJECT_MAPPER.readTree(response) : null;
+        }
+    }
+
+    /**
+     * Open a GET request to the given url on the shared horizon client. Responses are transparently gzip compressed
+     * and connections are reused as long as each response is fully read and closed.
+     *
+     * @param url
+     * @return The response body, null if the resource doesn't exist
+     * @throws IOException
+     */
+    private InputStream openStream(final String url) throws IOException {
+        final Request request = new Request.Builder().url(url).header("Accept", "application/json").get().build();
+        final Response response = httpClient.newCall(request).execute();
+        if (!response.isSuccessful()) {
+            // Release the error body so that the connection can be reused
+            final int status = response.code();
+            response.close();
+
+            if (status == HttpURLConnection.HTTP_NOT_FOUND) {
+                return null;
+            }
+
+            throw new IOException("Request to " + url + " failed with HTTP status " + status);
+        }
+
+        return response.body().byteStream();
+    }
+
+    //endregion
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+}
@@ -0,0 +1,84 @@
+package com.lumenaut.poolmanager.gateways;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @Author Luca Vignaroli
+ * @Email luca@burning.it
+ * @Date 18/10/2026 - 3:39 PM
+ * <p>
+ * Retry budget shared by all the submitting threads. Every resubmission spends a token and every successful
+ * submission earns back a fraction of one. When horizon is struggling the budget runs dry quickly and callers are
+ * expected to slow down, instead of piling up resubmissions on an overloaded server.
+ */
+public class RetryBudget {
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //region FIELDS
+
+    // Tokens are stored in thousandths so that fractional refunds can be tracked atomically
+    private static final long TOKEN = 1000;
+
+    private final long capacity;
+    private final long refund;
+    private final AtomicLong tokens;
+
+    //endregion
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //region CONSTRUCTORS
+
+    /**
+     * Constructor
+     *
+     * @param capacity Number of retries allowed in a burst
+     * @param refund   Tokens earned back by every success (e.g. 0.1 allows one retry every 10 successes)
+     */
+    public RetryBudget(final int capacity, final double refund) {
+        this.capacity = capacity * TOKEN;
+        this.refund = Math.round(refund * TOKEN);
+        this.tokens = new AtomicLong(this.capacity);
+    }
+
+    //endregion
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //region METHODS
+
+    /**
+     * Spend a token for a retry
+     *
+     * @return True if the budget allowed the retry, false if it's exhausted
+     */
+    public boolean tryAcquire() {
+        long current;
+        do {
+            current = tokens.get();
+            if (current < TOKEN) {
+                return false;
+            }
+        } while (!tokens.compareAndSet(current, current - TOKEN));
+
+        return true;
+    }
+
+    /**
+     * Earn back part of a token after a success
+     */
+    public void onSuccess() {
+        tokens.accumulateAndGet(refund, (current, amount) -> Math.min(capacity, current + amount));
+    }
+
+    /**
+     * Get the number of retries currently available
+     *
+     * @return
+     */
+    public double getAvailable() {
+        return (double) tokens.get() / TOKEN;
+    }
+
+    //endregion
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+}
@@ -0,0 +1,32 @@
+package com.lumenaut.poolmanager.gateways;
+
+/**
+ * @Author Luca Vignaroli
+ * @Email luca@burning.it
+ * @Date 18/10/2026 - 3:39 PM
+ * <p>
+ * Strategy deciding how long to wait before resubmitting a transaction. A new backoff is started for every
+ * transaction, so that each one keeps track of its own resubmissions.
+ */
+public interface RetryPolicy {
+    /**
+     * Resubmission delays of a single transaction
+     */
+    interface Backoff {
+        /**
+         * Get the delay before the next resubmission
+         *
+         * @param ledgerBound True if the failure can only be resolved by a ledger close (e.g. tx_bad_seq), false for
+         *                    transient failures (timeouts, connection errors)
+         * @return The delay in milliseconds
+         */
+        long nextDelay(boolean ledgerBound);
+    }
+
+    /**
+     * Start tracking the resubmissions of a new transaction
+     *
+     * @return
+     */
+    Backoff start();
+}
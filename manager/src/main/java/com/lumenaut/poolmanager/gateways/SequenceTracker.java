@@ -0,0 +1,144 @@
+package com.lumenaut.poolmanager.gateways;
+
+import org.stellar.sdk.Account;
+import org.stellar.sdk.KeyPair;
+import org.stellar.sdk.Server;
+import org.stellar.sdk.TransactionBuilderAccount;
+
+import java.io.IOException;
+import java.util.HashMap;
+
+/**
+ * @Author Luca Vignaroli
+ * @Email luca@burning.it
+ * @Date 18/10/2026 - 3:35 PM
+ * <p>
+ * Local bookkeeping of the sequence numbers of the accounts submitting transactions. Each account is loaded from
+ * horizon the first time it's used, the sequence number is then advanced locally for every transaction that makes it
+ * into a ledger and only reloaded when horizon rejects a transaction with "tx_bad_seq". A rejected transaction is never
+ * replaced with one at a different sequence number: while it's valid it can still make it into a ledger, as soon as
+ * the transactions before it do, and the payments would be made twice.
+ * <p>
+ * Not thread safe, each submission thread (channel) owns its tracker.
+ */
+public class SequenceTracker {
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //region FIELDS
+
+    private final Server server;
+
+    // Last sequence number consumed by each account
+    private final HashMap<String, Long> sequences = new HashMap<>();
+
+    //endregion
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //region CONSTRUCTORS
+
+    /**
+     * Constructor
+     *
+     * @param server The horizon server accounts are loaded from
+     */
+    public SequenceTracker(final Server server) {
+        this.server = server;
+    }
+
+    //endregion
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //region METHODS
+
+    /**
+     * Get an account object to build the next transaction of the given account with. The returned object is a copy,
+     * building a transaction with it doesn't advance the tracked sequence number until {@link #commit} is called.
+     *
+     * @param account
+     * @return
+     * @throws IOException If the account had to be loaded from horizon and the request failed
+     */
+    public TransactionBuilderAccount getAccount(final KeyPair account) throws IOException {
+        Long sequence = sequences.get(account.getAccountId());
+        if (sequence == null) {
+            sequence = load(account);
+        }
+
+        return new Account(account, sequence);
+    }
+
+    /**
+     * Get the last sequence number consumed by the given account, as far as the tracker knows
+     *
+     * @param account
+     * @return The sequence number, null if the account isn't tracked (never loaded or invalidated)
+     */
+    public Long getSequenceNumber(final KeyPair account) {
+        return sequences.get(account.getAccountId());
+    }
+
+    /**
+     * Record a transaction which has been included in a ledger (successful or not), consuming its sequence number
+     *
+     * @param account
+     * @param transactionSequence
+     */
+    public void commit(final KeyPair account, final long transactionSequence) {
+        sequences.merge(account.getAccountId(), transactionSequence, Math::max);
+    }
+
+    /**
+     * Reload the sequence number of the given account after a "tx_bad_seq" rejection
+     *
+     * @param account
+     * @param transactionSequence The sequence number of the rejected transaction
+     * @return True if transactions before the rejected one have yet to consume their sequence numbers (e.g. pipelined
+     * transactions still in flight), false if the rejected transaction is the account's next one or its sequence number
+     * has already been consumed, possibly by the rejected transaction itself
+     * @throws IOException
+     */
+    public boolean resync(final KeyPair account, final long transactionSequence) throws IOException {
+        sequences.remove(account.getAccountId());
+
+        return load(account) < transactionSequence - 1;
+    }
+
+    /**
+     * Forget the sequence number of the given account, it will be reloaded on its next use. To be used whenever the
+     * outcome of a submission is unknown.
+     *
+     * @param account
+     */
+    public void invalidate(final KeyPair account) {
+        sequences.remove(account.getAccountId());
+    }
+
+    /**
+     * Load the current sequence number of the given account from horizon
+     *
+     * @param account
+     * @return
+     * @throws IOException
+     */
+    private long load(final KeyPair account) throws IOException {
+        final long sequence = fetchSequenceNumber(account);
+        sequences.put(account.getAccountId(), sequence);
+
+        return sequence;
+    }
+
+    /**
+     * Fetch the current sequence number of the given account from horizon
+     *
+     * @param account
+     * @return
+     * @throws IOException
+     */
+    long fetchSequenceNumber(final KeyPair account) throws IOException {
+        return server.accounts().account(account).getSequenceNumber();
+    }
+
+    //endregion
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+}
@@ -2,6 +2,8 @@ package com.lumenaut.poolmanager.gateways;
 
 import com.lumenaut.poolmanager.DataFormats;
 import com.lumenaut.poolmanager.DataFormats.*;
+import com.lumenaut.poolmanager.PayoutJournal;
+import com.lumenaut.poolmanager.Services;
 import com.lumenaut.poolmanager.Settings;
 import com.lumenaut.poolmanager.XLMUtils;
 import javafx.application.Platform;
@@ -12,17 +14,33 @@ import org.stellar.sdk.responses.AccountResponse;
 import org.stellar.sdk.responses.SubmitTransactionResponse;
 import org.stellar.sdk.responses.SubmitTransactionTimeoutResponseException;
 import org.stellar.sdk.responses.SubmitTransactionUnknownResponseException;
+import shadow.com.google.common.base.Optional;
+import shadow.okhttp3.Request;
+import shadow.okhttp3.Response;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.math.BigDecimal;
+import java.nio.ByteBuffer;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Base64;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import static com.lumenaut.poolmanager.DataFormats.OBJECT_MAPPER;
+import static com.lumenaut.poolmanager.Services.SIGNING_POOL;
+import static com.lumenaut.poolmanager.Services.SUBMISSION_EXECUTOR;
 import static com.lumenaut.poolmanager.Settings.*;
 
 /**
@@ -43,15 +61,36 @@ public class StellarGateway {
     // How many times to ignore a failure due to "tx_bad_seq" and instead resubmit the transaction.
     // Bad sequence responses from Horizon to successfully executed transactions have been found to be common
     // during the last few months, this is currently considered bogus until the issue stops presenting itself.
-    // After this amount of retries has been expended the transaction will be considered failed. The way we generate
-    // sequence numbers leaves no room for sequencing issues (each payment channel regenerates the account object before
-    // proceeding with the transaction, and that comes with a fresh and valid sequence number).
+    // After this amount of retries has been expended the transaction will be considered failed. Sequence numbers are
+    // tracked locally (see SequenceTracker), a tx_bad_seq reloads the account and the transaction is always resubmitted
+    // as is: when transactions before it are still in flight it can only be accepted once they make it into a ledger.
     public static final int MAX_RESUBMISSIONS_PER_TX_BAD_SEQ = 5;
 
-    // When a transaction fails because of a timeout error from the horizon response
-    // wait this much before resubmitting it (milliseconds). A transaction timeout will be resubmitted ad infinitum
+    // Resubmissions are paced by the retry policy (exponential backoff with jitter), starting from the base delay and
+    // never waiting more than the max delay (milliseconds). A transaction timeout will be resubmitted ad infinitum
     // until either success or failure is reported by Horizon
+    public static final long RESUBMISSION_BASE_DELAY = 500;
+    public static final long RESUBMISSION_MAX_DELAY = 20000;
+
+    // Once the retry budget shared by all channels is exhausted, resubmissions slow down to about this delay
+    // (milliseconds) until enough transactions go through again
     public static final int TRANSACTION_RESUBMISSION_DELAY = 5000;
+    public static final RetryBudget RETRY_BUDGET = new RetryBudget(MAX_THREADS, 0.1);
+
+    // Throttles the channels' submissions against the network's capacity, reset at the start of each payment run
+    public static final ChannelScheduler CHANNEL_SCHEDULER = new ChannelScheduler(MAX_THREADS * MAX_TRANSACTIONS_IN_FLIGHT);
+
+    // Prices the transactions' operations
+    public static final FeeStrategy FEE_STRATEGY = new FeeStrategy();
+
+    // Horizon's rate limiting response status
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+
+    // Horizon's response status for unknown transactions
+    private static final int HTTP_NOT_FOUND = 404;
+
+    // Time after which a channel's verification is abandoned and the channel left out (milliseconds)
+    private static final long CHANNEL_VERIFICATION_TIMEOUT = 30 * 1000L;
 
     // Each transaction will become invalid after the specified time since its first submission
     public static final long TRANSACTION_VALIDITY_TIMEOUT_SECONDS = 60 * 20;
@@ -61,6 +100,12 @@ public class StellarGateway {
     private static ArrayList<String> channelAccounts;
     private static ArrayList<String> channelKeys;
 
+    // Resubmission delays
+    private static volatile RetryPolicy retryPolicy = new DecorrelatedJitterRetryPolicy(RESUBMISSION_BASE_DELAY, RESUBMISSION_MAX_DELAY);
+
+    // Journal of the payment run in progress, if any
+    private static volatile PayoutJournal payoutJournal;
+
     //endregion
     ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
 
@@ -75,6 +120,22 @@ public class StellarGateway {
         return channelKeys;
     }
 
+    public static RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    public static void setRetryPolicy(final RetryPolicy retryPolicy) {
+        StellarGateway.retryPolicy = retryPolicy;
+    }
+
+    public static PayoutJournal getPayoutJournal() {
+        return payoutJournal;
+    }
+
+    public static void setPayoutJournal(final PayoutJournal payoutJournal) {
+        StellarGateway.payoutJournal = payoutJournal;
+    }
+
     //endregion
     ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
 
@@ -127,54 +188,60 @@ public class StellarGateway {
 
             final List<PaymentChannel> channels = channelsData.getChannels();
 
-            // Check that we're not attempting to use more channels than the number of transactions which can
-            // be managed by a single ledger
-            if (channels.size() > 50) {
-                Platform.runLater(() -> outputTextArea.appendText("Too many channels found in config, max number of usable channels is 50. Aborting... "));
+            // Check that we're not attempting to use more channels than configured, the ledger capacity is enforced
+            // at submission time by the channel scheduler
+            if (channels.size() > SETTING_MAX_CHANNELS) {
+                Platform.runLater(() -> outputTextArea.appendText("Too many channels found in config, max number of usable channels is " + SETTING_MAX_CHANNELS + ". Aborting... "));
 
                 return;
             }
 
-            // Verify found channels
-            for (int i = 0; i < channels.size(); i++) {
-                final PaymentChannel channel = channels.get(i);
-                final String channelAddress = channel.getAddress();
-                final String channelKey = channel.getKey();
-                final String channelNumber = i < 10 ? "0" + i : String.valueOf(i);
-                Platform.runLater(() -> outputTextArea.appendText("Channel [" + channelNumber + "] init... "));
+            // Make room for a thread per channel
+            Services.ensureChannelThreads(channels.size());
+
+            // Check for duplicates before spending any request on them
+            final HashSet<String> addresses = new HashSet<>();
+            for (PaymentChannel channel : channels) {
+                if (channel.address != null && !addresses.add(channel.address.toUpperCase())) {
+                    channelAccounts = null;
+                    channelKeys = null;
 
-                // Verify channel and balance
-                if (verifyChannel(channelAddress, channelKey, outputTextArea)) {
-                    channelAccounts.add(channelAddress);
-                    channelKeys.add(channelKey);
+                    // Notify user
+                    Platform.runLater(() -> outputTextArea.appendText("ERROR: Duplicate payment channels found, please check your settings. Aborting...\n"));
+
+                    return;
                 }
             }
 
-            // Check for duplicates
-            boolean duplicatesFound = false;
+            // Verify found channels concurrently, each one reports its result as soon as it's available and a channel
+            // that doesn't answer in time is left out on its own
+            final List<CompletableFuture<Boolean>> verifications = new ArrayList<>(channels.size());
             for (int i = 0; i < channels.size(); i++) {
-                for (int j = i + 1; j < channels.size(); j++) {
-                    final PaymentChannel channel = channels.get(i);
-                    final PaymentChannel channel2 = channels.get(j);
+                final PaymentChannel channel = channels.get(i);
+                final String channelNumber = i < 10 ? "0" + i : String.valueOf(i);
+                final String outputPrefix = "Channel [" + channelNumber + "] init... ";
+                final Callable<Boolean> verification = () -> verifyChannel(outputPrefix, channel.getAddress(), channel.getKey(), outputTextArea);
 
-                    if (channel.address.equalsIgnoreCase(channel2.address)) {
-                        duplicatesFound = true;
-                        break;
-                    }
+                CompletableFuture<Boolean> result = Services.supplyAsync(verification, Services.forBlockingTasks(SUBMISSION_EXECUTOR), CHANNEL_VERIFICATION_TIMEOUT);
+                if (result.isCompletedExceptionally()) {
+                    // The submission threads are all busy with a payment, verify it on the I/O threads
+                    result = Services.supplyAsync(verification, CHANNEL_VERIFICATION_TIMEOUT);
                 }
 
-                if (duplicatesFound) {
-                    break;
-                }
-            }
+                verifications.add(result.exceptionally(error -> {
+                    final String reason = error instanceof TimeoutException ? "No response in " + CHANNEL_VERIFICATION_TIMEOUT / 1000 + " seconds" : String.valueOf(error.getMessage());
+                    Platform.runLater(() -> outputTextArea.appendText(outputPrefix + "FAILED [" + reason + "]\n"));
 
-            // Invalidate initialized channels if duplicates were found
-            if (duplicatesFound) {
-                channelAccounts = null;
-                channelKeys = null;
+                    return false;
+                }));
+            }
 
-                // Notify user
-                Platform.runLater(() -> outputTextArea.appendText("ERROR: Duplicate payment channels found, please check your settings. Aborting...\n"));
+            // Keep the configured channels order, every verification completes within its timeout
+            for (int i = 0; i < channels.size(); i++) {
+                if (verifications.get(i).join()) {
+                    channelAccounts.add(channels.get(i).getAddress());
+                    channelKeys.add(channels.get(i).getKey());
+                }
             }
         } else {
             channelAccounts = null;
@@ -186,20 +253,21 @@ public class StellarGateway {
      * Verifies that the channel address and private keys are valid, and that the channel has at least 2 XLM of balance
      * to process transactions
      *
+     * @param outputPrefix   Prefix of the result line, identifying the channel
      * @param channelAddress
      * @param channelKey
      * @return
      */
-    private static boolean verifyChannel(final String channelAddress, final String channelKey, final TextArea outputTextArea) {
+    private static boolean verifyChannel(final String outputPrefix, final String channelAddress, final String channelKey, final TextArea outputTextArea) {
         // Fail immediately if the channel data is invalid
         if (channelAddress == null || channelAddress.isEmpty() || channelKey == null || channelKey.isEmpty()) {
-            Platform.runLater(() -> outputTextArea.appendText("FAILED [Invalid channel address/key]\n"));
+            Platform.runLater(() -> outputTextArea.appendText(outputPrefix + "FAILED [Invalid channel address/key]\n"));
 
             return false;
         }
 
         // Select the operations network
-        final Server server = new Server(SETTING_OPERATIONS_NETWORK.equals("LIVE") ? SETTING_HORIZON_LIVE_NETWORK : SETTING_HORIZON_TEST_NETWORK);
+        final Server server = HorizonServers.getOperationsServer();
 
         try {
             // Create the key pair from the secret key, so we can check if it matches the channel address
@@ -209,7 +277,7 @@ public class StellarGateway {
 
             // Check address
             if (!pair.getAccountId().equals(channelAddress)) {
-                Platform.runLater(() -> outputTextArea.appendText("FAILED [Invalid key pair]\n"));
+                Platform.runLater(() -> outputTextArea.appendText(outputPrefix + "FAILED [Invalid key pair]\n"));
 
                 return false;
             }
@@ -224,16 +292,19 @@ public class StellarGateway {
 
             // Check balance
             if (XLMUtils.XLMToStroop(availableBalance) < MINIMUM_CHANNEL_BALANCE) {
-                Platform.runLater(() -> outputTextArea.appendText("FAILED [Balance is insufficient: " + XLMUtils.formatBalanceFullPrecision(availableBalance) + " XLM]\n"));
+                Platform.runLater(() -> outputTextArea.appendText(outputPrefix + "FAILED [Balance is insufficient: " + XLMUtils.formatBalanceFullPrecision(availableBalance) + " XLM]\n"));
 
                 return false;
             } else {
-                Platform.runLater(() -> outputTextArea.appendText("SUCCESS [Balance: " + XLMUtils.formatBalanceFullPrecision(availableBalance) + " XLM]\n"));
+                Platform.runLater(() -> outputTextArea.appendText(outputPrefix + "SUCCESS [Balance: " + XLMUtils.formatBalanceFullPrecision(availableBalance) + " XLM]\n"));
 
                 return true;
             }
         } catch (Exception e) {
-            Platform.runLater(() -> outputTextArea.appendText("FAILED [" + e.getMessage() + "]\n"));
+            // An interrupted verification has timed out, and it was reported as such
+            if (!Thread.currentThread().isInterrupted()) {
+                Platform.runLater(() -> outputTextArea.appendText(outputPrefix + "FAILED [" + e.getMessage() + "]\n"));
+            }
 
             return false;
         }
@@ -243,12 +314,13 @@ public class StellarGateway {
      * Execute the given transactions in a single batch
      *
      * @param server
+     * @param sequenceTracker
      * @param source
      * @param transactionResult
      * @return
      * @throws IOException
      */
-    public static TransactionBatchResponse executeSingleTransactionBatch(final Server server, final KeyPair source, final KeyPair[] signers, final TransactionResult transactionResult) {
+    public static TransactionBatchResponse executeSingleTransactionBatch(final Server server, final SequenceTracker sequenceTracker, final KeyPair source, final KeyPair[] signers, final TransactionResult transactionResult) {
         // Prepare response object
         final TransactionBatchResponse response = new TransactionBatchResponse();
 
@@ -279,27 +351,22 @@ public class StellarGateway {
             return response;
         }
 
-        // Build an AccountResponse object, used to fetch sequence numbers
-        final AccountResponse sourceAccountResponse;
+        // Get the pool account with its locally tracked sequence number
+        final TransactionBuilderAccount sourceAccount;
         try {
-            sourceAccountResponse = server.accounts().account(source);
+            sourceAccount = sequenceTracker.getAccount(source);
         } catch (IOException e) {
             response.success = false;
-            response.errorMessages.add("Unable to create AccountResponse object: " + source.getAccountId());
+            response.errorMessages.add("Unable to fetch the sequence number of the account: " + source.getAccountId());
             response.errorMessages.add(e.getMessage());
 
             return response;
         }
 
-        // Prepare a new transaction builder for the pool account
-        final Builder transactionBuilder = new Transaction.Builder(sourceAccountResponse, SETTING_OPERATIONS_NETWORK.equals("LIVE") ? Network.PUBLIC : Network.TESTNET);
-
-        // Add memo to the transaction
-        transactionBuilder.addMemo(Memo.text(Settings.SETTING_MEMO));
-
-        // Mandatory timeout settings
+        // Build the transaction for the pool account
+        Transaction transaction;
         try {
-            transactionBuilder.setTimeout(TRANSACTION_VALIDITY_TIMEOUT_SECONDS);
+            transaction = buildTransaction(sourceAccount, null, FEE_STRATEGY.getOperationFee(), signers, transactionResult);
         } catch (RuntimeException e) {
             response.success = false;
             response.errorMessages.add("[" + DATE_FORMATTER.format(new Date()) + "]-[ERROR] " + e.getMessage());
@@ -307,37 +374,28 @@ public class StellarGateway {
             return response;
         }
 
-        // Process all entries
-        for (TransactionResultEntry entry : transactionResult.getEntries()) {
-            // Append operation
-            // !!! IMPORTANT !!! the amount must be specified in XLM as a string in decimal format e.g. 10.0000001 -> 10 lumens, 1 stroop
-            transactionBuilder.addOperation(new PaymentOperation.Builder(KeyPair.fromAccountId(entry.getDestination()), new AssetTypeNative(), XLMUtils.stroopToXLM(entry.getAmount()).toString()).build());
-
-            // Update entry operation timestamp
-            entry.setTimestamp(System.currentTimeMillis());
-        }
-
-        // Finalize the transaction
-        final Transaction transaction = transactionBuilder.build();
-        for (KeyPair signer : signers) {
-            transaction.sign(signer);
-        }
-
         // Submit
         SubmitTransactionResponse submissionResponse = null;
-        boolean resub = false;
+        final RetryPolicy.Backoff backoff = retryPolicy.start();
+        long resubmissionDelay = 0L;
         while (submissionResponse == null) {
             try {
                 // If we're resubmitting, give horizon some time to catch up
-                if (resub) {
-                    Thread.sleep(TRANSACTION_RESUBMISSION_DELAY);
+                if (resubmissionDelay > 0) {
+                    Thread.sleep(resubmissionDelay);
                 }
 
-                // Reset resubmission flag otherwise every transaction since the first resub will be delayed by 10 seconds
-                resub = false;
+                // Reset the resubmission delay
+                resubmissionDelay = 0L;
+
+                // Attempt submission, once it's journaled
+                journalSubmission(transactionResult, transaction);
+                submissionResponse = submitTransaction(server, transaction);
+                if (isSequenceConsumed(submissionResponse)) {
+                    sequenceTracker.commit(source, transaction.getSequenceNumber());
+                    response.feePaid = getFeePaid(transaction, submissionResponse);
+                }
 
-                // Attempt submission
-                submissionResponse = server.submitTransaction(transaction);
                 if (submissionResponse.isSuccess()) {
                     ////////////////////////////////////////////////////////////////////////////////////////////////////
                     // SUCCESS
@@ -348,8 +406,14 @@ public class StellarGateway {
                     // RESUB on failure due to tx_bad_seq >>> up to MAX_RESUBMISSIONS_PER_TX_BAD_SEQ <<<
                     if (isTxBadSeq(submissionResponse)) {
                         if (retriesLeft.decrementAndGet() >= 0) {
+                            // Never rebuild it, the original can still make it into a ledger
+                            final boolean gap = resyncTransactionSequence(sequenceTracker, source, transaction, response);
+
+                            // Wait for the next ledger before trying again
+                            resubmissionDelay = nextResubmissionDelay(backoff, true);
+
                             // Append to response
-                            final String warn = "Resubmitting transaction in " + TRANSACTION_RESUBMISSION_DELAY / 1000 + " seconds because of: possibly bogus tx_bad_seq";
+                            final String warn = "Resubmitting transaction in " + resubmissionDelay + " ms because of: " + (gap ? "tx_bad_seq, earlier transactions of the account still pending" : "possibly bogus tx_bad_seq");
 
                             // Log to console
                             System.err.println("[WARNING] " + warn);
@@ -357,9 +421,6 @@ public class StellarGateway {
                             // Append to response
                             response.warningMessages.add(warn);
 
-                            // Flag for resubmission
-                            resub = true;
-
                             // Null the current response, so we remain on this transaction
                             submissionResponse = null;
                         } else {
@@ -369,6 +430,20 @@ public class StellarGateway {
                             response.transactionResponse = submissionResponse;
                             response.errorMessages.add("Transaction failed after max resubmissions attempts");
                         }
+                    } else if (isTxInsufficientFee(submissionResponse) && FEE_STRATEGY.onInsufficientFee(getOperationFee(transaction))) {
+                        ////////////////////////////////////////////////////////////////////////////////////////////////
+                        // RESUB >>> tx_insufficient_fee, with a higher fee at the same sequence number (it wasn't consumed)
+                        transaction = buildTransaction(new Account(source, transaction.getSequenceNumber() - 1), null, FEE_STRATEGY.getOperationFee(), signers, transactionResult);
+                        final String warn = "Resubmitting transaction with a fee of " + getOperationFee(transaction) + " stroops per operation because of: tx_insufficient_fee";
+
+                        // Log to console
+                        System.err.println("[WARNING] " + warn);
+
+                        // Append to response
+                        response.warningMessages.add(warn);
+
+                        // Null the current response, so we remain on this transaction
+                        submissionResponse = null;
                     } else {
                         ////////////////////////////////////////////////////////////////////////////////////////////////
                         // FAIL
@@ -378,6 +453,9 @@ public class StellarGateway {
                     }
                 }
             } catch (InterruptedException e) {
+                // The outcome of previous attempts is unknown
+                sequenceTracker.invalidate(source);
+
                 // Transaction batch failed
                 response.success = false;
                 response.errorMessages.add("Channel Thread was interrupted: " + e.getMessage());
@@ -386,23 +464,19 @@ public class StellarGateway {
             } catch (SubmitTransactionUnknownResponseException e) {
                 ////////////////////////////////////////////////////////////////////////////////////////////////////////
                 // RESUB >>> Unexpected failure (timeout?)
-                final String warn = "Resubmitting transaction in " + TRANSACTION_RESUBMISSION_DELAY / 1000 + ". Code: " + e.getCode() + ", Response Body" + e.getBody();
+                resubmissionDelay = nextResubmissionDelay(backoff, false);
+                final String warn = "Resubmitting transaction in " + resubmissionDelay + " ms. Code: " + e.getCode() + ", Response Body" + e.getBody();
 
                 // Append to response
                 response.warningMessages.add(warn);
-
-                // Flag as resubmission
-                resub = true;
             } catch (SubmitTransactionTimeoutResponseException | IOException e) {
                 ////////////////////////////////////////////////////////////////////////////////////////////////////////
                 // RESUB >>>  Unexpected failure (timeout?)
-                final String warn = "Resubmitting transaction in " + TRANSACTION_RESUBMISSION_DELAY / 1000 + " seconds because of: " + e.getClass().getSimpleName() + " -> " + e.getMessage();
+                resubmissionDelay = nextResubmissionDelay(backoff, false);
+                final String warn = "Resubmitting transaction in " + resubmissionDelay + " ms because of: " + e.getClass().getSimpleName() + " -> " + e.getMessage();
 
                 // Append to response
                 response.warningMessages.add(warn);
-
-                // Flag as resubmission
-                resub = true;
             }
         }
 
@@ -413,13 +487,30 @@ public class StellarGateway {
      * Execute the given transactions in a single batch from the specified channel
      *
      * @param server
+     * @param sequenceTracker
      * @param channelAccount
      * @param signers
      * @param batch
      * @return
      * @throws IOException
      */
-    public static TransactionBatchResponse executeParallelTransactionBatch(final Server server, final KeyPair channelAccount, final KeyPair sourceAccount, final KeyPair[] signers, final TransactionResult batch, final AtomicBoolean idleFlag, final int channelIndex) {
+    public static TransactionBatchResponse executeParallelTransactionBatch(final Server server, final SequenceTracker sequenceTracker, final KeyPair channelAccount, final KeyPair sourceAccount, final KeyPair[] signers, final TransactionResult batch, final AtomicBoolean idleFlag, final int channelIndex) {
+        return executeParallelTransactionBatch(server, sequenceTracker, channelAccount, sourceAccount, signers, batch, idleFlag, channelIndex, null);
+    }
+
+    /**
+     * Execute the given transactions in a single batch from the specified channel, starting from a transaction which
+     * has already been built (and possibly submitted) for it
+     *
+     * @param server
+     * @param sequenceTracker
+     * @param channelAccount
+     * @param signers
+     * @param batch
+     * @param prebuiltTransaction The transaction of the batch, null to build it from the tracked sequence number
+     * @return
+     */
+    public static TransactionBatchResponse executeParallelTransactionBatch(final Server server, final SequenceTracker sequenceTracker, final KeyPair channelAccount, final KeyPair sourceAccount, final KeyPair[] signers, final TransactionResult batch, final AtomicBoolean idleFlag, final int channelIndex, final Transaction prebuiltTransaction) {
         // Prepare response object
         final TransactionBatchResponse response = new TransactionBatchResponse();
 
@@ -450,63 +541,44 @@ public class StellarGateway {
             return response;
         }
 
-        // Build an AccountResponse object for the channel, used to fetch sequence numbers
-        final AccountResponse channelAccountResponse;
-        try {
-            channelAccountResponse = server.accounts().account(channelAccount);
-        } catch (IOException e) {
-            response.success = false;
-            response.errorMessages.add("Unable to create AccountResponse object for the channel account: " + channelAccount.getAccountId());
-            response.errorMessages.add(e.getMessage());
-
-            return response;
-        }
-
-        // Prepare a new transaction builder for the channel
-        final Builder transactionBuilder = new Transaction.Builder(channelAccountResponse, SETTING_OPERATIONS_NETWORK.equals("LIVE") ? Network.PUBLIC : Network.TESTNET);
-
-        // Add memo to the transaction
-        transactionBuilder.addMemo(Memo.text(Settings.SETTING_MEMO));
-
-        // Mandatory settings
-        try {
-            transactionBuilder.setTimeout(TRANSACTION_VALIDITY_TIMEOUT_SECONDS);
-            transactionBuilder.setOperationFee(SETTING_FEE);
-        } catch (RuntimeException e) {
-            response.success = false;
-            response.errorMessages.add("[" + DATE_FORMATTER.format(new Date()) + "]-[ERROR] " + e.getMessage());
-
-            return response;
-        }
+        // Build the transaction for the channel, unless we're given one
+        Transaction transaction = prebuiltTransaction;
+        if (transaction == null) {
+            // Get the channel account with its locally tracked sequence number
+            final TransactionBuilderAccount channelSourceAccount;
+            try {
+                channelSourceAccount = sequenceTracker.getAccount(channelAccount);
+            } catch (IOException e) {
+                response.success = false;
+                response.errorMessages.add("Unable to fetch the sequence number of the channel account: " + channelAccount.getAccountId());
+                response.errorMessages.add(e.getMessage());
 
-        // Process all entries
-        for (TransactionResultEntry entry : batch.getEntries()) {
-            // Append operation
-            // !!! IMPORTANT !!! the amount must be specified in XLM as a string in decimal format e.g. 10.0000001 -> 10 lumens, 1 stroop
-            transactionBuilder.addOperation(new PaymentOperation.Builder(KeyPair.fromAccountId(entry.getDestination()), new AssetTypeNative(), XLMUtils.stroopToXLM(entry.getAmount()).toString()).setSourceAccount(sourceAccount).build());
+                return response;
+            }
 
-            // Update entry operation timestamp
-            entry.setTimestamp(System.currentTimeMillis());
-        }
+            try {
+                transaction = buildParallelTransaction(channelSourceAccount, sourceAccount, signers, batch);
+            } catch (RuntimeException e) {
+                response.success = false;
+                response.errorMessages.add("[" + DATE_FORMATTER.format(new Date()) + "]-[ERROR] " + e.getMessage());
 
-        // Finalize the transaction
-        final Transaction transaction = transactionBuilder.build();
-        for (KeyPair signer : signers) {
-            transaction.sign(signer);
+                return response;
+            }
         }
 
         // Submit
         SubmitTransactionResponse submissionResponse = null;
-        boolean resub = false;
+        final RetryPolicy.Backoff backoff = retryPolicy.start();
+        long resubmissionDelay = 0L;
         while (submissionResponse == null) {
             try {
                 // If we're resubmitting, give horizon some time to catch up
-                if (resub) {
+                if (resubmissionDelay > 0) {
                     // Log to console
-                    System.out.println("[" + DATE_FORMATTER.format(new Date()) + "]-[INFO] Channel [" + channelIndex + "] entering sleep mode for " + TRANSACTION_RESUBMISSION_DELAY / 1000 + " seconds");
+                    System.out.println("[" + DATE_FORMATTER.format(new Date()) + "]-[INFO] Channel [" + channelIndex + "] entering sleep mode for " + resubmissionDelay + " ms");
 
                     idleFlag.set(true);
-                    Thread.sleep(TRANSACTION_RESUBMISSION_DELAY);
+                    Thread.sleep(resubmissionDelay);
 
                     // Log to console
                     System.out.println("[" + DATE_FORMATTER.format(new Date()) + "]-[INFO] Channel [" + channelIndex + "] resuming operations");
@@ -514,10 +586,16 @@ public class StellarGateway {
 
                 // Reset flags
                 idleFlag.set(false);
-                resub = false;
+                resubmissionDelay = 0L;
+
+                // Attempt submission, once it's journaled
+                journalSubmission(batch, transaction);
+                submissionResponse = submitParallelTransaction(server, transaction);
+                if (isSequenceConsumed(submissionResponse)) {
+                    sequenceTracker.commit(channelAccount, transaction.getSequenceNumber());
+                    response.feePaid = getFeePaid(transaction, submissionResponse);
+                }
 
-                // Attempt submission
-                submissionResponse = server.submitTransaction(transaction);
                 if (submissionResponse.isSuccess()) {
                     ////////////////////////////////////////////////////////////////////////////////////////////////////
                     // SUCCESS
@@ -528,8 +606,14 @@ public class StellarGateway {
                     // RESUB >>> tx_bad_seq (up to MAX_RESUBMISSIONS_PER_TX_BAD_SEQ)
                     if (isTxBadSeq(submissionResponse)) {
                         if (retriesLeft.decrementAndGet() >= 0) {
+                            // Never rebuild it, the original can still make it into a ledger
+                            final boolean gap = resyncTransactionSequence(sequenceTracker, channelAccount, transaction, response);
+
+                            // Wait for the next ledger before trying again
+                            resubmissionDelay = nextResubmissionDelay(backoff, true);
+
                             // Append to response
-                            final String warn = "Resubmitting transaction in " + TRANSACTION_RESUBMISSION_DELAY / 1000 + " seconds because of: possibly bogus tx_bad_seq";
+                            final String warn = "Resubmitting transaction in " + resubmissionDelay + " ms because of: " + (gap ? "tx_bad_seq, earlier transactions of the channel still pending" : "possibly bogus tx_bad_seq");
 
                             // Log to console
                             System.err.println("[" + DATE_FORMATTER.format(new Date()) + "]-[WARNING] Channel [" + channelIndex + "]: " + warn);
@@ -537,9 +621,6 @@ public class StellarGateway {
                             // Append to response
                             response.warningMessages.add(warn);
 
-                            // Flag for resubmission
-                            resub = true;
-
                             // Null the current transaction response, so we remain on this transaction
                             submissionResponse = null;
                         } else {
@@ -549,6 +630,20 @@ public class StellarGateway {
                             response.transactionResponse = submissionResponse;
                             response.errorMessages.add("Transaction failed: max resubmissions attempted");
                         }
+                    } else if (isTxInsufficientFee(submissionResponse) && FEE_STRATEGY.onInsufficientFee(getOperationFee(transaction))) {
+                        ////////////////////////////////////////////////////////////////////////////////////////////////
+                        // RESUB >>> tx_insufficient_fee, with a higher fee at the same sequence number (it wasn't consumed)
+                        transaction = buildParallelTransaction(new Account(channelAccount, transaction.getSequenceNumber() - 1), sourceAccount, signers, batch);
+                        final String warn = "Resubmitting transaction with a fee of " + getOperationFee(transaction) + " stroops per operation because of: tx_insufficient_fee";
+
+                        // Log to console
+                        System.err.println("[" + DATE_FORMATTER.format(new Date()) + "]-[WARNING] Channel [" + channelIndex + "]: " + warn);
+
+                        // Append to response
+                        response.warningMessages.add(warn);
+
+                        // Null the current transaction response, so we remain on this transaction
+                        submissionResponse = null;
                     } else {
                         ////////////////////////////////////////////////////////////////////////////////////////////////
                         // FAIL
@@ -558,6 +653,9 @@ public class StellarGateway {
                     }
                 }
             } catch (InterruptedException e) {
+                // The outcome of previous attempts is unknown
+                sequenceTracker.invalidate(channelAccount);
+
                 // Transaction batch failed
                 response.success = false;
                 response.errorMessages.add("[" + DATE_FORMATTER.format(new Date()) + "]-[ERROR] Channel [" + channelIndex + "]: Thread was interrupted: " + e.getMessage());
@@ -566,7 +664,8 @@ public class StellarGateway {
             } catch (SubmitTransactionUnknownResponseException e) {
                 ////////////////////////////////////////////////////////////////////////////////////////////////////////
                 // RESUB >>> Timeout
-                final String warn = "Resubmitting transaction in " + TRANSACTION_RESUBMISSION_DELAY / 1000 + ". Code: " + e.getCode() + ", Response Body" + e.getBody();
+                resubmissionDelay = nextResubmissionDelay(backoff, false);
+                final String warn = "Resubmitting transaction in " + resubmissionDelay + " ms. Code: " + e.getCode() + ", Response Body" + e.getBody();
 
                 // Log to console
                 System.err.println("[" + DATE_FORMATTER.format(new Date()) + "]-[WARNING] Channel [" + channelIndex + "]: " + warn);
@@ -574,15 +673,13 @@ public class StellarGateway {
                 // Append to response
                 response.warningMessages.add(warn);
 
-                // Flag as resubmission
-                resub = true;
-
                 // Null the current transaction response, so we remain on this transaction
                 submissionResponse = null;
             } catch (SubmitTransactionTimeoutResponseException | IOException e) {
                 ////////////////////////////////////////////////////////////////////////////////////////////////////////
                 // RESUB >>> Timeout
-                final String warn = "Resubmitting transaction in " + TRANSACTION_RESUBMISSION_DELAY / 1000 + " seconds because of: " + e.getClass().getSimpleName() + " -> " + e.getMessage();
+                resubmissionDelay = nextResubmissionDelay(backoff, false);
+                final String warn = "Resubmitting transaction in " + resubmissionDelay + " ms because of: " + e.getClass().getSimpleName() + " -> " + e.getMessage();
 
                 // Log to console
                 System.err.println("[" + DATE_FORMATTER.format(new Date()) + "]-[WARNING] Channel [" + channelIndex + "]: " + warn);
@@ -590,9 +687,6 @@ public class StellarGateway {
                 // Append to response
                 response.warningMessages.add(warn);
 
-                // Flag as resubmission
-                resub = true;
-
                 // Null the current transaction response, so we remain on this transaction
                 submissionResponse = null;
             }
@@ -601,6 +695,345 @@ public class StellarGateway {
         return response;
     }
 
+    /**
+     * Build and sign the transaction of a batch paid from the pool account through a payment channel. Every call
+     * advances the sequence number of the given channel account object, so consecutive calls produce transactions
+     * which can be submitted back to back.
+     *
+     * @param channelSourceAccount The channel account
+     * @param sourceAccount        The pool account
+     * @param signers
+     * @param batch
+     * @return
+     */
+    public static Transaction buildParallelTransaction(final TransactionBuilderAccount channelSourceAccount, final KeyPair sourceAccount, final KeyPair[] signers, final TransactionResult batch) {
+        return buildTransaction(channelSourceAccount, sourceAccount, FEE_STRATEGY.getOperationFee(), signers, batch);
+    }
+
+    /**
+     * Build and sign the transaction of a batch paid through a payment channel on the signing pool, ahead of its
+     * submission
+     *
+     * @param channelAccount The channel account
+     * @param sequenceNumber The sequence number of the transaction
+     * @param sourceAccount  The pool account
+     * @param signers
+     * @param batch
+     * @return
+     */
+    public static CompletableFuture<Transaction> buildParallelTransactionAsync(final KeyPair channelAccount, final long sequenceNumber, final KeyPair sourceAccount, final KeyPair[] signers, final TransactionResult batch) {
+        return CompletableFuture.supplyAsync(() -> buildParallelTransaction(new Account(channelAccount, sequenceNumber - 1), sourceAccount, signers, batch), SIGNING_POOL);
+    }
+
+    /**
+     * Build and sign a payment transaction for the given batch
+     *
+     * @param transactionSource The account paying for the transaction, its sequence number is used for the transaction
+     * @param operationsSource  The account the payments are sent from, null if it's the transaction source
+     * @param operationFee      The fee per operation (stroops), null for the network's default
+     * @param signers
+     * @param batch
+     * @return
+     */
+    private static Transaction buildTransaction(final TransactionBuilderAccount transactionSource, final KeyPair operationsSource, final Integer operationFee, final KeyPair[] signers, final TransactionResult batch) {
+        // Prepare a new transaction builder
+        final Builder transactionBuilder = new Transaction.Builder(transactionSource, SETTING_OPERATIONS_NETWORK.equals("LIVE") ? Network.PUBLIC : Network.TESTNET);
+
+        // Add memo to the transaction
+        transactionBuilder.addMemo(Memo.text(Settings.SETTING_MEMO));
+
+        // Mandatory settings
+        transactionBuilder.setTimeout(TRANSACTION_VALIDITY_TIMEOUT_SECONDS);
+        if (operationFee != null) {
+            transactionBuilder.setOperationFee(operationFee);
+        }
+
+        // Process all entries
+        for (TransactionResultEntry entry : batch.getEntries()) {
+            // Append operation
+            // !!! IMPORTANT !!! the amount must be specified in XLM as a string in decimal format e.g. 10.0000001 -> 10 lumens, 1 stroop
+            final PaymentOperation.Builder paymentBuilder = new PaymentOperation.Builder(KeyPair.fromAccountId(entry.getDestination()), new AssetTypeNative(), XLMUtils.stroopToXLM(entry.getAmount()).toString());
+            if (operationsSource != null) {
+                paymentBuilder.setSourceAccount(operationsSource);
+            }
+            transactionBuilder.addOperation(paymentBuilder.build());
+
+            // Update entry operation timestamp
+            entry.setTimestamp(System.currentTimeMillis());
+        }
+
+        // Finalize the transaction
+        final Transaction transaction = transactionBuilder.build();
+        for (KeyPair signer : signers) {
+            transaction.sign(signer);
+        }
+
+        return transaction;
+    }
+
+    /**
+     * Reload the sequence number of an account after its transaction was rejected with "tx_bad_seq"
+     *
+     * @param sequenceTracker
+     * @param account
+     * @param transaction     The rejected transaction
+     * @param response        The batch response, failures to reload are appended as warnings
+     * @return True if earlier transactions of the account have yet to make it into a ledger
+     */
+    private static boolean resyncTransactionSequence(final SequenceTracker sequenceTracker, final KeyPair account, final Transaction transaction, final TransactionBatchResponse response) {
+        try {
+            return sequenceTracker.resync(account, transaction.getSequenceNumber());
+        } catch (IOException e) {
+            // The account will be reloaded on the next batch
+            response.warningMessages.add("Unable to reload the sequence number of the account " + account.getAccountId() + ": " + e.getMessage());
+
+            return false;
+        }
+    }
+
+    /**
+     * Get the delay before the next resubmission of a transaction, resubmissions are slowed down when the shared retry
+     * budget is exhausted
+     *
+     * @param backoff     The transaction's backoff
+     * @param ledgerBound True if the failure can only be resolved by a ledger close
+     * @return The delay in milliseconds
+     */
+    private static long nextResubmissionDelay(final RetryPolicy.Backoff backoff, final boolean ledgerBound) {
+        final long delay = backoff.nextDelay(ledgerBound);
+        if (RETRY_BUDGET.tryAcquire()) {
+            return delay;
+        }
+
+        // Still jittered, so that throttled channels don't resume in lockstep
+        return Math.max(delay, TRANSACTION_RESUBMISSION_DELAY / 2 + ThreadLocalRandom.current().nextLong(TRANSACTION_RESUBMISSION_DELAY));
+    }
+
+    /**
+     * Submit a transaction of the pool account
+     *
+     * @param server
+     * @param transaction
+     * @return
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    private static SubmitTransactionResponse submitTransaction(final Server server, final Transaction transaction) throws IOException, InterruptedException {
+        final SubmitTransactionResponse transactionResponse;
+        if (SETTING_TRACKED_SUBMISSIONS) {
+            transactionResponse = getSubmissionResponse(HorizonServers.getOperationsTracker().submit(transaction));
+        } else {
+            transactionResponse = server.submitTransaction(transaction);
+        }
+
+        observeSubmission(transaction, transactionResponse);
+
+        return transactionResponse;
+    }
+
+    /**
+     * Submit a transaction of a payment channel, waiting for a slot of the channel scheduler first
+     *
+     * @param server
+     * @param transaction
+     * @return
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public static SubmitTransactionResponse submitParallelTransaction(final Server server, final Transaction transaction) throws IOException, InterruptedException {
+        if (SETTING_TRACKED_SUBMISSIONS) {
+            return getSubmissionResponse(submitTrackedTransaction(transaction));
+        }
+
+        CHANNEL_SCHEDULER.acquire();
+        try {
+            final SubmitTransactionResponse transactionResponse = server.submitTransaction(transaction);
+            observeSubmission(transaction, transactionResponse);
+
+            return transactionResponse;
+        } catch (SubmitTransactionUnknownResponseException e) {
+            if (e.getCode() == HTTP_TOO_MANY_REQUESTS) {
+                CHANNEL_SCHEDULER.onCongestion();
+            }
+
+            throw e;
+        } finally {
+            CHANNEL_SCHEDULER.release();
+        }
+    }
+
+    /**
+     * Submit a transaction of a payment channel through the transaction tracker, waiting for a slot of the channel
+     * scheduler first. The slot is held until the transaction's outcome is known, no thread waits for it.
+     *
+     * @param transaction
+     * @return A future completed with the submission response
+     * @throws InterruptedException
+     */
+    public static CompletableFuture<SubmitTransactionResponse> submitTrackedTransaction(final Transaction transaction) throws InterruptedException {
+        CHANNEL_SCHEDULER.acquire();
+
+        final CompletableFuture<SubmitTransactionResponse> submission;
+        try {
+            submission = HorizonServers.getOperationsTracker().submit(transaction);
+        } catch (RuntimeException e) {
+            CHANNEL_SCHEDULER.release();
+
+            throw e;
+        }
+
+        submission.whenComplete((transactionResponse, error) -> {
+            try {
+                observeSubmission(transaction, transactionResponse);
+                if (error instanceof SubmitTransactionUnknownResponseException && ((SubmitTransactionUnknownResponseException) error).getCode() == HTTP_TOO_MANY_REQUESTS) {
+                    CHANNEL_SCHEDULER.onCongestion();
+                }
+            } finally {
+                CHANNEL_SCHEDULER.release();
+            }
+        });
+
+        return submission;
+    }
+
+    /**
+     * Wait for the outcome of a tracked submission, failures are rethrown as the blocking submission would
+     *
+     * @param submission
+     * @return
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    private static SubmitTransactionResponse getSubmissionResponse(final CompletableFuture<SubmitTransactionResponse> submission) throws IOException, InterruptedException {
+        try {
+            return submission.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            } else if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Record a batch about to be paid in the payout journal, if there is one
+     *
+     * @param batch
+     * @throws UncheckedIOException If the journal can't be written, the batch must not be paid
+     */
+    public static void journalBatch(final TransactionResult batch) {
+        final PayoutJournal journal = payoutJournal;
+        if (journal != null) {
+            try {
+                journal.recordBatch(batch);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to write the payout journal: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Record a transaction about to be submitted in the payout journal, if there is one
+     *
+     * @param batch
+     * @param transaction
+     * @throws UncheckedIOException If the journal can't be written, the transaction must not be submitted
+     */
+    public static void journalSubmission(final TransactionResult batch, final Transaction transaction) {
+        final PayoutJournal journal = payoutJournal;
+        if (journal != null) {
+            try {
+                journal.recordSubmission(batch, transaction);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to write the payout journal: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Record a paid batch in the payout journal, if there is one. The batch is paid no matter what, a failure to record
+     * it only costs a look up of its transaction when the plan is resumed.
+     *
+     * @param batch
+     * @param batchResponse
+     */
+    public static void journalPaid(final TransactionResult batch, final TransactionBatchResponse batchResponse) {
+        final PayoutJournal journal = payoutJournal;
+        if (journal != null && batchResponse.transactionResponse != null) {
+            final Long ledger = batchResponse.transactionResponse.getLedger();
+            try {
+                journal.recordPaid(batch, ledger != null ? ledger : -1L, batchResponse.feePaid, batchResponse.transactionResponse.getHash());
+            } catch (IOException e) {
+                System.err.println("Unable to record a paid batch in the payout journal: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Look up the outcome of a transaction on the operations network
+     *
+     * @param hash The hash of the transaction, hex encoded
+     * @return TRUE if it was included in a ledger and succeeded, FALSE if it was included and failed, null if horizon
+     * doesn't know it
+     * @throws IOException
+     */
+    public static Boolean getTransactionOutcome(final String hash) throws IOException {
+        final String url = SETTING_OPERATIONS_NETWORK.equals("LIVE") ? SETTING_HORIZON_LIVE_NETWORK : SETTING_HORIZON_TEST_NETWORK;
+        final Request request = new Request.Builder().url(url + "/transactions/" + hash).header("Accept", "application/json").get().build();
+        try (final Response response = HorizonServers.getHttpClient().newCall(request).execute()) {
+            if (response.code() == HTTP_NOT_FOUND) {
+                return null;
+            }
+
+            if (!response.isSuccessful()) {
+                throw new IOException("Unable to look up transaction " + hash + ", horizon answered " + response.code());
+            }
+
+            try (final InputStream body = response.body().byteStream()) {
+                return OBJECT_MAPPER.readTree(body).path("successful").asBoolean(true);
+            }
+        }
+    }
+
+    /**
+     * Feed the outcome of a submission to the retry budget, the ledger clock and the channel scheduler
+     *
+     * @param transaction
+     * @param transactionResponse
+     */
+    public static void observeSubmission(final Transaction transaction, final SubmitTransactionResponse transactionResponse) {
+        if (transactionResponse == null) {
+            return;
+        }
+
+        if (transactionResponse.isSuccess()) {
+            RETRY_BUDGET.onSuccess();
+            LedgerClock.observe(transactionResponse.getLedger());
+            if (transactionResponse.getLedger() != null) {
+                CHANNEL_SCHEDULER.onIncluded(transactionResponse.getLedger(), transaction.getOperations().length);
+            }
+        } else if (isTxInsufficientFee(transactionResponse)) {
+            CHANNEL_SCHEDULER.onCongestion();
+        }
+    }
+
+    /**
+     * Check if the specified transaction response belongs to a transaction included in a ledger, successful or not,
+     * which consumed its sequence number
+     *
+     * @param transactionResponse
+     * @return
+     */
+    public static boolean isSequenceConsumed(final SubmitTransactionResponse transactionResponse) {
+        return transactionResponse.isSuccess() ||
+               transactionResponse.getExtras() != null &&
+               transactionResponse.getExtras().getResultCodes() != null &&
+               "tx_failed".equals(transactionResponse.getExtras().getResultCodes().getTransactionResultCode());
+    }
+
     /**
      * Check if the specified transaction response contains a failure of type "tx_bad_seq"
      *
@@ -615,26 +1048,49 @@ public class StellarGateway {
     }
 
     /**
-     * Verify all the accounts in the specified transactions plan
+     * Get the fee actually charged for a transaction included in a ledger, read from its result (which starts with the
+     * fee charged as an int64)
      *
-     * @param server
-     * @param transactionResult
-     * @return
+     * @param transaction
+     * @param transactionResponse
+     * @return The fee in stroops, the maximum fee of the transaction if the result isn't available
      */
-    private static boolean verifyAccounts(final Server server, final TransactionResult transactionResult) {
-        for (TransactionResultEntry entry : transactionResult.getEntries()) {
+    public static long getFeePaid(final Transaction transaction, final SubmitTransactionResponse transactionResponse) {
+        final Optional<String> resultXdr = transactionResponse.getResultXdr();
+        if (resultXdr != null && resultXdr.isPresent()) {
             try {
-                server.accounts().account(KeyPair.fromAccountId(entry.getDestination()));
-            } catch (IOException e) {
-                System.out.println("Transaction batch: account failed verification: " + entry.getDestination());
-
-                return false;
+                final byte[] result = Base64.getDecoder().decode(resultXdr.get());
+                if (result.length >= 8) {
+                    return ByteBuffer.wrap(result).getLong();
+                }
+            } catch (IllegalArgumentException e) {
+                // Not base64, fall back to the transaction's fee
             }
         }
 
-        System.out.println("Transaction batch: accounts verified");
+        return transaction.getFee();
+    }
 
-        return true;
+    /**
+     * Get the fee per operation of the specified transaction
+     *
+     * @param transaction
+     * @return The fee in stroops
+     */
+    private static int getOperationFee(final Transaction transaction) {
+        return transaction.getFee() / Math.max(1, transaction.getOperations().length);
+    }
+
+    /**
+     * Check if the specified transaction response is a "tx_insufficient_fee" failure
+     *
+     * @param transactionResponse
+     * @return
+     */
+    private static boolean isTxInsufficientFee(final SubmitTransactionResponse transactionResponse) {
+        return transactionResponse.getExtras() != null &&
+               transactionResponse.getExtras().getResultCodes() != null &&
+               "tx_insufficient_fee".equals(transactionResponse.getExtras().getResultCodes().getTransactionResultCode());
     }
 
     /**
@@ -645,7 +1101,7 @@ public class StellarGateway {
      */
     public static BigDecimal getBalance(final String address) throws IOException {
         // Select the operations network
-        final Server server = new Server(SETTING_OPERATIONS_NETWORK.equals("LIVE") ? SETTING_HORIZON_LIVE_NETWORK : SETTING_HORIZON_TEST_NETWORK);
+        final Server server = HorizonServers.getOperationsServer();
 
         // Build a key pair for the account id specified
         final KeyPair pair = KeyPair.fromAccountId(address);
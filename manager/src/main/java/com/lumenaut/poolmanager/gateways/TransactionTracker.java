@@ -0,0 +1,395 @@
+package com.lumenaut.poolmanager.gateways;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.stellar.sdk.Transaction;
+import org.stellar.sdk.responses.GsonSingleton;
+import org.stellar.sdk.responses.SubmitTransactionResponse;
+import org.stellar.sdk.responses.SubmitTransactionUnknownResponseException;
+import shadow.okhttp3.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static com.lumenaut.poolmanager.DataFormats.OBJECT_MAPPER;
+import static com.lumenaut.poolmanager.Services.SCHEDULER;
+import static com.lumenaut.poolmanager.Settings.MAX_CHANNELS_LIMIT;
+import static com.lumenaut.poolmanager.Settings.MAX_TRANSACTIONS_IN_FLIGHT;
+
+/**
+ * @Author Luca Vignaroli
+ * @Email luca@burning.it
+ * @Date 18/10/2026 - 3:54 PM
+ * <p>
+ * Submits transactions without holding a thread until horizon reports their outcome. Each envelope is posted once and
+ * its hash recorded: when horizon answers in time the answer is final, otherwise (timeouts, dropped connections) a
+ * single poller looks the transactions up by hash in the recent transactions of their source accounts, once per
+ * ledger and with one request per account for all the channels' transactions. A transaction which doesn't show up is
+ * posted again with the same envelope, which can never be applied twice.
+ */
+public class TransactionTracker {
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //region FIELDS
+
+    // Horizon holds the submission request until the transaction makes it into a ledger, we stop waiting for its answer
+    // after a couple of ledgers and look the transaction up instead (milliseconds)
+    private static final long POST_READ_TIMEOUT = 2 * LedgerClock.EXPECTED_LEDGER_CLOSE_TIME;
+
+    // Transactions still not found this long after being posted are posted again (milliseconds)
+    private static final long REPOST_INTERVAL = 6 * LedgerClock.EXPECTED_LEDGER_CLOSE_TIME;
+
+    // Most recent transactions of each source account looked up by the poller, well above what a channel keeps in flight
+    private static final int POLLED_TRANSACTIONS = 200;
+
+    // Horizon's answers carrying the final outcome of a submission
+    private static final int HTTP_OK = 200;
+    private static final int HTTP_BAD_REQUEST = 400;
+
+    // Horizon url and the client posting and looking up the transactions
+    private final String horizonUrl;
+    private final OkHttpClient httpClient;
+
+    // Transactions waiting for their outcome by hash, and the accounts being looked up
+    private final HashMap<String, TrackedTransaction> tracked = new HashMap<>();
+    private final HashSet<String> polling = new HashSet<>();
+    private ScheduledFuture<?> poller;
+
+    //endregion
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //region SUBCLASSES
+
+    /**
+     * A transaction waiting for its outcome
+     */
+    private static class TrackedTransaction {
+        private final Transaction transaction;
+        private final String hash;
+        private final String sourceAccount;
+        private final long submittedAt = System.currentTimeMillis();
+        private final CompletableFuture<SubmitTransactionResponse> result = new CompletableFuture<>();
+
+        // Last time the envelope was posted, and whether horizon's answer is still awaited
+        private long postedAt;
+        private int posts;
+        private boolean posting;
+
+        private TrackedTransaction(final Transaction transaction, final String hash) {
+            this.transaction = transaction;
+            this.hash = hash;
+            this.sourceAccount = transaction.getSourceAccount().getAccountId();
+        }
+    }
+
+    //endregion
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //region CONSTRUCTORS
+
+    /**
+     * Constructor
+     *
+     * @param horizonUrl The horizon server the transactions are submitted to
+     */
+    public TransactionTracker(final String horizonUrl) {
+        this.horizonUrl = horizonUrl.replaceAll("/+$", "");
+
+        // Requests are asynchronous, the scheduler bounds the submissions at once
+        final Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(MAX_CHANNELS_LIMIT * MAX_TRANSACTIONS_IN_FLIGHT);
+        dispatcher.setMaxRequestsPerHost(MAX_CHANNELS_LIMIT * MAX_TRANSACTIONS_IN_FLIGHT);
+
+        // Same connections as every other horizon request
+        this.httpClient = HorizonServers.getHttpClient().newBuilder()
+                                        .readTimeout(POST_READ_TIMEOUT, TimeUnit.MILLISECONDS)
+                                        .dispatcher(dispatcher)
+                                        .build();
+    }
+
+    //endregion
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //region METHODS
+
+    /**
+     * Submit a transaction and track it until it makes it into a ledger, is rejected or expires
+     *
+     * @param transaction
+     * @return A future completed with horizon's answer (or its equivalent, for transactions found by the poller), or
+     * exceptionally when the transaction couldn't be submitted or expired
+     */
+    public CompletableFuture<SubmitTransactionResponse> submit(final Transaction transaction) {
+        final String hash = toHex(transaction.hash());
+
+        final TrackedTransaction trackedTransaction;
+        synchronized (this) {
+            // Same envelope, same outcome
+            final TrackedTransaction existing = tracked.get(hash);
+            if (existing != null) {
+                return existing.result;
+            }
+
+            trackedTransaction = new TrackedTransaction(transaction, hash);
+            tracked.put(hash, trackedTransaction);
+
+            // Start polling
+            if (poller == null) {
+                poller = SCHEDULER.scheduleWithFixedDelay(this::poll, LedgerClock.EXPECTED_LEDGER_CLOSE_TIME, LedgerClock.EXPECTED_LEDGER_CLOSE_TIME, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        // Stop tracking it once it's resolved (or given up on)
+        trackedTransaction.result.whenComplete((response, error) -> {
+            synchronized (this) {
+                tracked.remove(hash, trackedTransaction);
+            }
+        });
+
+        post(trackedTransaction);
+
+        return trackedTransaction.result;
+    }
+
+    /**
+     * Stop polling, the transactions still tracked are left unresolved
+     */
+    public synchronized void shutdown() {
+        if (poller != null) {
+            poller.cancel(false);
+            poller = null;
+        }
+
+        httpClient.dispatcher().executorService().shutdown();
+    }
+
+    /**
+     * Post the transaction's envelope
+     *
+     * @param trackedTransaction
+     */
+    private void post(final TrackedTransaction trackedTransaction) {
+        synchronized (this) {
+            trackedTransaction.posting = true;
+            trackedTransaction.postedAt = System.currentTimeMillis();
+            trackedTransaction.posts++;
+        }
+
+        final RequestBody body = new FormBody.Builder().add("tx", trackedTransaction.transaction.toEnvelopeXdrBase64()).build();
+        final Request request = new Request.Builder().url(horizonUrl + "/transactions").header("Accept", "application/json").post(body).build();
+        httpClient.newCall(request).enqueue(new Callback() {
+            @Override
+            public void onFailure(final Call call, final IOException e) {
+                // No answer, the transaction might still make it into a ledger
+                posted(trackedTransaction);
+            }
+
+            @Override
+            public void onResponse(final Call call, final Response response) {
+                try (final Response submission = response) {
+                    final int status = submission.code();
+                    final String content = submission.body().string();
+
+                    if (status == HTTP_OK || status == HTTP_BAD_REQUEST) {
+                        final SubmitTransactionResponse submissionResponse = GsonSingleton.getInstance().fromJson(content, SubmitTransactionResponse.class);
+
+                        // A repost of an envelope already applied is rejected for its sequence number, only the poller can tell
+                        if (trackedTransaction.posts > 1 && isTxBadSeq(submissionResponse)) {
+                            posted(trackedTransaction);
+                        } else {
+                            trackedTransaction.result.complete(submissionResponse);
+                        }
+                    } else if (status >= 500) {
+                        // Horizon gave up waiting (504) or failed, the transaction might still make it into a ledger
+                        posted(trackedTransaction);
+                    } else {
+                        // Never submitted (throttled, refused)
+                        trackedTransaction.result.completeExceptionally(new SubmitTransactionUnknownResponseException(status, content));
+                    }
+                } catch (IOException | RuntimeException e) {
+                    posted(trackedTransaction);
+                }
+            }
+        });
+    }
+
+    /**
+     * Record that the answer to a post isn't coming, the poller takes over
+     *
+     * @param trackedTransaction
+     */
+    private synchronized void posted(final TrackedTransaction trackedTransaction) {
+        trackedTransaction.posting = false;
+    }
+
+    /**
+     * Look up the transactions with no answer pending, one request per source account
+     */
+    private void poll() {
+        final HashMap<String, List<TrackedTransaction>> accounts = new HashMap<>();
+        synchronized (this) {
+            // Nothing left to track
+            if (tracked.isEmpty()) {
+                poller.cancel(false);
+                poller = null;
+
+                return;
+            }
+
+            for (TrackedTransaction trackedTransaction : tracked.values()) {
+                if (!trackedTransaction.posting && !polling.contains(trackedTransaction.sourceAccount)) {
+                    accounts.computeIfAbsent(trackedTransaction.sourceAccount, account -> new ArrayList<>()).add(trackedTransaction);
+                }
+            }
+
+            polling.addAll(accounts.keySet());
+        }
+
+        accounts.forEach(this::pollAccount);
+    }
+
+    /**
+     * Look up the given transactions in the recent transactions of their source account
+     *
+     * @param account
+     * @param transactions
+     */
+    private void pollAccount(final String account, final List<TrackedTransaction> transactions) {
+        final Request request = new Request.Builder().url(horizonUrl + "/accounts/" + account + "/transactions?order=desc&limit=" + POLLED_TRANSACTIONS).header("Accept", "application/json").get().build();
+        httpClient.newCall(request).enqueue(new Callback() {
+            @Override
+            public void onFailure(final Call call, final IOException e) {
+                // Try again on the next ledger
+                polled(account);
+            }
+
+            @Override
+            public void onResponse(final Call call, final Response response) {
+                try (final Response lookup = response) {
+                    // Recent transactions by hash
+                    final HashMap<String, JsonNode> records = new HashMap<>();
+                    if (lookup.isSuccessful()) {
+                        try (final InputStream body = lookup.body().byteStream()) {
+                            for (JsonNode record : OBJECT_MAPPER.readTree(body).path("_embedded").path("records")) {
+                                records.put(record.path("hash").asText(), record);
+                            }
+                        }
+                    }
+
+                    for (TrackedTransaction trackedTransaction : transactions) {
+                        final JsonNode record = records.get(trackedTransaction.hash);
+                        if (record != null) {
+                            trackedTransaction.result.complete(toSubmitTransactionResponse(record));
+                        } else {
+                            checkPending(trackedTransaction);
+                        }
+                    }
+                } catch (IOException | RuntimeException e) {
+                    System.err.println("Transaction tracker: unable to look up the transactions of " + account + ": " + e.getMessage());
+                } finally {
+                    polled(account);
+                }
+            }
+        });
+    }
+
+    /**
+     * Record that the look up of an account's transactions is over
+     *
+     * @param account
+     */
+    private synchronized void polled(final String account) {
+        polling.remove(account);
+    }
+
+    /**
+     * Give up on an expired transaction which didn't show up, or post it again if it's been missing for a while
+     *
+     * @param trackedTransaction
+     */
+    private void checkPending(final TrackedTransaction trackedTransaction) {
+        final long now = System.currentTimeMillis();
+        final boolean repost;
+        synchronized (this) {
+            if (trackedTransaction.posting) {
+                return;
+            }
+
+            // Its time bounds were set when it was built, before its submission
+            if (now - trackedTransaction.submittedAt > TimeUnit.SECONDS.toMillis(StellarGateway.TRANSACTION_VALIDITY_TIMEOUT_SECONDS) + REPOST_INTERVAL) {
+                trackedTransaction.result.completeExceptionally(new IOException("Transaction " + trackedTransaction.hash + " expired before making it into a ledger"));
+
+                return;
+            }
+
+            repost = now - trackedTransaction.postedAt > REPOST_INTERVAL;
+        }
+
+        if (repost) {
+            post(trackedTransaction);
+        }
+    }
+
+    /**
+     * Translate a transaction found on the ledger into the answer horizon gives to its submission
+     *
+     * @param record The transaction resource
+     * @return
+     * @throws IOException
+     */
+    private static SubmitTransactionResponse toSubmitTransactionResponse(final JsonNode record) throws IOException {
+        final ObjectNode response = OBJECT_MAPPER.createObjectNode();
+        response.put("hash", record.path("hash").asText());
+
+        if (record.path("successful").asBoolean(true)) {
+            response.put("ledger", record.has("ledger_attr") ? record.path("ledger_attr").asLong() : record.path("ledger").asLong());
+            response.put("envelope_xdr", record.path("envelope_xdr").asText());
+            response.put("result_xdr", record.path("result_xdr").asText());
+        } else {
+            // Failed transactions are included in a ledger as well, consuming their sequence number and fee
+            final ObjectNode extras = response.putObject("extras");
+            extras.put("envelope_xdr", record.path("envelope_xdr").asText());
+            extras.put("result_xdr", record.path("result_xdr").asText());
+            extras.putObject("result_codes").put("transaction", "tx_failed");
+        }
+
+        return GsonSingleton.getInstance().fromJson(OBJECT_MAPPER.writeValueAsString(response), SubmitTransactionResponse.class);
+    }
+
+    /**
+     * Check if the specified transaction response contains a failure of type "tx_bad_seq"
+     *
+     * @param transactionResponse
+     * @return
+     */
+    private static boolean isTxBadSeq(final SubmitTransactionResponse transactionResponse) {
+        return transactionResponse != null &&
+               transactionResponse.getExtras() != null &&
+               transactionResponse.getExtras().getResultCodes() != null &&
+               "tx_bad_seq".equals(transactionResponse.getExtras().getResultCodes().getTransactionResultCode());
+    }
+
+    /**
+     * Hex encode a transaction hash, as horizon reports it
+     *
+     * @param bytes
+     * @return
+     */
+    private static String toHex(final byte[] bytes) {
+        final StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+
+        return hex.toString();
+    }
+
+    //endregion
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+}
@@ -0,0 +1,79 @@
+package com.lumenaut.poolmanager.gateways;
+
+import com.lumenaut.poolmanager.DataFormats.VotersData;
+import com.lumenaut.poolmanager.Services;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * @Author Luca Vignaroli
+ * @Email luca@burning.it
+ * @Date 18/10/2026 - 3:31 PM
+ * <p>
+ * A source of inflation pool voters. The asynchronous methods run the blocking ones on the shared I/O executor,
+ * implementations can override them when they have a better way to abort a running request.
+ */
+public interface VoterSource {
+    /**
+     * Check if the source is serving data from the test network
+     *
+     * @return
+     * @throws SQLException
+     * @throws IOException
+     */
+    boolean isTestNetwork() throws SQLException, IOException;
+
+    /**
+     * Get the balance of the specified account
+     *
+     * @param accountId The public key of the account
+     * @return The balance in stroops, null if the account doesn't exist
+     * @throws SQLException
+     * @throws IOException
+     */
+    Long getBalance(String accountId) throws SQLException, IOException;
+
+    /**
+     * Get the inflation votes currently cast to the specified account, sorted by balance (descending) and account ID
+     *
+     * @param inflationDestination The public key of the account receiving the inflation votes
+     * @return The voters data, null if there are no voters
+     * @throws SQLException
+     * @throws IOException
+     */
+    VotersData getVotersData(String inflationDestination) throws SQLException, IOException;
+
+    /**
+     * Asynchronous version of {@link #isTestNetwork()}
+     *
+     * @param timeout Request timeout (milliseconds, 0 for no timeout)
+     * @return
+     */
+    default CompletableFuture<Boolean> isTestNetworkAsync(final long timeout) {
+        return Services.supplyAsync(this::isTestNetwork, timeout);
+    }
+
+    /**
+     * Asynchronous version of {@link #getBalance(String)}
+     *
+     * @param accountId The public key of the account
+     * @param timeout   Request timeout (milliseconds, 0 for no timeout)
+     * @return
+     */
+    default CompletableFuture<Long> getBalanceAsync(final String accountId, final long timeout) {
+        return Services.supplyAsync(() -> getBalance(accountId), timeout);
+    }
+
+    /**
+     * Asynchronous version of {@link #getVotersData(String)}
+     *
+     * @param inflationDestination The public key of the account receiving the inflation votes
+     * @param timeout              Request timeout (milliseconds, 0 for no timeout)
+     * @return
+     */
+    default CompletableFuture<VotersData> getVotersDataAsync(final String inflationDestination, final long timeout) {
+        return Services.supplyAsync(() -> getVotersData(inflationDestination), timeout);
+    }
+}
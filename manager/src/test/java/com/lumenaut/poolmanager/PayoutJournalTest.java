@@ -0,0 +1,114 @@
+package com.lumenaut.poolmanager;
+
+import com.lumenaut.poolmanager.DataFormats.TransactionResult;
+import com.lumenaut.poolmanager.DataFormats.TransactionResultEntry;
+import com.lumenaut.poolmanager.PayoutJournal.JournaledBatch;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Iterator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @Author Luca Vignaroli
+ * @Email luca@burning.it
+ * @Date 18/10/2026 - 4:39 PM
+ */
+class PayoutJournalTest {
+
+    private static final String PLAN = "9b2f6a52-3c1e-4d0a-9f1e-2b7c5d8e4a10";
+    private static final String VOTER_1 = "GAAZI4TCR3TY5OJHCTJC2A4QSY6CJWJH5IAJTGKIN2ER7LBNVKOCCWN7";
+    private static final String VOTER_2 = "GBRPYHIL2CI3FNQ4BXLFMNDLFJUNPU2HY3ZMFSHONUCEOASW7QC7OX2H";
+    private static final String HASH = "3389e9f0f1a65f19736cacf544c2e825313e8447f569233bb8db39aa607c8889";
+
+    private static TransactionResult batch(final String... destinations) {
+        final TransactionResult batch = new TransactionResult();
+        batch.setEntries(new ArrayList<>());
+        for (int i = 0; i < destinations.length; i++) {
+            final TransactionResultEntry entry = new TransactionResultEntry();
+            entry.setDestination(destinations[i]);
+            entry.setAmount(1000L * (i + 1));
+            batch.getEntries().add(entry);
+        }
+
+        return batch;
+    }
+
+    @Test
+    void recordAndRead() throws IOException {
+        final File file = File.createTempFile("payout", ".journal");
+        file.delete();
+
+        try {
+            try (final PayoutJournal journal = PayoutJournal.open(file, PLAN)) {
+                assertTrue(journal.getBatches().isEmpty());
+
+                final TransactionResult paid = batch(VOTER_1, VOTER_2);
+                journal.recordBatch(paid);
+                journal.recordBatch(batch(VOTER_2));
+                journal.recordPaid(paid, 12345L, 200L, HASH);
+            }
+
+            try (final PayoutJournal journal = PayoutJournal.open(file, PLAN)) {
+                assertEquals(2, journal.getBatches().size());
+                final Iterator<JournaledBatch> batches = journal.getBatches().iterator();
+
+                final JournaledBatch first = batches.next();
+                assertTrue(first.isPaid());
+                assertEquals(200L, first.getFee());
+                assertEquals(2, first.getEntries().size());
+                assertEquals(VOTER_1, first.getEntries().get(0).getDestination());
+                assertEquals(1000L, first.getEntries().get(0).getAmount());
+                assertEquals(VOTER_2, first.getEntries().get(1).getDestination());
+                assertEquals(2000L, first.getEntries().get(1).getAmount());
+
+                final JournaledBatch second = batches.next();
+                assertFalse(second.isPaid());
+                assertNotEquals(first.getId(), second.getId());
+                assertEquals(VOTER_2, second.getEntries().get(0).getDestination());
+            }
+
+            // A journal belongs to a single plan
+            assertThrows(IOException.class, () -> PayoutJournal.open(file, "another-plan"));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    void readStopsAtCorruptedRecord() throws IOException {
+        final File file = File.createTempFile("payout", ".journal");
+        file.delete();
+
+        try {
+            final long firstRecordEnd;
+            try (final PayoutJournal journal = PayoutJournal.open(file, PLAN)) {
+                journal.recordBatch(batch(VOTER_1));
+                firstRecordEnd = file.length();
+                journal.recordBatch(batch(VOTER_2));
+            }
+
+            // Flip a byte in the payload of the last record, its checksum no longer matches
+            try (final RandomAccessFile stream = new RandomAccessFile(file, "rw")) {
+                stream.seek(stream.length() - 1);
+                final int last = stream.read();
+                stream.seek(stream.length() - 1);
+                stream.write(last ^ 0xFF);
+            }
+
+            try (final PayoutJournal journal = PayoutJournal.open(file, PLAN)) {
+                assertEquals(1, journal.getBatches().size());
+                assertEquals(VOTER_1, journal.getBatches().iterator().next().getEntries().get(0).getDestination());
+
+                // The corrupted record is dropped
+                assertEquals(firstRecordEnd, file.length());
+            }
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.lumenaut.poolmanager;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @Author Luca Vignaroli
+ * @Email luca@burning.it
+ * @Date 18/10/2026 - 4:42 PM
+ */
+class SettingsTest {
+
+    @Test
+    void toFeeStatsPercentile() {
+        // Disabled
+        assertEquals(0, Settings.toFeeStatsPercentile(0));
+        assertEquals(0, Settings.toFeeStatsPercentile(-5));
+
+        // Published as they are
+        for (int percentile : Settings.FEE_STATS_PERCENTILES) {
+            assertEquals(percentile, Settings.toFeeStatsPercentile(percentile));
+        }
+
+        // Rounded to the nearest published one
+        assertEquals(10, Settings.toFeeStatsPercentile(1));
+        assertEquals(70, Settings.toFeeStatsPercentile(67));
+        assertEquals(80, Settings.toFeeStatsPercentile(75));
+        assertEquals(95, Settings.toFeeStatsPercentile(93));
+        assertEquals(99, Settings.toFeeStatsPercentile(98));
+        assertEquals(99, Settings.toFeeStatsPercentile(100));
+    }
+}
@@ -0,0 +1,126 @@
+package com.lumenaut.poolmanager;
+
+import com.lumenaut.poolmanager.DataFormats.VoterCustomDataEntry;
+import com.lumenaut.poolmanager.DataFormats.VotersData;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @Author Luca Vignaroli
+ * @Email luca@burning.it
+ * @Date 18/10/2026 - 4:28 PM
+ */
+class VotersSnapshotTest {
+
+    private static final String POOL = "GDCHDRSDOBRMSUDKRE2C4U4KDLNEATJPIHHR2ORFL5BSD56G4DQXL4VW";
+    private static final String VOTER_1 = "GAAZI4TCR3TY5OJHCTJC2A4QSY6CJWJH5IAJTGKIN2ER7LBNVKOCCWN7";
+    private static final String VOTER_2 = "GBRPYHIL2CI3FNQ4BXLFMNDLFJUNPU2HY3ZMFSHONUCEOASW7QC7OX2H";
+
+    // Layout of the snapshot written by votersData(): header, two records, custom data of the first voter
+    private static final int VOTERS_COUNT_POSITION = 64;
+    private static final int FIRST_DATA_OFFSET_POSITION = 68 + 40;
+    private static final int FIRST_NAME_LENGTH_POSITION = 68 + 2 * 48 + 4;
+
+    /**
+     * Two voters, the first one with a custom data entry
+     */
+    private static VotersData votersData() {
+        final List<VoterCustomDataEntry> data = new ArrayList<>();
+        final VoterCustomDataEntry entry = new VoterCustomDataEntry();
+        entry.setDataname("lumenaut.net donation%");
+        entry.setDatavalue("50%" + POOL);
+        data.add(entry);
+
+        final VotersData votersData = new VotersData();
+        votersData.reset();
+        votersData.setInflationdest(POOL);
+        votersData.setBalance(123456789L);
+        votersData.getStore().add(VOTER_1, 2000000000L, data);
+        votersData.getStore().add(VOTER_2, 1000000000L, null);
+
+        return votersData;
+    }
+
+    @Test
+    void writeAndRead() throws IOException {
+        final VotersData votersData = votersData();
+        final File folder = Files.createTempDirectory("snapshot").toFile();
+        final File file = new File(folder, "test.bin");
+        try {
+            VotersSnapshot.write(file, votersData, 42L);
+            final VotersSnapshot snapshot = VotersSnapshot.read(file);
+
+            assertEquals(42L, snapshot.getLedger());
+            assertEquals(POOL, snapshot.getVotersData().getInflationdest());
+            assertEquals(123456789L, snapshot.getVotersData().getBalance());
+
+            final VotersStore store = snapshot.getVotersData().getStore();
+            assertEquals(2, store.size());
+            assertEquals(VOTER_1, store.getAccount(0));
+            assertEquals(2000000000L, store.getBalance(0));
+            assertEquals(1, store.getData(0).size());
+            assertEquals("lumenaut.net donation%", store.getData(0).get(0).getDataname());
+            assertEquals("50%" + POOL, store.getData(0).get(0).getDatavalue());
+            assertEquals(VOTER_2, store.getAccount(1));
+            assertEquals(1000000000L, store.getBalance(1));
+            assertNull(store.getData(1));
+
+            // Writing again replaces the previous snapshot
+            votersData.getStore().setBalance(1, 5L);
+            VotersSnapshot.write(file, votersData, 43L);
+            assertEquals(43L, VotersSnapshot.read(file).getLedger());
+            assertEquals(5L, VotersSnapshot.read(file).getVotersData().getStore().getBalance(1));
+        } finally {
+            file.delete();
+            folder.delete();
+        }
+    }
+
+    @Test
+    void readRejectsOtherFiles() throws IOException {
+        final File file = File.createTempFile("snapshot", ".bin");
+        try (final RandomAccessFile stream = new RandomAccessFile(file, "rw")) {
+            stream.write(new byte[128]);
+        }
+
+        try {
+            assertThrows(IOException.class, () -> VotersSnapshot.read(file));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    void readRejectsCorruptedFiles() throws IOException {
+        // A voters count overflowing the records size, an out of bounds custom data offset and string length
+        assertCorrupted(VOTERS_COUNT_POSITION, 178956971);
+        assertCorrupted(FIRST_DATA_OFFSET_POSITION + 4, 1000000);
+        assertCorrupted(FIRST_NAME_LENGTH_POSITION, 1000000);
+    }
+
+    /**
+     * Write a snapshot, overwrite an int at the given position and check it's rejected as an IOException
+     */
+    private static void assertCorrupted(final int position, final int value) throws IOException {
+        final File file = File.createTempFile("snapshot", ".bin");
+        try {
+            VotersSnapshot.write(file, votersData(), 42L);
+            try (final RandomAccessFile stream = new RandomAccessFile(file, "rw")) {
+                stream.seek(position);
+                stream.writeInt(value);
+            }
+
+            assertThrows(IOException.class, () -> VotersSnapshot.read(file));
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.lumenaut.poolmanager;
+
+import com.lumenaut.poolmanager.DataFormats.VoterCustomDataEntry;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import static com.lumenaut.poolmanager.XLMUtils.ACCOUNT_ID_RAW_LENGTH;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @Author Luca Vignaroli
+ * @Email luca@burning.it
+ * @Date 18/10/2026 - 4:38 PM
+ */
+class VotersStoreTest {
+
+    /**
+     * A valid account id derived from the given number
+     */
+    private static String account(final int number) {
+        final byte[] key = new byte[ACCOUNT_ID_RAW_LENGTH];
+        key[0] = (byte) number;
+
+        return XLMUtils.encodeAccountId(key, 0);
+    }
+
+    private static ByteBuffer key(final int number) {
+        final byte[] key = new byte[ACCOUNT_ID_RAW_LENGTH];
+        XLMUtils.decodeAccountId(account(number), key, 0);
+
+        return ByteBuffer.wrap(key);
+    }
+
+    @Test
+    void addAllMerged() {
+        final VoterCustomDataEntry entry = new VoterCustomDataEntry();
+        entry.setDataname("lumenaut.net donation%");
+        entry.setDatavalue("10%" + account(9));
+        final List<VoterCustomDataEntry> data = Collections.singletonList(entry);
+
+        // Two partitions, each sorted by balance (descending) and account
+        final VotersStore first = new VotersStore();
+        first.add(account(1), 500L, null);
+        first.add(account(3), 300L, null);
+        first.add(account(5), 100L, null);
+
+        final VotersStore second = new VotersStore();
+        second.add(account(4), 300L, null);
+        second.add(account(2), 200L, data);
+
+        final VotersStore merged = new VotersStore(1);
+        merged.addAllMerged(first, second, new VotersStore());
+
+        // Balance descending, then account
+        assertEquals(5, merged.size());
+        assertEquals(account(1), merged.getAccount(0));
+        assertEquals(account(3), merged.getAccount(1));
+        assertEquals(account(4), merged.getAccount(2));
+        assertEquals(account(2), merged.getAccount(3));
+        assertEquals(200L, merged.getBalance(3));
+        assertEquals(data, merged.getData(3));
+        assertNull(merged.getData(0));
+        assertEquals(account(5), merged.getAccount(4));
+        assertEquals(1400L, merged.getTotalBalance());
+    }
+
+    @Test
+    void addAllExcluding() {
+        final VotersStore source = new VotersStore();
+        source.add(account(1), 300L, null);
+        source.add(account(2), 200L, null);
+        source.add(account(3), 100L, null);
+
+        final HashSet<ByteBuffer> excluded = new HashSet<>();
+        excluded.add(key(2));
+
+        final VotersStore store = new VotersStore(1);
+        store.addAll(source, excluded);
+
+        assertEquals(2, store.size());
+        assertEquals(account(1), store.getAccount(0));
+        assertEquals(account(3), store.getAccount(1));
+        assertEquals(400L, store.getTotalBalance());
+    }
+
+    @Test
+    void applyDelta() {
+        final VoterCustomDataEntry entry = new VoterCustomDataEntry();
+        entry.setDataname("lumenaut.net donation%");
+        entry.setDatavalue("10%" + account(9));
+        final List<VoterCustomDataEntry> data = Collections.singletonList(entry);
+
+        // Snapshot: voter 2 was modified and voter 5 stopped voting since
+        final VotersStore snapshot = new VotersStore();
+        snapshot.add(account(1), 500L, null);
+        snapshot.add(account(2), 400L, null);
+        snapshot.add(account(3), 300L, null);
+        snapshot.add(account(5), 100L, null);
+
+        // Upserts come sorted: a new voter 4 tied with voter 3, voter 2 with a new balance and data
+        final VotersStore upserts = new VotersStore();
+        upserts.add(account(4), 300L, null);
+        upserts.add(account(2), 200L, data);
+
+        final HashSet<ByteBuffer> modified = new HashSet<>();
+        modified.add(key(2));
+        modified.add(key(4));
+        modified.add(key(5));
+
+        // Same steps as the incremental fetch
+        final VotersStore unmodified = new VotersStore(snapshot.size());
+        unmodified.addAll(snapshot, modified);
+
+        final VotersStore updated = new VotersStore(unmodified.size() + upserts.size());
+        updated.addAllMerged(unmodified, upserts);
+
+        assertEquals(4, updated.size());
+        assertEquals(account(1), updated.getAccount(0));
+        assertEquals(account(3), updated.getAccount(1));
+        assertEquals(account(4), updated.getAccount(2));
+        assertEquals(account(2), updated.getAccount(3));
+        assertEquals(200L, updated.getBalance(3));
+        assertEquals(data, updated.getData(3));
+    }
+}
@@ -2,6 +2,13 @@ package com.lumenaut.poolmanager;
 
 import org.junit.jupiter.api.Test;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import static com.lumenaut.poolmanager.XLMUtils.ACCOUNT_ID_RAW_LENGTH;
+import static org.junit.jupiter.api.Assertions.*;
+
 /**
  * @Author Luca Vignaroli
  * @Email luca@burning.it
@@ -52,4 +59,68 @@ class XLMUtilsTest {
     @Test
     void isNegativeDecimalFormat() {
     }
+
+    @Test
+    void encodeAccountId() {
+        assertEquals("GAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAWHF", XLMUtils.encodeAccountId(new byte[ACCOUNT_ID_RAW_LENGTH], 0));
+    }
+
+    @Test
+    void decodeAccountId() {
+        final String[] accounts = {
+                "GDCHDRSDOBRMSUDKRE2C4U4KDLNEATJPIHHR2ORFL5BSD56G4DQXL4VW",
+                "GAAZI4TCR3TY5OJHCTJC2A4QSY6CJWJH5IAJTGKIN2ER7LBNVKOCCWN7",
+                "GBRPYHIL2CI3FNQ4BXLFMNDLFJUNPU2HY3ZMFSHONUCEOASW7QC7OX2H"
+        };
+
+        // Decode at an offset and encode back
+        final byte[] key = new byte[ACCOUNT_ID_RAW_LENGTH + 3];
+        for (String account : accounts) {
+            XLMUtils.decodeAccountId(account, key, 3);
+            assertEquals(account, XLMUtils.encodeAccountId(key, 3));
+        }
+    }
+
+    @Test
+    void accountIdRoundTrip() {
+        final Random random = new Random(42);
+        final byte[] key = new byte[ACCOUNT_ID_RAW_LENGTH];
+        final byte[] decoded = new byte[ACCOUNT_ID_RAW_LENGTH];
+        for (int i = 0; i < 1000; i++) {
+            random.nextBytes(key);
+            final String account = XLMUtils.encodeAccountId(key, 0);
+            assertTrue(XLMUtils.isPublicKeyValidFormat(account));
+
+            XLMUtils.decodeAccountId(account, decoded, 0);
+            assertArrayEquals(key, decoded);
+        }
+    }
+
+    @Test
+    void decodeAccountIdRejectsBadChecksums() {
+        final String account = "GDCHDRSDOBRMSUDKRE2C4U4KDLNEATJPIHHR2ORFL5BSD56G4DQXL4VW";
+        final byte[] key = new byte[ACCOUNT_ID_RAW_LENGTH];
+
+        // Every single character change is caught by the checksum
+        for (int i = 1; i < account.length(); i++) {
+            final char[] altered = account.toCharArray();
+            altered[i] = altered[i] == 'A' ? 'B' : 'A';
+            assertThrows(IllegalArgumentException.class, () -> XLMUtils.decodeAccountId(new String(altered), key, 0));
+        }
+
+        // Wrong version byte, length or alphabet
+        assertThrows(IllegalArgumentException.class, () -> XLMUtils.decodeAccountId("SDCHDRSDOBRMSUDKRE2C4U4KDLNEATJPIHHR2ORFL5BSD56G4DQXL4VW", key, 0));
+        assertThrows(IllegalArgumentException.class, () -> XLMUtils.decodeAccountId(account.substring(1), key, 0));
+        assertThrows(IllegalArgumentException.class, () -> XLMUtils.decodeAccountId(account.toLowerCase(), key, 0));
+        assertThrows(IllegalArgumentException.class, () -> XLMUtils.decodeAccountId(null, key, 0));
+    }
+
+    @Test
+    void crc16() {
+        // CRC16-XModem check value
+        final byte[] data = "123456789".getBytes(StandardCharsets.US_ASCII);
+        assertEquals(0x31C3, XLMUtils.crc16(data, data.length));
+        assertEquals(0x0000, XLMUtils.crc16(data, 0));
+        assertEquals(XLMUtils.crc16(data, 4), XLMUtils.crc16(Arrays.copyOf(data, 4), 4));
+    }
 }
\ No newline at end of file
@@ -0,0 +1,48 @@
+package com.lumenaut.poolmanager.gateways;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @Author Luca Vignaroli
+ * @Email luca@burning.it
+ * @Date 18/10/2026 - 4:41 PM
+ */
+class ChannelSchedulerTest {
+
+    @Test
+    void congestionCapsTheLimitToThePeak() {
+        final ChannelScheduler scheduler = new ChannelScheduler(20);
+
+        // Three of our transactions made it into a single ledger
+        scheduler.onIncluded(100L, 100);
+        scheduler.onIncluded(100L, 100);
+        scheduler.onIncluded(100L, 100);
+        assertEquals(3, scheduler.getPeakLedgerTransactions());
+        assertEquals(300, scheduler.getPeakLedgerOperations());
+
+        scheduler.onCongestion();
+        assertEquals(3, scheduler.getLimit());
+    }
+
+    @Test
+    void resetForgetsPreviousRuns() {
+        final ChannelScheduler scheduler = new ChannelScheduler(20);
+        scheduler.onIncluded(100L, 100);
+        scheduler.onCongestion();
+        assertEquals(1, scheduler.getLimit());
+
+        scheduler.reset(16);
+        assertEquals(16, scheduler.getLimit());
+        assertEquals(0, scheduler.getPeakLedgerTransactions());
+        assertEquals(0, scheduler.getPeakLedgerOperations());
+
+        // The previous run's peak no longer caps the limit, and earlier ledgers are observed again
+        scheduler.onIncluded(50L, 100);
+        assertEquals(1, scheduler.getPeakLedgerTransactions());
+        scheduler.reset(16);
+        scheduler.onCongestion();
+        assertEquals(8, scheduler.getLimit());
+    }
+}
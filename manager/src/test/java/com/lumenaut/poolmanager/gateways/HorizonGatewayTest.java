@@ -0,0 +1,113 @@
+package com.lumenaut.poolmanager.gateways;
+
+import com.lumenaut.poolmanager.DataFormats.VoterCustomDataEntry;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Array;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @Author Luca Vignaroli
+ * @Email luca@burning.it
+ * @Date 18/10/2026 - 4:15 PM
+ */
+class HorizonGatewayTest {
+
+    /**
+     * A text[] column as the driver returns it
+     */
+    private static class TextArray implements Array {
+        private final String[] values;
+        private boolean freed;
+
+        TextArray(final String... values) {
+            this.values = values;
+        }
+
+        @Override
+        public String getBaseTypeName() {
+            return "text";
+        }
+
+        @Override
+        public int getBaseType() {
+            return java.sql.Types.VARCHAR;
+        }
+
+        @Override
+        public Object getArray() {
+            return values;
+        }
+
+        @Override
+        public Object getArray(final Map<String, Class<?>> map) {
+            return values;
+        }
+
+        @Override
+        public Object getArray(final long index, final int count) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Object getArray(final long index, final int count, final Map<String, Class<?>> map) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ResultSet getResultSet() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ResultSet getResultSet(final Map<String, Class<?>> map) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ResultSet getResultSet(final long index, final int count) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ResultSet getResultSet(final long index, final int count, final Map<String, Class<?>> map) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void free() {
+            freed = true;
+        }
+    }
+
+    @Test
+    void extractCustomData() throws SQLException {
+        final TextArray names = new TextArray("lumenaut.net donation%", "lumenaut.net donation2");
+        final TextArray values = new TextArray("50%GDCHDRSDOBRMSUDKRE2C4U4KDLNEATJPIHHR2ORFL5BSD56G4DQXL4VW", "10%GA2Z2W6LYD3BCKXAAH45UCYDPFKYAAKKWHPU46D7SXFOUDBVQXGRK2YT");
+
+        final List<VoterCustomDataEntry> data = HorizonGateway.extractCustomData(names, values, QueryMetrics.start("test", null));
+        assertNotNull(data);
+        assertEquals(2, data.size());
+        assertEquals("lumenaut.net donation%", data.get(0).getDataname());
+        assertEquals("50%GDCHDRSDOBRMSUDKRE2C4U4KDLNEATJPIHHR2ORFL5BSD56G4DQXL4VW", data.get(0).getDatavalue());
+        assertEquals("lumenaut.net donation2", data.get(1).getDataname());
+        assertEquals("10%GA2Z2W6LYD3BCKXAAH45UCYDPFKYAAKKWHPU46D7SXFOUDBVQXGRK2YT", data.get(1).getDatavalue());
+        assertTrue(names.freed && values.freed);
+    }
+
+    @Test
+    void extractCustomDataSkipsIncompleteEntries() throws SQLException {
+        final List<VoterCustomDataEntry> data = HorizonGateway.extractCustomData(new TextArray("a", null), new TextArray(null, "b"), QueryMetrics.start("test", null));
+        assertNull(data);
+    }
+
+    @Test
+    void extractCustomDataWithoutEntries() throws SQLException {
+        assertNull(HorizonGateway.extractCustomData(null, null, QueryMetrics.start("test", null)));
+    }
+}
@@ -0,0 +1,170 @@
+package com.lumenaut.poolmanager.gateways;
+
+import com.lumenaut.poolmanager.DataFormats.VotersData;
+import com.lumenaut.poolmanager.Services;
+import com.lumenaut.poolmanager.XLMUtils;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.lumenaut.poolmanager.XLMUtils.ACCOUNT_ID_RAW_LENGTH;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @Author Luca Vignaroli
+ * @Email luca@burning.it
+ * @Date 18/10/2026 - 4:26 PM
+ */
+class RestVoterSourceTest {
+
+    // Two and a half pages of voters
+    private static final int VOTERS = 2 * RestVoterSource.PAGE_SIZE + RestVoterSource.PAGE_SIZE / 2;
+    private static final long MINIMUM_BALANCE = 1000000000L;
+
+    /**
+     * Local stand in for the horizon server and the voters endpoint
+     */
+    private static class StubServer implements AutoCloseable {
+        private final HttpServer server;
+        private final String pool = account(0xFFFFFF);
+        private final AtomicInteger votersRequests = new AtomicInteger(0);
+
+        StubServer(final boolean paging) throws IOException {
+            server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            server.createContext("/horizon/accounts/", exchange -> respond(exchange, "{\"balances\": [{\"asset_type\": \"native\", \"balance\": \"1234.5000000\"}]}"));
+            server.createContext("/horizon/", exchange -> respond(exchange, "{\"network_passphrase\": \"Test SDF Network ; September 2015\"}"));
+            server.createContext("/voters/", exchange -> {
+                votersRequests.incrementAndGet();
+
+                int offset = 0;
+                int limit = VOTERS;
+                if (paging && exchange.getRequestURI().getQuery() != null) {
+                    for (String parameter : exchange.getRequestURI().getQuery().split("&")) {
+                        final String[] pair = parameter.split("=");
+                        if (pair[0].equals("offset")) {
+                            offset = Integer.parseInt(pair[1]);
+                        } else if (pair[0].equals("limit")) {
+                            limit = Integer.parseInt(pair[1]);
+                        }
+                    }
+                }
+
+                respond(exchange, votersPage(offset, limit));
+            });
+            server.setExecutor(java.util.concurrent.Executors.newFixedThreadPool(8));
+            server.start();
+        }
+
+        RestVoterSource source() {
+            final String base = "http://127.0.0.1:" + server.getAddress().getPort();
+
+            return new RestVoterSource(base + "/voters/", base + "/horizon/");
+        }
+
+        /**
+         * Voters in ascending balance order, voter 0 has a donation data entry
+         */
+        private String votersPage(final int offset, final int limit) {
+            final StringBuilder json = new StringBuilder("{\"inflationdest\": \"" + pool + "\", \"balance\": 1, \"entries\": [");
+            for (int i = offset; i < Math.min(VOTERS, offset + limit); i++) {
+                if (i > offset) {
+                    json.append(',');
+                }
+
+                json.append("{\"account\": \"").append(account(i)).append("\", \"balance\": ").append(MINIMUM_BALANCE + i);
+                if (i == 0) {
+                    json.append(", \"data\": [{\"dataname\": \"lumenaut.net donation%\", \"datavalue\": \"10%").append(pool).append("\"}]");
+                }
+                json.append('}');
+            }
+
+            return json.append("]}").toString();
+        }
+
+        private static void respond(final HttpExchange exchange, final String body) throws IOException {
+            final byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (final OutputStream stream = exchange.getResponseBody()) {
+                stream.write(bytes);
+            }
+        }
+
+        @Override
+        public void close() {
+            server.stop(0);
+        }
+    }
+
+    /**
+     * A valid account id derived from the given number
+     */
+    private static String account(final int number) {
+        final byte[] key = new byte[ACCOUNT_ID_RAW_LENGTH];
+        key[0] = (byte) (number >>> 24);
+        key[1] = (byte) (number >>> 16);
+        key[2] = (byte) (number >>> 8);
+        key[3] = (byte) number;
+
+        return XLMUtils.encodeAccountId(key, 0);
+    }
+
+    @Test
+    void getVotersDataPaged() throws Exception {
+        try (final StubServer server = new StubServer(true)) {
+            final VotersData votersData = server.source().getVotersData(server.pool);
+
+            assertEquals(VOTERS, votersData.getStore().size());
+            assertEquals(XLMUtils.XLMToStroop(new java.math.BigDecimal("1234.5")), votersData.getBalance());
+
+            // Highest balance first
+            assertEquals(account(VOTERS - 1), votersData.getStore().getAccount(0));
+            assertEquals(account(0), votersData.getStore().getAccount(VOTERS - 1));
+            assertEquals("10%" + server.pool, votersData.getStore().getData(VOTERS - 1).get(0).getDatavalue());
+        }
+    }
+
+    @Test
+    void getVotersDataUnpaged() throws Exception {
+        try (final StubServer server = new StubServer(false)) {
+            final VotersData votersData = server.source().getVotersData(server.pool);
+
+            assertEquals(VOTERS, votersData.getStore().size());
+            assertEquals(1, server.votersRequests.get());
+        }
+    }
+
+    @Test
+    void getVotersDataConcurrently() throws Exception {
+        try (final StubServer server = new StubServer(true)) {
+            final RestVoterSource source = server.source();
+
+            // More fetches than I/O threads, each waiting for its pages
+            final List<CompletableFuture<VotersData>> fetches = new ArrayList<>();
+            for (int i = 0; i < Services.IO_THREADS + 4; i++) {
+                fetches.add(Services.supplyAsync(() -> source.getVotersData(server.pool), TimeUnit.SECONDS.toMillis(60)));
+            }
+
+            for (CompletableFuture<VotersData> fetch : fetches) {
+                assertEquals(VOTERS, fetch.get().getStore().size());
+            }
+        }
+    }
+
+    @Test
+    void isTestNetwork() throws Exception {
+        try (final StubServer server = new StubServer(true)) {
+            assertTrue(server.source().isTestNetwork());
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.lumenaut.poolmanager.gateways;
+
+import org.junit.jupiter.api.Test;
+import org.stellar.sdk.KeyPair;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @Author Luca Vignaroli
+ * @Email luca@burning.it
+ * @Date 18/10/2026 - 4:48 PM
+ */
+class SequenceTrackerTest {
+
+    private static final KeyPair CHANNEL = KeyPair.fromAccountId("GAAZI4TCR3TY5OJHCTJC2A4QSY6CJWJH5IAJTGKIN2ER7LBNVKOCCWN7");
+
+    /**
+     * A tracker reading the channel's sequence number from the given ledger state instead of horizon
+     */
+    private static SequenceTracker tracker(final AtomicLong ledgerSequence) {
+        return new SequenceTracker(null) {
+            @Override
+            long fetchSequenceNumber(final KeyPair account) {
+                return ledgerSequence.get();
+            }
+        };
+    }
+
+    @Test
+    void resyncWaitsForPipelinedTransactions() throws Exception {
+        final AtomicLong ledgerSequence = new AtomicLong(100L);
+        final SequenceTracker tracker = tracker(ledgerSequence);
+        tracker.getAccount(CHANNEL);
+
+        // 101 and 102 are in flight, 102 reaches the network first and is rejected: it must wait for 101, not take its place
+        assertTrue(tracker.resync(CHANNEL, 102L));
+        assertEquals(Long.valueOf(100L), tracker.getSequenceNumber(CHANNEL));
+
+        // 101 makes it into a ledger, the same 102 is the next one
+        ledgerSequence.set(101L);
+        assertFalse(tracker.resync(CHANNEL, 102L));
+
+        // And it's consumed by the resubmission
+        ledgerSequence.set(102L);
+        tracker.commit(CHANNEL, 102L);
+        assertEquals(Long.valueOf(102L), tracker.getSequenceNumber(CHANNEL));
+    }
+
+    @Test
+    void resyncAfterConsumedSequence() throws Exception {
+        final AtomicLong ledgerSequence = new AtomicLong(105L);
+        final SequenceTracker tracker = tracker(ledgerSequence);
+
+        // Possibly consumed by the rejected transaction itself
+        assertFalse(tracker.resync(CHANNEL, 102L));
+        assertFalse(tracker.resync(CHANNEL, 105L));
+        assertEquals(Long.valueOf(105L), tracker.getSequenceNumber(CHANNEL));
+
+        // A late response never moves the tracked sequence number back
+        tracker.commit(CHANNEL, 103L);
+        assertEquals(Long.valueOf(105L), tracker.getSequenceNumber(CHANNEL));
+    }
+}